@@ -26,11 +26,15 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class ClientApp extends Application {
 
@@ -42,6 +46,9 @@ public class ClientApp extends Application {
     private static final long RETRY_DELAY_MS = 500;
 
     private static final String REPORT_PATH = "/admin/dashboard/report.xlsx";
+    private static final String REPORT_JOBS_PATH = "/admin/reports/jobs";
+    private static final long REPORT_POLL_MS = 1_000;
+    private static final long REPORT_DEADLINE_MS = 10 * 60_000;
 
     private final HttpClient http = HttpClient.newBuilder()
             .cookieHandler(CookieHandler.getDefault()) // важно для сессий
@@ -104,10 +111,10 @@ public class ClientApp extends Application {
         engine.locationProperty().addListener((obs, oldUrl, newUrl) -> {
             if (newUrl == null) return;
 
-            if (newUrl.contains(REPORT_PATH)) {
+            if (isReportUrl(newUrl)) {
                 Platform.runLater(() -> {
                     engine.getLoadWorker().cancel();
-                    if (oldUrl != null && !oldUrl.contains(REPORT_PATH)) {
+                    if (oldUrl != null && !isReportUrl(oldUrl)) {
                         engine.load(oldUrl);
                     } else {
                         engine.load(homeUrl);
@@ -147,14 +154,19 @@ public class ClientApp extends Application {
         var file = fc.showSaveDialog(stage);
         if (file == null) return;
 
-        HttpRequest req = HttpRequest.newBuilder(URI.create(url))
-                .GET()
-                .build();
-
         CompletableFuture.runAsync(() -> {
             try {
-                byte[] bytes = http.send(req, HttpResponse.BodyHandlers.ofByteArray()).body();
-                Files.write(file.toPath(), bytes);
+                String fileUrl = url.contains(REPORT_JOBS_PATH) ? url : awaitReportJob(url);
+                HttpRequest req = HttpRequest.newBuilder(URI.create(fileUrl))
+                        .GET()
+                        .build();
+                HttpResponse<InputStream> resp = http.send(req, HttpResponse.BodyHandlers.ofInputStream());
+                try (InputStream body = resp.body()) {
+                    if (resp.statusCode() != 200) {
+                        throw new IOException("HTTP " + resp.statusCode());
+                    }
+                    saveReplacing(body, file.toPath());
+                }
 
                 Platform.runLater(() -> {
                     Alert a = new Alert(Alert.AlertType.INFORMATION, "Отчёт сохранён:\n" + file.getAbsolutePath(), ButtonType.OK);
@@ -172,6 +184,67 @@ public class ClientApp extends Application {
     }
 
 
+    /**
+     * Пишет поток во временный файл рядом с целевым и только после полной записи заменяет им целевой,
+     * чтобы ошибка на середине не испортила уже сохранённый отчёт.
+     */
+    private static void saveReplacing(InputStream body, Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path part = Files.createTempFile(dir, target.getFileName().toString(), ".part");
+        try {
+            Files.copy(body, part, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(part);
+        }
+    }
+
+    private boolean isReportUrl(String url) {
+        return url.contains(REPORT_PATH) || url.contains(REPORT_JOBS_PATH) && url.endsWith("/file");
+    }
+
+    /**
+     * Создаёт на сервере задание на отчёт, дожидается его готовности и возвращает ссылку на файл.
+     */
+    private String awaitReportJob(String reportUrl) throws IOException, InterruptedException {
+        URI jobs = URI.create(reportUrl).resolve(REPORT_JOBS_PATH);
+        HttpResponse<String> resp = http.send(HttpRequest.newBuilder(jobs)
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        long deadline = System.currentTimeMillis() + REPORT_DEADLINE_MS;
+
+        while (true) {
+            if (resp.statusCode() >= 400) {
+                String error = jsonField(resp.body(), "error");
+                throw new IOException(error != null ? error : "HTTP " + resp.statusCode());
+            }
+            String status = jsonField(resp.body(), "status");
+            if ("DONE".equals(status)) {
+                return jsonField(resp.body(), "downloadUrl");
+            }
+            if (!"QUEUED".equals(status) && !"RUNNING".equals(status)) {
+                String error = jsonField(resp.body(), "error");
+                throw new IOException(error != null ? error : "Неожиданный ответ сервера");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Отчёт не готов за отведённое время");
+            }
+
+            Thread.sleep(REPORT_POLL_MS);
+            URI job = URI.create(jobs + "/" + jsonField(resp.body(), "id"));
+            resp = http.send(HttpRequest.newBuilder(job).GET().build(), HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    /**
+     * Достаёт строковое поле из плоского JSON ответа сервера; {@code null}, если поля нет или оно {@code null}.
+     */
+    private static String jsonField(String json, String name) {
+        Matcher m = Pattern.compile("\"" + name + "\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"").matcher(json);
+        return m.find() ? m.group(1).replace("\\/", "/").replace("\\\"", "\"") : null;
+    }
+
     private WebEngine getWebEngine(WebView webView) {
         WebEngine engine = webView.getEngine();
         engine.setJavaScriptEnabled(true);
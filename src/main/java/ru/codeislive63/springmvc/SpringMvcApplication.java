@@ -2,8 +2,10 @@ package ru.codeislive63.springmvc;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class SpringMvcApplication {
 
     public static void main(String[] args) {
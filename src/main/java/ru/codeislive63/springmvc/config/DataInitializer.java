@@ -3,7 +3,7 @@ package ru.codeislive63.springmvc.config;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
-import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.CarLayout;
 import ru.codeislive63.springmvc.domain.RoleType;
 import ru.codeislive63.springmvc.domain.TrainClass;
 import ru.codeislive63.springmvc.domain.TrainType;
@@ -44,6 +44,18 @@ public class DataInitializer implements CommandLineRunner {
         Train t2 = adminService.createTrain("TRAIN-2", "Региональный 045", 30,
                 TrainType.REGIONAL, TrainClass.ECONOMY, true, false, true);
 
+        Train t3 = adminService.createTrain("TRAIN-701", "Фирменный 701", 0,
+                TrainType.EXPRESS, TrainClass.COMFORT, true, true, true);
+        for (int car = 1; car <= 16; car++) {
+            if (car <= 2) {
+                adminService.addCar(t3.getId(), TrainClass.BUSINESS, CarLayout.SLEEPER, 18);
+            } else if (car <= 8) {
+                adminService.addCar(t3.getId(), TrainClass.COMFORT, CarLayout.COMPARTMENT, 36);
+            } else {
+                adminService.addCar(t3.getId(), TrainClass.ECONOMY, CarLayout.OPEN_BERTH, 54);
+            }
+        }
+
         Route route1 = adminService.createRoute(minsk.getId(), gomel.getId(), 320, "Минск — Гомель",
                 java.util.List.of("Осиповичи", "Жлобин"));
         Route route2 = adminService.createRoute(minsk.getId(), vitebsk.getId(), 280, "Минск — Витебск",
@@ -58,6 +70,8 @@ public class DataInitializer implements CommandLineRunner {
                 LocalDateTime.now().plusHours(4), LocalDateTime.now().plusHours(8), BigDecimal.valueOf(35));
         adminService.createTrip(route2.getId(), t2.getId(),
                 LocalDateTime.now().plusHours(6), LocalDateTime.now().plusHours(10), BigDecimal.valueOf(28));
+        adminService.createTrip(route1.getId(), t3.getId(),
+                LocalDateTime.now().plusHours(20), LocalDateTime.now().plusHours(26), BigDecimal.valueOf(30));
 
         LocalDateTime dep1 = LocalDateTime.now().withSecond(0).withNano(0).plusHours(2);
         LocalDateTime arr1 = dep1.plusHours(2);
@@ -0,0 +1,97 @@
+package ru.codeislive63.springmvc.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Нумерует остановки маршрутов, сохранённые до появления колонки {@code route_stops.stop_index}.
+ * <p>
+ * Схема обновляется через {@code ddl-auto=update}, а он не добавит NOT NULL колонку в непустую таблицу
+ * и не заполнит её. Поэтому до создания фабрики EntityManager колонка добавляется здесь, строки каждого
+ * маршрута нумеруются с нуля в порядке их физического хранения (порядке вставки), после чего колонка
+ * становится NOT NULL и входит в первичный ключ, как в схеме, которую строит Hibernate.
+ * На новой или уже пронумерованной базе ничего не делает, поэтому безопасна при каждом старте.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RouteStopIndexMigration implements InitializingBean {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterPropertiesSet() {
+        migrate();
+    }
+
+    /**
+     * Добавляет и заполняет порядковую колонку остановок, если её нет или в ней есть пропуски.
+     *
+     * @return number of numbered rows
+     */
+    public int migrate() {
+        if (!exists("select count(*) from information_schema.tables"
+                + " where lower(table_name) = 'route_stops' and table_schema = current_schema")) {
+            return 0;
+        }
+        if (!exists("select count(*) from information_schema.columns"
+                + " where lower(table_name) = 'route_stops' and lower(column_name) = 'stop_index'"
+                + " and table_schema = current_schema")) {
+            jdbcTemplate.execute("alter table route_stops add column stop_index integer");
+        }
+        int numbered = 0;
+        if (exists("select count(*) from route_stops where stop_index is null")) {
+            String row = rowReference();
+            numbered = jdbcTemplate.update("update route_stops s set stop_index = ("
+                    + "select count(*) from route_stops o where o.route_id = s.route_id and o." + row + " < s." + row
+                    + ") where s.route_id in (select route_id from route_stops where stop_index is null)");
+            log.info("Numbered {} route stops saved without stop_index", numbered);
+        }
+        if (exists("select count(*) from information_schema.columns"
+                + " where lower(table_name) = 'route_stops' and lower(column_name) = 'stop_index'"
+                + " and is_nullable = 'YES' and table_schema = current_schema")) {
+            jdbcTemplate.execute("alter table route_stops alter column stop_index set not null");
+        }
+        if (!exists("select count(*) from information_schema.table_constraints"
+                + " where lower(table_name) = 'route_stops' and constraint_type = 'PRIMARY KEY'"
+                + " and table_schema = current_schema")) {
+            jdbcTemplate.execute("alter table route_stops add primary key (route_id, stop_index)");
+        }
+        return numbered;
+    }
+
+    private boolean exists(String countQuery) {
+        Integer count = jdbcTemplate.queryForObject(countQuery, Integer.class);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Возвращает псевдоколонку, упорядочивающую строки так, как они хранятся: {@code ctid} в PostgreSQL,
+     * {@code _ROWID_} в H2.
+     */
+    private String rowReference() {
+        String product = jdbcTemplate.execute(
+                (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return switch (product) {
+            case "PostgreSQL" -> "ctid";
+            case "H2" -> "_ROWID_";
+            default -> throw new IllegalStateException("Нумерация остановок не поддерживается для " + product);
+        };
+    }
+
+    /**
+     * Заставляет фабрику EntityManager, а с ней и обновление схемы, дождаться миграции.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(RouteStopIndexMigration.class);
+        }
+    }
+}
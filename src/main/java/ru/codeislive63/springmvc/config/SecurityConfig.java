@@ -37,6 +37,7 @@ public class SecurityConfig {
                                     "/profile/**"
                             ).authenticated()
                             .requestMatchers("/admin/**").hasRole("ADMIN")
+                            .requestMatchers("/actuator/metrics/**").hasRole("ADMIN")
                             .anyRequest().authenticated()
             )
             .formLogin(login -> login
@@ -13,9 +13,13 @@ import ru.codeislive63.springmvc.domain.entity.Trip;
 import ru.codeislive63.springmvc.security.UserPrincipal;
 import ru.codeislive63.springmvc.service.BookingService;
 import ru.codeislive63.springmvc.service.TripService;
+import ru.codeislive63.springmvc.service.WaitlistService;
+import ru.codeislive63.springmvc.service.booking.SeatInventory;
 import ru.codeislive63.springmvc.web.dto.BookingRequest;
+import ru.codeislive63.springmvc.web.dto.GroupBookingRequest;
 
 import java.util.List;
+import java.util.Map;
 
 @Controller
 @RequestMapping("/booking")
@@ -24,6 +28,7 @@ public class BookingController {
 
     private final BookingService bookingService;
     private final TripService tripService;
+    private final WaitlistService waitlistService;
 
     @PostMapping("/{tripId}")
     public ResponseEntity<Ticket> book(@PathVariable Long tripId,
@@ -51,6 +56,32 @@ public class BookingController {
         return ResponseEntity.ok(ticket);
     }
 
+    @PostMapping("/waitlist/{tripId}")
+    public String joinWaitlist(@PathVariable Long tripId,
+                               @AuthenticationPrincipal UserPrincipal principal,
+                               RedirectAttributes ra) {
+        try {
+            waitlistService.join(principal.user().getId(), tripId);
+            ra.addFlashAttribute("success", "Вы в листе ожидания. Место будет забронировано автоматически, когда освободится");
+        } catch (Exception e) {
+            ra.addFlashAttribute("error", e.getMessage());
+        }
+        return "redirect:/profile";
+    }
+
+    @PostMapping("/waitlist/{entryId}/leave")
+    public String leaveWaitlist(@PathVariable Long entryId,
+                                @AuthenticationPrincipal UserPrincipal principal,
+                                RedirectAttributes ra) {
+        try {
+            waitlistService.leave(principal.user().getId(), entryId);
+            ra.addFlashAttribute("success", "Заявка снята из листа ожидания");
+        } catch (Exception e) {
+            ra.addFlashAttribute("error", e.getMessage());
+        }
+        return "redirect:/profile";
+    }
+
     @GetMapping("/my")
     public String my(@AuthenticationPrincipal UserPrincipal principal, Model model) {
         List<Ticket> tickets = bookingService.myTickets(principal.user().getId());
@@ -62,6 +93,8 @@ public class BookingController {
     public String start(@RequestParam(required = false) Long tripId,
                         @RequestParam(required = false) Long tripId1,
                         @RequestParam(required = false) Long tripId2,
+                        @RequestParam(required = false) Integer boardStop,
+                        @RequestParam(required = false) Integer alightStop,
                         Model model) {
 
         if (tripId != null) {
@@ -69,8 +102,25 @@ public class BookingController {
             model.addAttribute("tripId", tripId);
             model.addAttribute("trip", trip);
             model.addAttribute("routeLabel", routeLabel(trip));
-            model.addAttribute("seats", bookingService.availableSeats(tripId));
-            model.addAttribute("seatMap", bookingService.seatMap(tripId));
+            List<String> stops = bookingService.stopNames(trip);
+            int lastStop = stops.size() - 1;
+            int fromStop = boardStop != null ? boardStop : 0;
+            int toStop = alightStop != null ? alightStop : lastStop;
+            if (fromStop < 0 || fromStop >= toStop || toStop > lastStop) {
+                fromStop = 0;
+                toStop = lastStop;
+            }
+            boolean partial = fromStop > 0 || toStop < lastStop;
+            model.addAttribute("stops", stops);
+            model.addAttribute("boardStop", fromStop);
+            model.addAttribute("alightStop", toStop);
+            model.addAttribute("partialTrip", partial);
+
+            SeatInventory inventory = partial
+                    ? bookingService.seatInventory(trip, fromStop, toStop)
+                    : bookingService.seatInventory(trip);
+            model.addAttribute("freeCount", inventory.freeCount());
+            model.addAttribute("seatMap", inventory.seatMap());
         }
 
         if (tripId1 != null && tripId2 != null) {
@@ -82,10 +132,13 @@ public class BookingController {
             model.addAttribute("tripB", tripB);
             model.addAttribute("routeLabelA", routeLabel(tripA));
             model.addAttribute("routeLabelB", routeLabel(tripB));
-            model.addAttribute("seats1", bookingService.availableSeats(tripId1));
-            model.addAttribute("seats2", bookingService.availableSeats(tripId2));
-            model.addAttribute("seatMap1", bookingService.seatMap(tripId1));
-            model.addAttribute("seatMap2", bookingService.seatMap(tripId2));
+            Map<Long, SeatInventory> inventories = bookingService.seatInventories(List.of(tripA, tripB));
+            SeatInventory inventoryA = inventories.get(tripA.getId());
+            SeatInventory inventoryB = inventories.get(tripB.getId());
+            model.addAttribute("freeCount1", inventoryA.freeCount());
+            model.addAttribute("freeCount2", inventoryB.freeCount());
+            model.addAttribute("seatMap1", inventoryA.seatMap());
+            model.addAttribute("seatMap2", inventoryB.seatMap());
         }
         return "pages/booking/select-seat";
     }
@@ -104,19 +157,13 @@ public class BookingController {
         } else if (request.getTripId1() != null && request.getTripId2() != null
                 && request.getSeat1() != null && request.getSeat2() != null) {
 
-            Ticket ticketA = bookingService.bookSeat(
-                    principal.user().getId(),
-                    request.getTripId1(),
-                    request.getSeat1(),
-                    request);
-
-            Ticket ticketB = bookingService.bookSeat(
+            List<Ticket> tickets = bookingService.bookItinerary(
                     principal.user().getId(),
-                    request.getTripId2(),
-                    request.getSeat2(),
+                    List.of(new BookingService.LegSeat(request.getTripId1(), request.getSeat1()),
+                            new BookingService.LegSeat(request.getTripId2(), request.getSeat2())),
                     request);
 
-            model.addAttribute("tickets", List.of(ticketA, ticketB));
+            model.addAttribute("tickets", tickets);
         } else {
             throw new IllegalArgumentException("Неверные параметры для бронирования");
         }
@@ -124,6 +171,21 @@ public class BookingController {
         return "pages/booking/confirmation";
     }
 
+    @PostMapping("/reserve-group")
+    public String reserveGroup(@ModelAttribute GroupBookingRequest request,
+                               @AuthenticationPrincipal UserPrincipal principal,
+                               Model model) {
+        if (request.getTripId() == null || request.getPassengers().isEmpty()) {
+            throw new IllegalArgumentException("Неверные параметры для бронирования");
+        }
+        List<Ticket> tickets = bookingService.bookGroup(
+                principal.user().getId(),
+                request.getTripId(),
+                request.getPassengers());
+        model.addAttribute("tickets", tickets);
+        return "pages/booking/confirmation";
+    }
+
     private String routeLabel(Trip trip) {
         if (trip == null || trip.getRoute() == null) {
             return "Маршрут";
@@ -10,6 +10,8 @@ import ru.codeislive63.springmvc.domain.TicketStatus;
 import ru.codeislive63.springmvc.domain.entity.Ticket;
 import ru.codeislive63.springmvc.security.UserPrincipal;
 import ru.codeislive63.springmvc.service.BookingService;
+import ru.codeislive63.springmvc.service.NotificationService;
+import ru.codeislive63.springmvc.service.WaitlistService;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -19,6 +21,8 @@ import java.util.stream.Collectors;
 public class ProfileController {
 
     private final BookingService bookingService;
+    private final WaitlistService waitlistService;
+    private final NotificationService notificationService;
 
     @GetMapping("/profile")
     public String profile(@AuthenticationPrincipal UserPrincipal principal, Model model) {
@@ -49,6 +53,9 @@ public class ProfileController {
         model.addAttribute("savedDocuments", extractDocuments(tickets));
         model.addAttribute("loyaltyPoints", paid.size() * 120 + unpaid.size() * 40);
         model.addAttribute("loyaltyTier", determineTier(paid.size()));
+        model.addAttribute("waitlist", waitlistService.waitingEntries(user.getId()));
+        model.addAttribute("notifications", notificationService.feed(user.getId()));
+        notificationService.markAllRead(user.getId());
         return "pages/profile/index";
     }
 
@@ -2,17 +2,20 @@ package ru.codeislive63.springmvc.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import ru.codeislive63.springmvc.domain.TrainClass;
 import ru.codeislive63.springmvc.domain.TrainType;
-import ru.codeislive63.springmvc.repository.StationRepository;
 import ru.codeislive63.springmvc.service.RouteSearchService;
+import ru.codeislive63.springmvc.service.search.StationIndex;
+import ru.codeislive63.springmvc.web.dto.FareDay;
 import ru.codeislive63.springmvc.web.dto.RouteSearchRequest;
 import ru.codeislive63.springmvc.web.dto.StationSuggestion;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Objects;
 
@@ -21,14 +24,15 @@ import java.util.Objects;
 @RequiredArgsConstructor
 public class RouteSearchController {
 
-    private final StationRepository stationRepository;
+    private static final int CALENDAR_DAYS = 3;
+
     private final RouteSearchService routeSearchService;
+    private final StationIndex stationIndex;
 
     @GetMapping("/search")
     public String search(@Valid @ModelAttribute("req") RouteSearchRequest req,
                          BindingResult binding,
                          Model model) {
-        model.addAttribute("stations", stationRepository.findAll());
         model.addAttribute("trainTypes", TrainType.values());
         model.addAttribute("trainClasses", TrainClass.values());
 
@@ -51,22 +55,33 @@ public class RouteSearchController {
             return "pages/routes/search";
         }
 
+        try {
+            model.addAttribute("itineraries", routeSearchService.search(req));
+            model.addAttribute("fareCalendar", routeSearchService.fareCalendar(
+                    req.getFromPointId(), req.getToPointId(), req.getDepartureDate(), CALENDAR_DAYS));
+        } catch (IllegalStateException e) {
+            model.addAttribute("error", e.getMessage());
+            return "pages/routes/search";
+        }
         model.addAttribute("req", req);
-        model.addAttribute("itineraries", routeSearchService.search(req));
         return "pages/routes/results";
     }
 
     @ResponseBody
-    @GetMapping("/stations")
-    public List<StationSuggestion> stations(@RequestParam("q") String query) {
-        String q = query == null ? "" : query.trim();
-        if (q.isBlank()) {
+    @GetMapping("/calendar")
+    public List<FareDay> calendar(@RequestParam("fromPointId") Long fromPointId,
+                                  @RequestParam("toPointId") Long toPointId,
+                                  @RequestParam("date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                  @RequestParam(value = "days", defaultValue = "3") int days) {
+        if (Objects.equals(fromPointId, toPointId)) {
             return List.of();
         }
-        return stationRepository
-                .findTop10ByNameContainingIgnoreCaseOrCodeContainingIgnoreCase(q, q)
-                .stream()
-                .map(s -> new StationSuggestion(s.getId(), s.getName(), s.getCode()))
-                .toList();
+        return routeSearchService.fareCalendar(fromPointId, toPointId, date, days);
+    }
+
+    @ResponseBody
+    @GetMapping("/stations")
+    public List<StationSuggestion> stations(@RequestParam("q") String query) {
+        return stationIndex.suggest(query);
     }
 }
@@ -4,40 +4,59 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import ru.codeislive63.springmvc.domain.TicketStatus;
 import ru.codeislive63.springmvc.service.AnalyticsService;
+import ru.codeislive63.springmvc.service.analytics.ReportJob;
+import ru.codeislive63.springmvc.service.analytics.ReportJobs;
+import ru.codeislive63.springmvc.service.analytics.TicketRollups;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @RequiredArgsConstructor
 public class AdminDashboardController {
 
     private final AnalyticsService analyticsService;
+    private final TicketRollups ticketRollups;
+    private final ReportJobs reportJobs;
 
+    /**
+     * Дашборд аналитики. График заполняемости показывает самые заполненные рейсы окна
+     * ({@code occupancy=top}) или распределение рейсов по интервалам заполняемости ({@code occupancy=buckets}).
+     */
     @GetMapping("/admin/dashboard")
-    public String analytics(Model model) {
-        var occupancies = analyticsService.getTripOccupancies();
+    public String analytics(@RequestParam(name = "occupancy", defaultValue = "top") String occupancyView, Model model) {
         var demand = analyticsService.getDemandByDate(14);
         var statusDist = analyticsService.getTicketStatusDistribution();
         var revenue = analyticsService.getRevenueByRoute();
         var cancellations = analyticsService.getCancellationsByRoute();
         var routeDemand = analyticsService.getRouteDemand();
 
-        List<String> ocLabels = occupancies.stream()
-                .map(o -> o.routeLabel() + " (" +
-                        o.trip().getDepartureTime().toLocalDate() + " " +
-                        o.trip().getDepartureTime().toLocalTime().withSecond(0).withNano(0) + ")")
-                .toList();
-        List<Double> ocData = occupancies.stream().map(AnalyticsService.TripOccupancy::occupancy).toList();
+        boolean buckets = "buckets".equals(occupancyView);
+        List<String> ocLabels;
+        List<? extends Number> ocData;
+        if (buckets) {
+            var histogram = analyticsService.getOccupancyHistogram();
+            ocLabels = List.copyOf(histogram.keySet());
+            ocData = List.copyOf(histogram.values());
+        } else {
+            var occupancies = analyticsService.getFullestTrips();
+            ocLabels = occupancies.stream()
+                    .map(o -> o.routeLabel() + " (" + o.formattedDeparture() + ")")
+                    .toList();
+            ocData = occupancies.stream().map(AnalyticsService.TripOccupancy::occupancy).toList();
+        }
+        var window = analyticsService.occupancyWindow();
 
         List<String> demandLabels = new ArrayList<>();
         List<Long> demandValues = new ArrayList<>();
@@ -67,6 +86,9 @@ public class AdminDashboardController {
         model.addAttribute("routeDemandValues", routeDemand.values());
         model.addAttribute("ocLabels", ocLabels);
         model.addAttribute("ocData", ocData);
+        model.addAttribute("ocBuckets", buckets);
+        model.addAttribute("ocFrom", window.from().toLocalDate());
+        model.addAttribute("ocTo", window.to().toLocalDate().minusDays(1));
         model.addAttribute("demandLabels", demandLabels);
         model.addAttribute("demandValues", demandValues);
         model.addAttribute("statusLabels", statusLabels);
@@ -74,15 +96,28 @@ public class AdminDashboardController {
         return "pages/admin/dashboard";
     }
 
+    /**
+     * Пересчитывает агрегаты аналитики из таблицы билетов.
+     */
+    @PostMapping("/admin/dashboard/rollups/rebuild")
+    public String rebuildRollups(RedirectAttributes ra) {
+        ticketRollups.rebuild();
+        ra.addFlashAttribute("success", "Агрегаты аналитики пересчитаны");
+        return "redirect:/admin/dashboard";
+    }
+
+    /**
+     * Отдаёт XLSX отчёт через задание {@link ReportJobs}: запрос не занимает поток Tomcat, пока отчёт строится,
+     * а одновременные запросы по тем же данным получают один и тот же файл.
+     * Переполненная очередь отчётов отвечает 503, как и API заданий.
+     */
     @GetMapping("/admin/dashboard/report.xlsx")
-    @ResponseBody
-    public ResponseEntity<ByteArrayResource> downloadReport() {
-        byte[] data = analyticsService.buildReport();
-        var resource = new ByteArrayResource(data);
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics-report.xlsx")
-                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                .contentLength(data.length)
-                .body(resource);
+    public CompletableFuture<ResponseEntity<Resource>> downloadReport() {
+        try {
+            ReportJob job = reportJobs.submit();
+            return job.result().thenApply(file -> AdminReportController.xlsx(reportJobs, job.id()));
+        } catch (IllegalStateException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+        }
     }
 }
@@ -0,0 +1,89 @@
+package ru.codeislive63.springmvc.controller.admin;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.codeislive63.springmvc.service.analytics.ReportJob;
+import ru.codeislive63.springmvc.service.analytics.ReportJobs;
+import ru.codeislive63.springmvc.web.dto.ReportJobView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * API заданий на XLSX отчёт: создать задание, опрашивать его состояние и скачать готовый файл.
+ */
+@Controller
+@RequiredArgsConstructor
+@RequestMapping("/admin/reports/jobs")
+public class AdminReportController {
+
+    static final MediaType XLSX =
+            MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    private final ReportJobs reportJobs;
+
+    @PostMapping
+    @ResponseBody
+    public ResponseEntity<ReportJobView> submit() {
+        try {
+            ReportJob job = reportJobs.submit();
+            return ResponseEntity.accepted()
+                    .location(ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{id}").build(job.id()))
+                    .body(view(job));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ReportJobView(null, ReportJob.Status.FAILED.name(), 0, e.getMessage(), null));
+        }
+    }
+
+    @GetMapping("/{id}")
+    @ResponseBody
+    public ResponseEntity<ReportJobView> status(@PathVariable String id) {
+        return ResponseEntity.of(reportJobs.find(id).map(this::view));
+    }
+
+    @GetMapping("/{id}/file")
+    @ResponseBody
+    public ResponseEntity<Resource> download(@PathVariable String id) {
+        return xlsx(reportJobs, id);
+    }
+
+    /**
+     * Отдаёт файл готового задания; файл не удаляется с диска, пока не будет отправлен.
+     */
+    static ResponseEntity<Resource> xlsx(ReportJobs reportJobs, String id) {
+        try {
+            Resource file = reportJobs.artifact(id);
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=analytics-report.xlsx")
+                    .contentType(XLSX)
+                    .contentLength(file.contentLength())
+                    .body(file);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ReportJobView view(ReportJob job) {
+        String downloadUrl = job.status() == ReportJob.Status.DONE
+                ? ServletUriComponentsBuilder.fromCurrentContextPath()
+                        .path("/admin/reports/jobs/{id}/file").build(job.id()).toString()
+                : null;
+        return new ReportJobView(job.id(), job.status().name(), job.progress(), job.error(), downloadUrl);
+    }
+}
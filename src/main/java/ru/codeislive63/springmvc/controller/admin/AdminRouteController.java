@@ -1,6 +1,7 @@
 package ru.codeislive63.springmvc.controller.admin;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -11,6 +12,8 @@ import ru.codeislive63.springmvc.domain.entity.Station;
 import ru.codeislive63.springmvc.repository.RouteRepository;
 import ru.codeislive63.springmvc.repository.StationRepository;
 import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.reference.ReferenceData;
+import ru.codeislive63.springmvc.service.search.RouteChangedEvent;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -24,10 +27,12 @@ public class AdminRouteController {
     private final RouteRepository routeRepository;
     private final StationRepository stationRepository;
     private final TripRepository tripRepository;
+    private final ReferenceData referenceData;
+    private final ApplicationEventPublisher eventPublisher;
 
     @GetMapping
     public String list(@RequestParam(value = "q", required = false) String q, Model model) {
-        List<Route> routes = routeRepository.findAll();
+        List<Route> routes = referenceData.routes();
 
         if (q != null && !q.isBlank()) {
             String s = q.toLowerCase();
@@ -50,7 +55,7 @@ public class AdminRouteController {
     @GetMapping("/new")
     public String createForm(Model model) {
         model.addAttribute("route", new Route());
-        model.addAttribute("stations", stationRepository.findAll());
+        model.addAttribute("stations", referenceData.stations());
         return "pages/admin/routes/form";
     }
 
@@ -61,7 +66,7 @@ public class AdminRouteController {
                 .orElseThrow(() -> new IllegalArgumentException("Маршрут не найден"));
 
         model.addAttribute("route", route);
-        model.addAttribute("stations", stationRepository.findAll());
+        model.addAttribute("stations", referenceData.stations());
         return "pages/admin/routes/form";
     }
 
@@ -102,7 +107,8 @@ public class AdminRouteController {
 
         route.setName(routeName);
 
-        routeRepository.save(route);
+        Route saved = routeRepository.save(route);
+        eventPublisher.publishEvent(new RouteChangedEvent(saved.getId()));
         ra.addFlashAttribute("success", "Маршрут сохранён");
         return "redirect:/admin/panel/routes";
     }
@@ -118,6 +124,7 @@ public class AdminRouteController {
         }
 
         routeRepository.deleteById(id);
+        eventPublisher.publishEvent(new RouteChangedEvent(id));
         ra.addFlashAttribute("success", "Маршрут удалён");
         return "redirect:/admin/panel/routes";
     }
@@ -1,6 +1,7 @@
 package ru.codeislive63.springmvc.controller.admin;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -9,6 +10,8 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import ru.codeislive63.springmvc.domain.entity.Station;
 import ru.codeislive63.springmvc.repository.StationRepository;
+import ru.codeislive63.springmvc.service.reference.ReferenceData;
+import ru.codeislive63.springmvc.service.search.StationChangedEvent;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -20,10 +23,12 @@ import java.util.stream.Collectors;
 public class AdminStationController {
 
     private final StationRepository stationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReferenceData referenceData;
 
     @GetMapping
     public String list(@RequestParam(value = "q", required = false) String q, Model model) {
-        List<Station> stations = stationRepository.findAll();
+        List<Station> stations = referenceData.stations();
 
         if (q != null && !q.isBlank()) {
             String s = q.toLowerCase();
@@ -59,9 +64,10 @@ public class AdminStationController {
     @PostMapping("/create")
     public String create(@ModelAttribute Station station, RedirectAttributes ra) {
         try {
-            stationRepository.save(station);
-            ra.addFlashAttribute("success",
-                    station.getId() == null ? "Станция создана" : "Станция сохранена");
+            boolean created = station.getId() == null;
+            Station saved = stationRepository.save(station);
+            eventPublisher.publishEvent(new StationChangedEvent(saved.getId()));
+            ra.addFlashAttribute("success", created ? "Станция создана" : "Станция сохранена");
         } catch (DataIntegrityViolationException ex) {
             ra.addFlashAttribute("error",
                     "Нельзя сохранить станцию: проверьте уникальность кода и корректность данных.");
@@ -73,6 +79,7 @@ public class AdminStationController {
     public String delete(@PathVariable Long id, RedirectAttributes ra) {
         try {
             stationRepository.deleteById(id);
+            eventPublisher.publishEvent(new StationChangedEvent(id));
             ra.addFlashAttribute("success", "Станция удалена");
         } catch (DataIntegrityViolationException ex) {
             ra.addFlashAttribute("error",
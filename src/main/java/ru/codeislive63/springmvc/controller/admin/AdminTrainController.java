@@ -1,6 +1,7 @@
 package ru.codeislive63.springmvc.controller.admin;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -9,6 +10,8 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import ru.codeislive63.springmvc.domain.entity.Train;
 import ru.codeislive63.springmvc.repository.TrainRepository;
+import ru.codeislive63.springmvc.service.reference.ReferenceData;
+import ru.codeislive63.springmvc.service.search.TrainChangedEvent;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -20,10 +23,12 @@ import java.util.stream.Collectors;
 public class AdminTrainController {
 
     private final TrainRepository trainRepository;
+    private final ReferenceData referenceData;
+    private final ApplicationEventPublisher eventPublisher;
 
     @GetMapping
     public String list(@RequestParam(value = "q", required = false) String q, Model model) {
-        List<Train> trains = trainRepository.findAll();
+        List<Train> trains = referenceData.trains();
 
         if (q != null && !q.isBlank()) {
             String s = q.toLowerCase();
@@ -59,7 +64,8 @@ public class AdminTrainController {
     @PostMapping("/create")
     public String create(@ModelAttribute Train train, RedirectAttributes ra) {
         try {
-            trainRepository.save(train);
+            Train saved = trainRepository.save(train);
+            eventPublisher.publishEvent(new TrainChangedEvent(saved.getId()));
             ra.addFlashAttribute("success", "Поезд сохранён");
         } catch (DataIntegrityViolationException ex) {
             ra.addFlashAttribute("error",
@@ -72,6 +78,7 @@ public class AdminTrainController {
     public String delete(@PathVariable Long id, RedirectAttributes ra) {
         try {
             trainRepository.deleteById(id);
+            eventPublisher.publishEvent(new TrainChangedEvent(id));
             ra.addFlashAttribute("success", "Поезд удалён");
         } catch (DataIntegrityViolationException ex) {
             ra.addFlashAttribute("error",
@@ -1,6 +1,7 @@
 package ru.codeislive63.springmvc.controller.admin;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
@@ -16,7 +17,11 @@ import ru.codeislive63.springmvc.repository.RouteRepository;
 import ru.codeislive63.springmvc.repository.TicketRepository;
 import ru.codeislive63.springmvc.repository.TrainRepository;
 import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.UserNotificationRepository;
+import ru.codeislive63.springmvc.repository.WaitlistEntryRepository;
 import ru.codeislive63.springmvc.service.AdminService;
+import ru.codeislive63.springmvc.service.reference.ReferenceData;
+import ru.codeislive63.springmvc.service.search.TripChangedEvent;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -34,6 +39,10 @@ public class AdminTripController {
     private final RouteRepository routeRepository;
     private final TrainRepository trainRepository;
     private final AdminService adminService;
+    private final WaitlistEntryRepository waitlistRepository;
+    private final UserNotificationRepository notificationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ReferenceData referenceData;
 
     @GetMapping("")
     public String listTrips(@RequestParam(value = "q", required = false) String query,
@@ -58,8 +67,8 @@ public class AdminTripController {
 
     @GetMapping("/new")
     public String createForm(Model model) {
-        List<Route> routes = routeRepository.findAll();
-        List<Train> trains = trainRepository.findAll();
+        List<Route> routes = referenceData.routes();
+        List<Train> trains = referenceData.trains();
         model.addAttribute("routes", routes);
         model.addAttribute("trains", trains);
         model.addAttribute("trip", new ru.codeislive63.springmvc.domain.entity.Trip());
@@ -102,12 +111,15 @@ public class AdminTripController {
             return "redirect:/admin/panel/trips";
         }
 
+        waitlistRepository.deleteByTripId(id);
+        notificationRepository.detachTrip(id);
         ticketRepository.deleteByTripIdAndStatusIn(
                 id,
                 List.of(TicketStatus.CANCELLED, TicketStatus.REFUNDED)
         );
 
         tripRepository.deleteById(id);
+        eventPublisher.publishEvent(new TripChangedEvent(id));
 
         ra.addFlashAttribute("success", "Рейс удалён");
         return "redirect:/admin/panel/trips";
@@ -121,8 +133,8 @@ public class AdminTripController {
             return "redirect:/admin/panel/trips";
         }
         model.addAttribute("trip", trip);
-        model.addAttribute("routes", routeRepository.findAll());
-        model.addAttribute("trains", trainRepository.findAll());
+        model.addAttribute("routes", referenceData.routes());
+        model.addAttribute("trains", referenceData.trains());
         return "pages/admin/trips/form";
     }
 
@@ -148,6 +160,7 @@ public class AdminTripController {
         trip.setArrivalTime(arrival);
         trip.setBasePrice(basePrice);
         tripRepository.save(trip);
+        eventPublisher.publishEvent(new TripChangedEvent(id));
         ra.addFlashAttribute("success", "Рейс обновлён");
         return "redirect:/admin/panel/trips";
     }
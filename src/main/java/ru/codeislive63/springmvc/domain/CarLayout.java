@@ -0,0 +1,53 @@
+package ru.codeislive63.springmvc.domain;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import static ru.codeislive63.springmvc.domain.SeatAttribute.*;
+
+/**
+ * Планировка вагона. Места повторяют шаблон секции (ряда или купе),
+ * поэтому расположение места вычисляется по номеру и не хранится по каждому месту отдельно.
+ */
+public enum CarLayout {
+    SEATED_2_2("Сидячий 2+2", WINDOW, AISLE, AISLE, WINDOW),
+    SEATED_2_1("Сидячий 2+1", WINDOW, AISLE, WINDOW),
+    OPEN_BERTH("Плацкарт", LOWER, UPPER, LOWER, UPPER, SIDE_LOWER, SIDE_UPPER),
+    COMPARTMENT("Купе", LOWER, UPPER, LOWER, UPPER),
+    SLEEPER("СВ", LOWER, LOWER);
+
+    private final String label;
+    private final SeatAttribute[] section;
+
+    CarLayout(String label, SeatAttribute... section) {
+        this.label = label;
+        this.section = section;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns the position of a seat inside its car.
+     *
+     * @param seatInCar seat number counted from 1 within the car
+     */
+    public SeatAttribute attributeOf(int seatInCar) {
+        return section[Math.floorMod(seatInCar - 1, section.length)];
+    }
+
+    /**
+     * Подписи мест одной секции через {@code |}, в порядке номеров.
+     */
+    public String sectionLabels() {
+        return Arrays.stream(section).map(SeatAttribute::getLabel).collect(Collectors.joining("|"));
+    }
+
+    /**
+     * Планировка по умолчанию для поезда без описанных вагонов.
+     */
+    public static CarLayout defaultFor(TrainClass trainClass) {
+        return trainClass == TrainClass.ECONOMY ? SEATED_2_2 : SEATED_2_1;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.codeislive63.springmvc.domain;
+
+/**
+ * Расположение места в вагоне.
+ */
+public enum SeatAttribute {
+    WINDOW("У окна"),
+    AISLE("У прохода"),
+    LOWER("Нижнее"),
+    UPPER("Верхнее"),
+    SIDE_LOWER("Боковое нижнее"),
+    SIDE_UPPER("Боковое верхнее");
+
+    private final String label;
+
+    SeatAttribute(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
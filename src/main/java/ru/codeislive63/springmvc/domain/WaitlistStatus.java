@@ -0,0 +1,20 @@
+package ru.codeislive63.springmvc.domain;
+
+public enum WaitlistStatus {
+    WAITING,
+    ALLOCATED,
+    CANCELLED;
+
+    /**
+     * Возвращает локализованное название статуса.
+     *
+     * @return строковое представление статуса
+     */
+    public String getLabel() {
+        return switch (this) {
+            case WAITING -> "В ОЖИДАНИИ";
+            case ALLOCATED -> "МЕСТО ВЫДЕЛЕНО";
+            case CANCELLED -> "ОТМЕНЕНО";
+        };
+    }
+}
@@ -33,6 +33,7 @@ public class Route {
 
     @ElementCollection
     @CollectionTable(name = "route_stops", joinColumns = @JoinColumn(name = "route_id"))
+    @OrderColumn(name = "stop_index")
     @Column(name = "stop_name")
     private List<String> stops = new ArrayList<>();
 }
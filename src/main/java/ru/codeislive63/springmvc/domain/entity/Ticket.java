@@ -1,6 +1,7 @@
 package ru.codeislive63.springmvc.domain.entity;
 
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -13,7 +14,8 @@ import java.time.LocalDateTime;
 @Setter
 @NoArgsConstructor
 @Entity
-@Table(name = "tickets")
+@Table(name = "tickets",
+        uniqueConstraints = @UniqueConstraint(name = "uk_tickets_trip_active_seat", columnNames = {"trip_id", "active_seat"}))
 public class Ticket {
 
     @Id
@@ -39,9 +41,40 @@ public class Ticket {
     @Column(nullable = false)
     private LocalDateTime bookedAt;
 
+    /**
+     * Срок удержания места неоплаченным билетом. После него билет {@code BOOKED} отменяется,
+     * а место возвращается в продажу; у оплаченных и отменённых билетов — {@code null}.
+     */
+    private LocalDateTime holdExpiresAt;
+
+    /**
+     * Участок поездки: индексы остановок посадки и высадки (0 — станция отправления рейса).
+     * {@code null} означает поездку на весь рейс.
+     */
+    private Integer boardStop;
+
+    private Integer alightStop;
+
     @Embedded
     private PassengerDetails passengerDetails;
 
     @Embedded
     private AdditionalServices additionalServices;
+
+    /**
+     * Номер места, пока билет на весь рейс активен ({@code BOOKED} или {@code PAID}), иначе {@code null}.
+     * Уникальность пары (рейс, active_seat) не даёт продать одно место дважды,
+     * а отменённые билеты не мешают повторной продаже места. Билеты на часть маршрута
+     * проверяются по участкам под блокировкой строки рейса.
+     */
+    @Setter(AccessLevel.NONE)
+    @Column(name = "active_seat")
+    private Integer activeSeat;
+
+    @PrePersist
+    @PreUpdate
+    void syncActiveSeat() {
+        boolean active = status == TicketStatus.BOOKED || status == TicketStatus.PAID;
+        activeSeat = active && boardStop == null ? seatNumber : null;
+    }
 }
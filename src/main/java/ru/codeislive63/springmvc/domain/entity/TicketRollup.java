@@ -0,0 +1,35 @@
+package ru.codeislive63.springmvc.domain.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Предрасчитанные итоги билетов по маршруту, дате отправления и статусу для дашборда аналитики.
+ * Строки обновляются приращениями после бронирования, оплаты, отмены и истечения брони
+ * и могут быть пересчитаны из таблицы {@code tickets} целиком.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ticket_rollups")
+public class TicketRollup {
+
+    @EmbeddedId
+    private TicketRollupId id;
+
+    @Column(nullable = false)
+    private long tickets;
+
+    @Column(nullable = false)
+    private BigDecimal amount;
+}
@@ -0,0 +1,35 @@
+package ru.codeislive63.springmvc.domain.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Ключ строки агрегата билетов: маршрут, дата отправления рейса и статус билета.
+ */
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Embeddable
+public class TicketRollupId implements Serializable {
+
+    @Column(name = "route_id", nullable = false)
+    private Long routeId;
+
+    @Column(name = "departure_date", nullable = false)
+    private LocalDate departureDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TicketStatus status;
+}
@@ -0,0 +1,31 @@
+package ru.codeislive63.springmvc.domain.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Единственная строка состояния агрегатов билетов. Поколение растёт с каждым полным пересчётом;
+ * блокировка строки упорядочивает пересчёт с фиксациями изменений билетов и записью приращений на всех узлах.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ticket_rollup_state")
+public class TicketRollupState {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private long generation;
+}
@@ -1,5 +1,6 @@
 package ru.codeislive63.springmvc.domain.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -7,6 +8,9 @@ import lombok.Setter;
 import ru.codeislive63.springmvc.domain.TrainClass;
 import ru.codeislive63.springmvc.domain.TrainType;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Getter
 @Setter
 @NoArgsConstructor
@@ -41,6 +45,17 @@ public class Train {
     @Column(nullable = false)
     private boolean powerOutlets = false;
 
+    /**
+     * Общее число мест. Для поезда с описанными вагонами равно сумме мест всех вагонов.
+     */
     @Column(nullable = false)
     private int seatCapacity;
+
+    /**
+     * Состав поезда. Пустой список означает один вагон класса {@link #trainClass} на все места.
+     */
+    @JsonIgnore
+    @OneToMany(mappedBy = "train", cascade = CascadeType.REMOVE)
+    @OrderBy("number")
+    private List<TrainCar> cars = new ArrayList<>();
 }
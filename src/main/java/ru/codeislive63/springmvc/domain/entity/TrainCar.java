@@ -0,0 +1,45 @@
+package ru.codeislive63.springmvc.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.codeislive63.springmvc.domain.CarLayout;
+import ru.codeislive63.springmvc.domain.TrainClass;
+
+/**
+ * Вагон поезда. Места нумеруются сквозной нумерацией по всему поезду:
+ * вагон занимает номера с {@code firstSeat} по {@code firstSeat + seatCount - 1}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "train_cars",
+        uniqueConstraints = @UniqueConstraint(name = "uk_train_cars_train_number", columnNames = {"train_id", "car_number"}))
+public class TrainCar {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    private Train train;
+
+    @Column(name = "car_number", nullable = false)
+    private int number;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TrainClass carClass = TrainClass.ECONOMY;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CarLayout layout = CarLayout.SEATED_2_2;
+
+    @Column(nullable = false)
+    private int seatCount;
+
+    @Column(nullable = false)
+    private int firstSeat;
+}
@@ -0,0 +1,39 @@
+package ru.codeislive63.springmvc.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сообщение в ленте уведомлений личного кабинета.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "user_notifications",
+        indexes = @Index(name = "idx_user_notifications_user", columnList = "user_id, id"))
+public class UserNotification {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false)
+    private UserAccount user;
+
+    @Column(nullable = false, length = 500)
+    private String message;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "is_read", nullable = false)
+    private boolean read;
+
+    @ManyToOne
+    private Ticket ticket;
+}
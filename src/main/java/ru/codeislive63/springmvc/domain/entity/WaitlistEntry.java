@@ -0,0 +1,48 @@
+package ru.codeislive63.springmvc.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import ru.codeislive63.springmvc.domain.WaitlistStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Заявка в листе ожидания заполненного рейса.
+ * Очерёдность определяется идентификатором заявки: освободившееся место получает самая ранняя
+ * заявка в статусе {@code WAITING}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "waitlist_entries",
+        indexes = @Index(name = "idx_waitlist_trip_status", columnList = "trip_id, status, id"))
+public class WaitlistEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(optional = false)
+    private UserAccount user;
+
+    @ManyToOne(optional = false)
+    private Trip trip;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private WaitlistStatus status = WaitlistStatus.WAITING;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * Билет, выписанный по заявке; заполняется вместе со статусом {@code ALLOCATED}.
+     */
+    @OneToOne
+    private Ticket ticket;
+
+    private LocalDateTime allocatedAt;
+}
@@ -1,11 +1,34 @@
 package ru.codeislive63.springmvc.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import ru.codeislive63.springmvc.domain.entity.Route;
 import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.repository.projection.RouteStop;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface RouteRepository extends JpaRepository<Route, Long> {
     Optional<Route> findByOriginAndDestination(Station origin, Station destination);
+
+    /**
+     * Returns every route with its origin and destination in one statement.
+     */
+    @Query("select r from Route r join fetch r.origin join fetch r.destination order by r.id")
+    List<Route> findAllWithStations();
+
+    /**
+     * Returns the stops of all given routes in one statement, in route order.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.RouteStop(r.id, index(s), s)
+        from Route r
+        join r.stops s
+        where r.id in :routeIds
+        order by r.id, index(s)
+    """)
+    List<RouteStop> findStops(@Param("routeIds") Collection<Long> routeIds);
 }
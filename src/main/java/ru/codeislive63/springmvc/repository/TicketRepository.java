@@ -1,13 +1,22 @@
 package ru.codeislive63.springmvc.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.codeislive63.springmvc.domain.TicketStatus;
 import ru.codeislive63.springmvc.domain.entity.Ticket;
 import ru.codeislive63.springmvc.domain.entity.Trip;
 import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.projection.BookedInterval;
+import ru.codeislive63.springmvc.repository.projection.BookedSeat;
+import ru.codeislive63.springmvc.repository.projection.StationTickets;
+import ru.codeislive63.springmvc.repository.projection.TicketHold;
+import ru.codeislive63.springmvc.repository.projection.TicketRollupRow;
 
+import java.time.LocalDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
@@ -15,8 +24,13 @@ import java.util.Optional;
 public interface TicketRepository extends JpaRepository<Ticket, Long> {
     List<Ticket> findByUser(UserAccount user);
     Optional<Ticket> findByIdAndUser(Long id, UserAccount user);
+
+    @Query("select t.trip.id from Ticket t where t.id = :id")
+    Optional<Long> findTripIdById(@Param("id") Long id);
+
     void deleteByTripIdAndStatusIn(Long tripId, java.util.Collection<ru.codeislive63.springmvc.domain.TicketStatus> statuses);
     long countByTripIdAndStatusIn(Long tripId, Collection<TicketStatus> statuses);
+    boolean existsByTripId(Long tripId);
 
     /**
      * Returns seat numbers that are currently booked (including paid) for the given trip.
@@ -28,4 +42,251 @@ public interface TicketRepository extends JpaRepository<Ticket, Long> {
      */
     @Query("select t.seatNumber from Ticket t where t.trip.id = :tripId and t.status in :statuses")
     List<Integer> findBookedSeats(@Param("tripId") Long tripId, @Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Returns occupied seats of the trip together with the stop interval each of them is taken for.
+     *
+     * @param tripId   ID of the trip
+     * @param statuses statuses to include when looking for occupied seats
+     * @return (seat, board stop, alight stop) triples
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.BookedInterval(t.seatNumber, t.boardStop, t.alightStop)
+        from Ticket t
+        where t.trip.id = :tripId and t.status in :statuses
+    """)
+    List<BookedInterval> findBookedIntervals(@Param("tripId") Long tripId,
+                                             @Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Returns occupied seats of several trips with a single query.
+     *
+     * @param tripIds  IDs of the trips
+     * @param statuses statuses to include when looking for occupied seats
+     * @return (trip, seat) pairs that are not free
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.BookedSeat(t.trip.id, t.seatNumber)
+        from Ticket t
+        where t.trip.id in :tripIds and t.status in :statuses
+    """)
+    List<BookedSeat> findBookedSeatsByTrips(@Param("tripIds") Collection<Long> tripIds,
+                                            @Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Groups all tickets by route, departure date of the trip and status; the source of a full rollup rebuild.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TicketRollupRow(
+            tr.route.id, cast(tr.departureTime as LocalDate), t.status, count(t), coalesce(sum(t.price), 0))
+        from Ticket t
+        join t.trip tr
+        group by tr.route.id, cast(tr.departureTime as LocalDate), t.status
+    """)
+    List<TicketRollupRow> rollupRows();
+
+    /**
+     * Groups the given tickets of one trip that {@link #expireHolds} or {@link #expireSegmentHolds}
+     * would cancel right now, so the rollups can be adjusted by the same amount.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TicketRollupRow(
+            tr.route.id, cast(tr.departureTime as LocalDate), t.status, count(t), coalesce(sum(t.price), 0))
+        from Ticket t
+        join t.trip tr
+        where t.id in :ticketIds
+          and tr.id = :tripId
+          and t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and t.holdExpiresAt <= :now
+        group by tr.route.id, cast(tr.departureTime as LocalDate), t.status
+    """)
+    List<TicketRollupRow> rollupRowsOfExpiredHolds(@Param("tripId") Long tripId,
+                                                   @Param("ticketIds") Collection<Long> ticketIds,
+                                                   @Param("now") LocalDateTime now);
+
+    /**
+     * Counts tickets per departure station of the trip's route.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.StationTickets(t.trip.route.origin.id, count(t))
+        from Ticket t
+        where t.status in :statuses
+        group by t.trip.route.origin.id
+    """)
+    List<StationTickets> countByOriginStation(@Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Counts tickets per arrival station of the trip's route.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.StationTickets(t.trip.route.destination.id, count(t))
+        from Ticket t
+        where t.status in :statuses
+        group by t.trip.route.destination.id
+    """)
+    List<StationTickets> countByDestinationStation(@Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Returns every pending seat hold, i.e. unpaid tickets with an expiry time.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TicketHold(t.id, t.trip.id, t.holdExpiresAt)
+        from Ticket t
+        where t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED and t.holdExpiresAt is not null
+    """)
+    List<TicketHold> findPendingHolds();
+
+    /**
+     * Returns the pending seat hold of the ticket, if it is unpaid and has an expiry time.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TicketHold(t.id, t.trip.id, t.holdExpiresAt)
+        from Ticket t
+        where t.id = :id
+          and t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and t.holdExpiresAt is not null
+    """)
+    Optional<TicketHold> findPendingHold(@Param("id") Long id);
+
+    /**
+     * Gives unpaid tickets booked before seat holds existed a hold that runs out at {@code expiresAt}.
+     *
+     * @return number of tickets that got a hold
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update Ticket t
+        set t.holdExpiresAt = :expiresAt
+        where t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and t.holdExpiresAt is null
+    """)
+    int backfillHolds(@Param("expiresAt") LocalDateTime expiresAt);
+
+    /**
+     * Fills {@code active_seat} of active whole-trip tickets saved before the column existed, so the
+     * (trip, active seat) unique key guards them too. When a seat was already sold twice, only the earliest
+     * ticket gets it; the others stay unguarded and are counted by {@link #countUnguardedSeats}.
+     *
+     * @param statuses statuses of active tickets
+     * @return number of tickets that got an active seat
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        update Ticket t
+        set t.activeSeat = t.seatNumber
+        where t.status in :statuses
+          and t.boardStop is null
+          and t.activeSeat is null
+          and t.seatNumber is not null
+          and not exists (
+              select o.id from Ticket o
+              where o.trip = t.trip
+                and o.seatNumber = t.seatNumber
+                and o.status in :statuses
+                and o.boardStop is null
+                and (o.activeSeat is not null or o.id < t.id)
+          )
+    """)
+    int backfillActiveSeats(@Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Counts active whole-trip tickets that hold a seat without an {@code active_seat}.
+     */
+    @Query("""
+        select count(t) from Ticket t
+        where t.status in :statuses
+          and t.boardStop is null
+          and t.activeSeat is null
+          and t.seatNumber is not null
+    """)
+    long countUnguardedSeats(@Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Marks a booked ticket as paid and clears its hold, unless the hold has already run out.
+     *
+     * @param id  ID of the ticket
+     * @param now current time
+     * @return 1 if the ticket was booked with a live hold and is now paid, 0 otherwise
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+        update Ticket t
+        set t.status = ru.codeislive63.springmvc.domain.TicketStatus.PAID,
+            t.holdExpiresAt = null
+        where t.id = :id
+          and t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and (t.holdExpiresAt is null or t.holdExpiresAt > :now)
+    """)
+    int markPaid(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    /**
+     * Keyset scan of unpaid tickets whose hold has run out: the next page of tickets with {@code id > afterId}.
+     *
+     * @param afterId ID of the last ticket of the previous page, {@code 0} for the first page
+     * @param now     current time
+     * @param page    page size; the page number is ignored
+     * @return expired holds ordered by ticket ID
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TicketHold(t.id, t.trip.id, t.holdExpiresAt)
+        from Ticket t
+        where t.id > :afterId
+          and t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and t.holdExpiresAt <= :now
+        order by t.id
+    """)
+    List<TicketHold> findExpiredHolds(@Param("afterId") Long afterId,
+                                      @Param("now") LocalDateTime now,
+                                      Pageable page);
+
+    /**
+     * Cancels the given unpaid whole-trip tickets of one trip whose hold has run out.
+     * Tickets that were paid or cancelled in the meantime are left untouched, so the returned count
+     * is exactly the number of seats to give back to the trip, even when several nodes expire the same tickets.
+     *
+     * @param tripId    ID of the trip
+     * @param ticketIds IDs of the candidate tickets
+     * @param now       current time
+     * @return number of cancelled tickets
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+        update Ticket t
+        set t.status = ru.codeislive63.springmvc.domain.TicketStatus.CANCELLED,
+            t.activeSeat = null,
+            t.holdExpiresAt = null
+        where t.id in :ticketIds
+          and t.trip.id = :tripId
+          and t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and t.boardStop is null
+          and t.holdExpiresAt <= :now
+    """)
+    int expireHolds(@Param("tripId") Long tripId,
+                    @Param("ticketIds") Collection<Long> ticketIds,
+                    @Param("now") LocalDateTime now);
+
+    /**
+     * Cancels the given unpaid part-of-route tickets of one trip whose hold has run out.
+     * Such a seat may still be taken on other segments, so the trip counter has to be recounted afterwards.
+     *
+     * @return number of cancelled tickets
+     * @see #expireHolds(Long, Collection, LocalDateTime)
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+        update Ticket t
+        set t.status = ru.codeislive63.springmvc.domain.TicketStatus.CANCELLED,
+            t.activeSeat = null,
+            t.holdExpiresAt = null
+        where t.id in :ticketIds
+          and t.trip.id = :tripId
+          and t.status = ru.codeislive63.springmvc.domain.TicketStatus.BOOKED
+          and t.boardStop is not null
+          and t.holdExpiresAt <= :now
+    """)
+    int expireSegmentHolds(@Param("tripId") Long tripId,
+                           @Param("ticketIds") Collection<Long> ticketIds,
+                           @Param("now") LocalDateTime now);
 }
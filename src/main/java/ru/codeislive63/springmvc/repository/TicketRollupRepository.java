@@ -0,0 +1,82 @@
+package ru.codeislive63.springmvc.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.TicketRollup;
+import ru.codeislive63.springmvc.domain.entity.TicketRollupId;
+import ru.codeislive63.springmvc.repository.projection.DateCount;
+import ru.codeislive63.springmvc.repository.projection.RouteTotal;
+import ru.codeislive63.springmvc.repository.projection.StatusCount;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface TicketRollupRepository extends JpaRepository<TicketRollup, TicketRollupId> {
+
+    /**
+     * Adds the delta to the row in place, so concurrent writers on other nodes do not overwrite each other.
+     * Native SQL: Hibernate cannot render {@code amount + :amount} for an unscaled decimal parameter on H2.
+     *
+     * @param status name of the {@link TicketStatus}
+     * @return {@code 0} if the row does not exist yet
+     */
+    @Modifying
+    @Query(value = """
+        update ticket_rollups
+        set tickets = tickets + :tickets,
+            amount = amount + :amount
+        where route_id = :routeId
+          and departure_date = :departureDate
+          and status = :status
+    """, nativeQuery = true)
+    int addDelta(@Param("routeId") Long routeId,
+                 @Param("departureDate") LocalDate departureDate,
+                 @Param("status") String status,
+                 @Param("tickets") long tickets,
+                 @Param("amount") BigDecimal amount);
+
+    /**
+     * Counts tickets per departure date in {@code [from, to]}.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.DateCount(x.id.departureDate, sum(x.tickets))
+        from TicketRollup x
+        where x.id.status in :statuses
+          and x.id.departureDate between :from and :to
+        group by x.id.departureDate
+    """)
+    List<DateCount> countByDepartureDate(@Param("statuses") Collection<TicketStatus> statuses,
+                                         @Param("from") LocalDate from,
+                                         @Param("to") LocalDate to);
+
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.StatusCount(x.id.status, sum(x.tickets))
+        from TicketRollup x
+        group by x.id.status
+        having sum(x.tickets) > 0
+    """)
+    List<StatusCount> countByStatus();
+
+    /**
+     * Returns the number and the total price of tickets in the given statuses per route, ordered by route.
+     * Routes without such tickets are skipped.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.RouteTotal(
+            r.id, o.name, d.name, sum(x.tickets), sum(x.amount))
+        from TicketRollup x
+        join Route r on r.id = x.id.routeId
+        join r.origin o
+        join r.destination d
+        where x.id.status in :statuses
+        group by r.id, o.name, d.name
+        having sum(x.tickets) > 0
+        order by r.id
+    """)
+    List<RouteTotal> totalsByRoute(@Param("statuses") Collection<TicketStatus> statuses);
+}
@@ -0,0 +1,28 @@
+package ru.codeislive63.springmvc.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.codeislive63.springmvc.domain.entity.TicketRollupState;
+
+import java.util.Optional;
+
+public interface TicketRollupStateRepository extends JpaRepository<TicketRollupState, Integer> {
+
+    /**
+     * Loads the state with a shared lock held until the end of the transaction: it waits for a running rebuild
+     * and keeps a new one from starting before the transaction commits.
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("select s from TicketRollupState s where s.id = :id")
+    Optional<TicketRollupState> lockShared(@Param("id") Integer id);
+
+    /**
+     * Loads the state and locks its row exclusively until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from TicketRollupState s where s.id = :id")
+    Optional<TicketRollupState> lockExclusive(@Param("id") Integer id);
+}
@@ -0,0 +1,12 @@
+package ru.codeislive63.springmvc.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import ru.codeislive63.springmvc.domain.entity.TrainCar;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface TrainCarRepository extends JpaRepository<TrainCar, Long> {
+    List<TrainCar> findByTrainIdOrderByNumber(Long trainId);
+    List<TrainCar> findByTrainIdInOrderByNumber(Collection<Long> trainIds);
+}
@@ -1,55 +1,330 @@
 package ru.codeislive63.springmvc.repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.TrainType;
 import ru.codeislive63.springmvc.domain.entity.Route;
 import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.repository.projection.OccupancyBucket;
+import ru.codeislive63.springmvc.repository.projection.TimetableConnection;
+import ru.codeislive63.springmvc.repository.projection.TripLegRow;
+import ru.codeislive63.springmvc.repository.projection.TripOccupancyRow;
+import ru.codeislive63.springmvc.repository.projection.TripSeats;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface TripRepository extends JpaRepository<Trip, Long> {
+    /**
+     * Returns search rows of trips leaving the station in the given window.
+     * Search filters are applied in the statement; a {@code null} filter matches every trip.
+     *
+     * @param trainType  required train type or {@code null}
+     * @param trainClass required train class or {@code null}
+     * @param maxPrice   highest base price of a trip or {@code null}
+     */
     @Query("""
-        select t from Trip t
-        where t.route.origin.id = :originId
-          and t.route.destination.id = :destinationId
+        select new ru.codeislive63.springmvc.repository.projection.TripLegRow(
+            t.id, r.id, o.id, o.name, d.id, d.name, t.departureTime, t.arrivalTime, t.basePrice,
+            tr.name, tr.type, tr.trainClass, tr.wifiAvailable, tr.diningAvailable, tr.powerOutlets,
+            t.seatsAvailable)
+        from Trip t
+        join t.route r
+        join r.origin o
+        join r.destination d
+        join t.train tr
+        where o.id = :originId
           and t.departureTime between :start and :end
+          and (:trainType is null or tr.type = :trainType)
+          and (:trainClass is null or tr.trainClass = :trainClass)
+          and (:maxPrice is null or t.basePrice <= :maxPrice)
         order by t.departureTime asc
     """)
-    List<Trip> findDirectTrips(
+    List<TripLegRow> findFirstLegs(
             @Param("originId") Long originId,
-            @Param("destinationId") Long destinationId,
             @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end
+            @Param("end") LocalDateTime end,
+            @Param("trainType") TrainType trainType,
+            @Param("trainClass") TrainClass trainClass,
+            @Param("maxPrice") BigDecimal maxPrice
     );
 
+    /**
+     * Returns search rows of trips from any of the transfer stations to the destination in one statement.
+     *
+     * @param transferIds   IDs of the transfer stations
+     * @param destinationId ID of the destination station
+     * @param minDep        earliest departure over all transfer windows
+     * @param maxDep        latest departure over all transfer windows
+     * @param trainType     required train type or {@code null}
+     * @param trainClass    required train class or {@code null}
+     * @param maxPrice      highest base price of a trip or {@code null}
+     * @return second-leg candidates ordered by departure
+     */
     @Query("""
-        select t from Trip t
-        where t.route.origin.id = :originId
-          and t.departureTime between :start and :end
-        order by t.departureTime asc
-    """)
-    List<Trip> findFirstLegs(
-            @Param("originId") Long originId,
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end
-    );
-
-    @Query("""
-        select t from Trip t
-        where t.route.origin.id = :transferId
-          and t.route.destination.id = :destinationId
+        select new ru.codeislive63.springmvc.repository.projection.TripLegRow(
+            t.id, r.id, o.id, o.name, d.id, d.name, t.departureTime, t.arrivalTime, t.basePrice,
+            tr.name, tr.type, tr.trainClass, tr.wifiAvailable, tr.diningAvailable, tr.powerOutlets,
+            t.seatsAvailable)
+        from Trip t
+        join t.route r
+        join r.origin o
+        join r.destination d
+        join t.train tr
+        where o.id in :transferIds
+          and d.id = :destinationId
           and t.departureTime between :minDep and :maxDep
+          and (:trainType is null or tr.type = :trainType)
+          and (:trainClass is null or tr.trainClass = :trainClass)
+          and (:maxPrice is null or t.basePrice <= :maxPrice)
         order by t.departureTime asc
     """)
-    List<Trip> findSecondLegs(
-            @Param("transferId") Long transferId,
+    List<TripLegRow> findSecondLegs(
+            @Param("transferIds") Collection<Long> transferIds,
             @Param("destinationId") Long destinationId,
             @Param("minDep") LocalDateTime minDep,
-            @Param("maxDep") LocalDateTime maxDep
+            @Param("maxDep") LocalDateTime maxDep,
+            @Param("trainType") TrainType trainType,
+            @Param("trainClass") TrainClass trainClass,
+            @Param("maxPrice") BigDecimal maxPrice
     );
 
+    /**
+     * Returns search rows of the given trips in one statement.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TripLegRow(
+            t.id, r.id, o.id, o.name, d.id, d.name, t.departureTime, t.arrivalTime, t.basePrice,
+            tr.name, tr.type, tr.trainClass, tr.wifiAvailable, tr.diningAvailable, tr.powerOutlets,
+            t.seatsAvailable)
+        from Trip t
+        join t.route r
+        join r.origin o
+        join r.destination d
+        join t.train tr
+        where t.id in :tripIds
+    """)
+    List<TripLegRow> findLegs(@Param("tripIds") Collection<Long> tripIds);
+
+    /**
+     * Returns live seat counters of the given trips without loading the entities.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TripSeats(t.id, t.seatsAvailable)
+        from Trip t
+        where t.id in :tripIds
+    """)
+    List<TripSeats> findSeatsAvailable(@Param("tripIds") Collection<Long> tripIds);
+
+    /**
+     * Returns timetable connections of trips departing in {@code [from, to)}.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TimetableConnection(
+            t.id, t.route.origin.id, t.route.destination.id, t.departureTime, t.arrivalTime, t.basePrice,
+            t.train.type, t.train.trainClass)
+        from Trip t
+        where t.departureTime >= :from
+          and t.departureTime < :to
+    """)
+    List<TimetableConnection> findConnections(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TimetableConnection(
+            t.id, t.route.origin.id, t.route.destination.id, t.departureTime, t.arrivalTime, t.basePrice,
+            t.train.type, t.train.trainClass)
+        from Trip t
+        where t.id = :tripId
+    """)
+    Optional<TimetableConnection> findConnection(@Param("tripId") Long tripId);
+
+    /**
+     * Atomically takes {@code count} seats from the trip counter.
+     * The update only succeeds while enough seats are left, so concurrent claims cannot push the counter below zero.
+     * The updated row stays locked until the surrounding transaction ends.
+     *
+     * @param tripId ID of the trip
+     * @param count  number of seats to take
+     * @return number of updated rows: {@code 1} if the seats were claimed, {@code 0} otherwise
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+        update Trip t
+        set t.seatsAvailable = t.seatsAvailable - :count
+        where t.id = :tripId
+          and t.seatsAvailable >= :count
+    """)
+    int claimSeats(@Param("tripId") Long tripId, @Param("count") int count);
+
+    /**
+     * Atomically returns {@code count} seats to the trip counter.
+     *
+     * @param tripId ID of the trip
+     * @param count  number of seats to return
+     * @return number of updated rows
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("update Trip t set t.seatsAvailable = t.seatsAvailable + :count where t.id = :tripId")
+    int releaseSeats(@Param("tripId") Long tripId, @Param("count") int count);
+
+    /**
+     * Loads the trip and locks its row until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from Trip t where t.id = :tripId")
+    Optional<Trip> lockById(@Param("tripId") Long tripId);
+
+    /**
+     * Returns trips whose seat counter is lower than the number of seats actually free on the whole trip,
+     * e.g. trips created while the counter was capped below the train capacity.
+     *
+     * @param statuses statuses of active tickets
+     * @return IDs of undercounted trips
+     */
+    @Query("""
+        select t.id from Trip t
+        where t.seatsAvailable < t.train.seatCapacity
+            - (select count(distinct k.seatNumber) from Ticket k where k.trip = t and k.status in :statuses)
+    """)
+    List<Long> findUndercountedTripIds(@Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Recomputes the counter of seats that are free on the whole trip:
+     * a seat is not counted if any active ticket holds it on at least one segment.
+     *
+     * @param tripId   ID of the trip
+     * @param statuses statuses of active tickets
+     * @return number of updated rows
+     */
+    @Modifying(flushAutomatically = true)
+    @Query("""
+        update Trip t
+        set t.seatsAvailable = (select tr.seatCapacity from Train tr where tr = t.train)
+            - (select count(distinct k.seatNumber) from Ticket k where k.trip = t and k.status in :statuses)
+        where t.id = :tripId
+    """)
+    int recountSeats(@Param("tripId") Long tripId, @Param("statuses") Collection<TicketStatus> statuses);
+
+    /**
+     * Returns occupancy of trips departing in {@code [from, to)} ordered by departure and id.
+     * Tickets are counted by one grouped join, capacity comes from the trip's train.
+     * Pages are read by keyset: the page starts right after the trip ({@code afterDeparture}, {@code afterId}),
+     * so a deep page costs as much as the first one.
+     *
+     * @param statuses       statuses of tickets that take a seat
+     * @param from           earliest departure, inclusive
+     * @param to             latest departure, exclusive
+     * @param afterDeparture departure of the last trip of the previous page, or {@code from} for the first page
+     * @param afterId        id of the last trip of the previous page, or {@code 0} for the first page
+     * @param limit          page size
+     * @return one page of trips
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TripOccupancyRow(
+            tr.id, o.name, d.name, tr.departureTime, tn.seatCapacity, count(t))
+        from Trip tr
+        join tr.route r
+        join r.origin o
+        join r.destination d
+        join tr.train tn
+        left join Ticket t on t.trip = tr and t.status in :statuses
+        where tr.departureTime >= :from and tr.departureTime < :to
+          and (tr.departureTime > :afterDeparture or tr.departureTime = :afterDeparture and tr.id > :afterId)
+        group by tr.id, o.name, d.name, tr.departureTime, tn.seatCapacity
+        order by tr.departureTime, tr.id
+    """)
+    List<TripOccupancyRow> findOccupancies(@Param("statuses") Collection<TicketStatus> statuses,
+                                           @Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to,
+                                           @Param("afterDeparture") LocalDateTime afterDeparture,
+                                           @Param("afterId") Long afterId,
+                                           Limit limit);
+
+    /**
+     * Streams occupancy of every trip departing in {@code [from, to)} ordered by departure.
+     * Rows are fetched from the cursor in batches; the stream must be consumed inside a transaction and closed.
+     *
+     * @see #findOccupancies
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TripOccupancyRow(
+            tr.id, o.name, d.name, tr.departureTime, tn.seatCapacity, count(t))
+        from Trip tr
+        join tr.route r
+        join r.origin o
+        join r.destination d
+        join tr.train tn
+        left join Ticket t on t.trip = tr and t.status in :statuses
+        where tr.departureTime >= :from and tr.departureTime < :to
+        group by tr.id, o.name, d.name, tr.departureTime, tn.seatCapacity
+        order by tr.departureTime, tr.id
+    """)
+    Stream<TripOccupancyRow> streamOccupancies(@Param("statuses") Collection<TicketStatus> statuses,
+                                               @Param("from") LocalDateTime from,
+                                               @Param("to") LocalDateTime to);
+
+    /**
+     * Same as {@link #findOccupancies} but ordered from the fullest trip, for top-N views.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.TripOccupancyRow(
+            tr.id, o.name, d.name, tr.departureTime, tn.seatCapacity, count(t))
+        from Trip tr
+        join tr.route r
+        join r.origin o
+        join r.destination d
+        join tr.train tn
+        left join Ticket t on t.trip = tr and t.status in :statuses
+        where tr.departureTime >= :from and tr.departureTime < :to
+        group by tr.id, o.name, d.name, tr.departureTime, tn.seatCapacity
+        order by count(t) * 1.0 / tn.seatCapacity desc, tr.departureTime, tr.id
+    """)
+    List<TripOccupancyRow> findFullest(@Param("statuses") Collection<TicketStatus> statuses,
+                                       @Param("from") LocalDateTime from,
+                                       @Param("to") LocalDateTime to,
+                                       Pageable pageable);
+
+    /**
+     * Counts trips departing in {@code [from, to)} per ten-percent occupancy bucket.
+     * Trips sold to capacity or above it fall into the last bucket; empty buckets are not returned.
+     */
+    @Query("""
+        select new ru.codeislive63.springmvc.repository.projection.OccupancyBucket(x.bucket, count(*))
+        from (
+            select least(cast(floor(count(t) * 10.0 / tn.seatCapacity) as Integer), 9) as bucket
+            from Trip tr
+            join tr.train tn
+            left join Ticket t on t.trip = tr and t.status in :statuses
+            where tr.departureTime >= :from and tr.departureTime < :to
+            group by tr.id, tn.seatCapacity
+        ) x
+        group by x.bucket
+        order by x.bucket
+    """)
+    List<OccupancyBucket> countByOccupancyBucket(@Param("statuses") Collection<TicketStatus> statuses,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
+
     List<Trip> findByRouteAndDepartureTimeBetween(Route route, LocalDateTime start, LocalDateTime end);
     long countByRouteId(Long routeId);
+    long countByDepartureTimeGreaterThanEqualAndDepartureTimeLessThan(LocalDateTime from, LocalDateTime to);
+    boolean existsByTrainId(Long trainId);
+    boolean existsByRouteId(Long routeId);
+    boolean existsByRouteOriginIdOrRouteDestinationId(Long originId, Long destinationId);
 }
@@ -0,0 +1,27 @@
+package ru.codeislive63.springmvc.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.codeislive63.springmvc.domain.entity.UserNotification;
+
+import java.util.List;
+
+public interface UserNotificationRepository extends JpaRepository<UserNotification, Long> {
+
+    List<UserNotification> findTop20ByUserIdOrderByIdDesc(Long userId);
+
+    long countByUserIdAndReadFalse(Long userId);
+
+    @Modifying
+    @Query("update UserNotification n set n.read = true where n.user.id = :userId and n.read = false")
+    int markAllRead(@Param("userId") Long userId);
+
+    /**
+     * Detaches notifications from the tickets of the trip so that the trip and its tickets can be deleted.
+     */
+    @Modifying
+    @Query("update UserNotification n set n.ticket = null where n.ticket.id in (select k.id from Ticket k where k.trip.id = :tripId)")
+    int detachTrip(@Param("tripId") Long tripId);
+}
@@ -0,0 +1,51 @@
+package ru.codeislive63.springmvc.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.codeislive63.springmvc.domain.WaitlistStatus;
+import ru.codeislive63.springmvc.domain.entity.WaitlistEntry;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface WaitlistEntryRepository extends JpaRepository<WaitlistEntry, Long> {
+
+    boolean existsByUserIdAndTripIdAndStatus(Long userId, Long tripId, WaitlistStatus status);
+
+    Optional<WaitlistEntry> findByIdAndUserId(Long id, Long userId);
+
+    List<WaitlistEntry> findByUserIdAndStatusOrderByIdDesc(Long userId, WaitlistStatus status);
+
+    /**
+     * Returns the oldest waiting entries of the trip and locks them until the end of the transaction.
+     * Callers hold the trip row lock, so the entry cannot be handed out twice.
+     *
+     * @param tripId ID of the trip
+     * @param limit  maximum number of entries
+     * @return waiting entries in FIFO order
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+        select w from WaitlistEntry w
+        where w.trip.id = :tripId
+          and w.status = ru.codeislive63.springmvc.domain.WaitlistStatus.WAITING
+        order by w.id
+    """)
+    List<WaitlistEntry> findNextWaiting(@Param("tripId") Long tripId, Limit limit);
+
+    /**
+     * Checks whether anyone waits for the trip. Served by the {@code (trip_id, status, id)} index.
+     */
+    boolean existsByTripIdAndStatus(Long tripId, WaitlistStatus status);
+
+    long countByTripIdAndStatus(Long tripId, WaitlistStatus status);
+
+    @Modifying
+    @Query("delete from WaitlistEntry w where w.trip.id = :tripId")
+    int deleteByTripId(@Param("tripId") Long tripId);
+}
@@ -0,0 +1,7 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+/**
+ * Место, занятое на интервале остановок; {@code null} в обеих остановках означает весь рейс.
+ */
+public record BookedInterval(int seatNumber, Integer boardStop, Integer alightStop) {
+}
@@ -0,0 +1,7 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+/**
+ * Занятое место рейса.
+ */
+public record BookedSeat(Long tripId, int seatNumber) {
+}
@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import java.time.LocalDate;
+
+/**
+ * Число билетов за день.
+ */
+public record DateCount(LocalDate date, long count) {
+}
@@ -0,0 +1,7 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+/**
+ * Число рейсов, заполненных на {@code [bucket * 10, bucket * 10 + 10)} процентов.
+ */
+public record OccupancyBucket(int bucket, long trips) {
+}
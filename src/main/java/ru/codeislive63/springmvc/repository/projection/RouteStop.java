@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+/**
+ * Промежуточная остановка маршрута.
+ *
+ * @param position index of the stop in {@code Route.stops}
+ */
+public record RouteStop(Long routeId, int position, String name) {
+}
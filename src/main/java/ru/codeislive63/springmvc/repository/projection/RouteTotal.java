@@ -0,0 +1,13 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import java.math.BigDecimal;
+
+/**
+ * Итоги по маршруту: число билетов и их сумма.
+ */
+public record RouteTotal(Long routeId, String originName, String destinationName, long tickets, BigDecimal amount) {
+
+    public String label() {
+        return originName + " — " + destinationName;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+/**
+ * Число билетов, у которых станция — начало или конец маршрута рейса.
+ */
+public record StationTickets(Long stationId, long tickets) {
+}
@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import ru.codeislive63.springmvc.domain.TicketStatus;
+
+/**
+ * Число билетов в статусе.
+ */
+public record StatusCount(TicketStatus status, long count) {
+}
@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Удержание места неоплаченным билетом: билет, его рейс и срок удержания.
+ */
+public record TicketHold(Long ticketId, Long tripId, LocalDateTime expiresAt) {
+}
@@ -0,0 +1,12 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import ru.codeislive63.springmvc.domain.TicketStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Число и сумма билетов одного статуса на рейсах маршрута с одной датой отправления.
+ */
+public record TicketRollupRow(Long routeId, LocalDate departureDate, TicketStatus status, long tickets, BigDecimal amount) {
+}
@@ -0,0 +1,21 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.TrainType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Рейс как связь расписания: станции, время отправления и прибытия, базовая цена, тип и класс поезда
+ * без загрузки сущностей.
+ */
+public record TimetableConnection(Long tripId,
+                                  Long originId,
+                                  Long destinationId,
+                                  LocalDateTime departure,
+                                  LocalDateTime arrival,
+                                  BigDecimal price,
+                                  TrainType trainType,
+                                  TrainClass trainClass) {
+}
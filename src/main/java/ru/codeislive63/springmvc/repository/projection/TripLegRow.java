@@ -0,0 +1,29 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.TrainType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Плоская строка рейса для выдачи поиска: маршрут, станции и поезд одним запросом, без управляемых сущностей.
+ * Остановки маршрута загружаются отдельно пачкой через {@link RouteStop}.
+ */
+public record TripLegRow(Long tripId,
+                         Long routeId,
+                         Long originId,
+                         String originName,
+                         Long destinationId,
+                         String destinationName,
+                         LocalDateTime departure,
+                         LocalDateTime arrival,
+                         BigDecimal price,
+                         String trainName,
+                         TrainType trainType,
+                         TrainClass trainClass,
+                         boolean wifiAvailable,
+                         boolean diningAvailable,
+                         boolean powerOutlets,
+                         int seatsAvailable) {
+}
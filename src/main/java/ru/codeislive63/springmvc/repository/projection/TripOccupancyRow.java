@@ -0,0 +1,25 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+import java.time.LocalDateTime;
+
+/**
+ * Заполняемость рейса: вместимость поезда и число проданных и забронированных билетов.
+ */
+public record TripOccupancyRow(Long tripId,
+                               String originName,
+                               String destinationName,
+                               LocalDateTime departure,
+                               int capacity,
+                               long booked) {
+
+    public String label() {
+        return originName + " — " + destinationName;
+    }
+
+    /**
+     * Returns the share of sold seats in percent.
+     */
+    public double occupancy() {
+        return capacity > 0 ? booked * 100.0 / capacity : 0.0;
+    }
+}
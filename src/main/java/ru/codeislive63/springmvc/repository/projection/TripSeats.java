@@ -0,0 +1,7 @@
+package ru.codeislive63.springmvc.repository.projection;
+
+/**
+ * Текущий счётчик свободных мест рейса.
+ */
+public record TripSeats(Long tripId, int seatsAvailable) {
+}
@@ -2,37 +2,57 @@ package ru.codeislive63.springmvc.service;
 
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.CarLayout;
+import ru.codeislive63.springmvc.domain.TicketStatus;
 import ru.codeislive63.springmvc.domain.TrainClass;
 import ru.codeislive63.springmvc.domain.TrainType;
 import ru.codeislive63.springmvc.domain.entity.Route;
 import ru.codeislive63.springmvc.domain.entity.Station;
 import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.TrainCar;
 import ru.codeislive63.springmvc.domain.entity.Trip;
 import ru.codeislive63.springmvc.repository.RouteRepository;
 import ru.codeislive63.springmvc.repository.StationRepository;
+import ru.codeislive63.springmvc.repository.TrainCarRepository;
 import ru.codeislive63.springmvc.repository.TrainRepository;
 import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.search.RouteChangedEvent;
+import ru.codeislive63.springmvc.service.search.StationChangedEvent;
+import ru.codeislive63.springmvc.service.search.TrainChangedEvent;
+import ru.codeislive63.springmvc.service.search.TripChangedEvent;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class AdminService {
 
+    private static final List<TicketStatus> ACTIVE_STATUSES = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+
     private final StationRepository stationRepository;
     private final RouteRepository routeRepository;
     private final TrainRepository trainRepository;
     private final TripRepository tripRepository;
+    private final TrainCarRepository trainCarRepository;
+    private final TripService tripService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public Station createStation(String code, String name) {
         return stationRepository.findByCode(code).orElseGet(() -> {
             Station station = new Station();
             station.setCode(code);
             station.setName(name);
-            return stationRepository.save(station);
+            Station saved = stationRepository.save(station);
+            eventPublisher.publishEvent(new StationChangedEvent(saved.getId()));
+            return saved;
         });
     }
 
@@ -58,10 +78,50 @@ public class AdminService {
             train.setDiningAvailable(dining);
             train.setPowerOutlets(outlets);
             train.setSeatCapacity(capacity);
-            return trainRepository.save(train);
+            Train saved = trainRepository.save(train);
+            eventPublisher.publishEvent(new TrainChangedEvent(saved.getId()));
+            return saved;
         });
     }
 
+    /**
+     * Appends a car to the train. Seats of the new car continue the train-wide numbering
+     * and the train's seat capacity grows by {@code seatCount}.
+     * The first car replaces the implicit single car of a train created with a plain capacity.
+     *
+     * @param trainId   ID of the train
+     * @param carClass  service class of the car
+     * @param layout    seat layout of the car
+     * @param seatCount number of seats in the car
+     * @return created car
+     */
+    @Transactional
+    public TrainCar addCar(Long trainId, TrainClass carClass, CarLayout layout, int seatCount) {
+        if (seatCount < 1) {
+            throw new IllegalArgumentException("В вагоне должно быть хотя бы одно место");
+        }
+        Train train = trainRepository.findById(trainId)
+                .orElseThrow(() -> new IllegalArgumentException("Поезд не найден"));
+        if (tripRepository.existsByTrainId(trainId)) {
+            throw new IllegalStateException("Нельзя менять состав поезда, по которому уже есть рейсы");
+        }
+
+        List<TrainCar> cars = trainCarRepository.findByTrainIdOrderByNumber(trainId);
+        TrainCar last = cars.isEmpty() ? null : cars.get(cars.size() - 1);
+
+        TrainCar car = new TrainCar();
+        car.setTrain(train);
+        car.setNumber(last == null ? 1 : last.getNumber() + 1);
+        car.setCarClass(carClass);
+        car.setLayout(layout);
+        car.setSeatCount(seatCount);
+        car.setFirstSeat(last == null ? 1 : last.getFirstSeat() + last.getSeatCount());
+        train.setSeatCapacity(car.getFirstSeat() + seatCount - 1);
+        trainRepository.save(train);
+        eventPublisher.publishEvent(new TrainChangedEvent(trainId));
+        return trainCarRepository.save(car);
+    }
+
     @Transactional
     public Route createRoute(Long originId, Long destinationId, int distanceKm, String name) {
         return createRoute(originId, destinationId, distanceKm, name, null);
@@ -81,7 +141,9 @@ public class AdminService {
             if (stops != null && !stops.isEmpty()) {
                 route.setStops(stops);
             }
-            return routeRepository.save(route);
+            Route saved = routeRepository.save(route);
+            eventPublisher.publishEvent(new RouteChangedEvent(saved.getId()));
+            return saved;
         });
     }
 
@@ -97,8 +159,27 @@ public class AdminService {
         trip.setDepartureTime(departure);
         trip.setArrivalTime(arrival);
         trip.setBasePrice(basePrice);
-        trip.setSeatsAvailable(Math.min(train.getSeatCapacity(), 50));
-        return tripRepository.save(trip);
+        trip.setSeatsAvailable(train.getSeatCapacity());
+        Trip saved = tripRepository.save(trip);
+        eventPublisher.publishEvent(new TripChangedEvent(saved.getId()));
+        return saved;
+    }
+
+    /**
+     * Пересчитывает при старте счётчики мест рейсов, созданных при ограничении в 50 мест:
+     * счётчик поднимается до числа мест поезда, свободных по активным билетам.
+     * Каждый рейс пересчитывается своей транзакцией под блокировкой строки, параллельно с продажами.
+     *
+     * @return number of recounted trips
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public int recountUndercountedTrips() {
+        List<Long> tripIds = tripRepository.findUndercountedTripIds(ACTIVE_STATUSES);
+        tripIds.forEach(tripService::recountSeats);
+        if (!tripIds.isEmpty()) {
+            log.info("Recounted seat counters of {} trips below train capacity", tripIds.size());
+        }
+        return tripIds.size();
     }
 
     public boolean hasAnyData() {
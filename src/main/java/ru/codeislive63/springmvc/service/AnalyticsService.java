@@ -1,43 +1,106 @@
 package ru.codeislive63.springmvc.service;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.codeislive63.springmvc.domain.TicketStatus;
-import ru.codeislive63.springmvc.domain.entity.Trip;
-import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TicketRollupRepository;
 import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.TripOccupancyRow;
+import ru.codeislive63.springmvc.service.analytics.TicketRollups;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
+/**
+ * Срезы для дашборда и XLSX-отчёта. Срезы по билетам читаются из предрасчитанных агрегатов
+ * {@code ticket_rollups} (см. {@link TicketRollups}), заполняемость — групповым запросом по рейсам окна.
+ */
 @Service
-@RequiredArgsConstructor
 public class AnalyticsService {
 
+    private static final List<TicketStatus> SOLD = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+    private static final int OCCUPANCY_BUCKETS = 10;
+
     private final TripRepository tripRepository;
-    private final TicketRepository ticketRepository;
-
-    /** Заполняемость по каждому рейсу: считаем занятые места и делим на вместимость. */
-    public List<TripOccupancy> getTripOccupancies() {
-        List<Trip> allTrips = tripRepository.findAll();
-        List<TripOccupancy> result = new ArrayList<>();
-        for (Trip trip : allTrips) {
-            int capacity = trip.getTrain().getSeatCapacity();
-            long booked = ticketRepository.countByTripIdAndStatusIn(
-                    trip.getId(),
-                    List.of(TicketStatus.BOOKED, TicketStatus.PAID)
-            );
-            double occupancy = (double) booked / (double) capacity * 100.0;
-            result.add(new TripOccupancy(trip, capacity, (int) booked, occupancy));
+    private final TicketRollupRepository rollupRepository;
+    private final int occupancyDaysBack;
+    private final int occupancyDaysAhead;
+    private final int occupancyTop;
+    private final int reportRowWindow;
+    private final TransactionTemplate transactionTemplate;
+
+    public AnalyticsService(TripRepository tripRepository,
+                            TicketRollupRepository rollupRepository,
+                            @Value("${analytics.occupancy.days-back:7}") int occupancyDaysBack,
+                            @Value("${analytics.occupancy.days-ahead:30}") int occupancyDaysAhead,
+                            @Value("${analytics.occupancy.top:20}") int occupancyTop,
+                            @Value("${analytics.report.row-window:100}") int reportRowWindow,
+                            TransactionTemplate transactionTemplate) {
+        this.tripRepository = tripRepository;
+        this.rollupRepository = rollupRepository;
+        this.occupancyDaysBack = occupancyDaysBack;
+        this.occupancyDaysAhead = occupancyDaysAhead;
+        this.occupancyTop = occupancyTop;
+        this.reportRowWindow = reportRowWindow;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Границы окна отправления для среза заполняемости: {@code [today - days-back, today + days-ahead + 1)}.
+     */
+    public OccupancyWindow occupancyWindow() {
+        LocalDate today = LocalDate.now();
+        return new OccupancyWindow(today.minusDays(occupancyDaysBack).atStartOfDay(),
+                today.plusDays(occupancyDaysAhead + 1).atStartOfDay());
+    }
+
+    /**
+     * Страница заполняемости рейсов окна в порядке отправления, сразу после рейса {@code after}
+     * ({@code null} — с начала окна); билеты считает один групповой запрос.
+     */
+    public List<TripOccupancy> getTripOccupancies(TripOccupancy after, int size) {
+        OccupancyWindow window = occupancyWindow();
+        LocalDateTime afterDeparture = after != null ? after.departure() : window.from();
+        long afterId = after != null ? after.tripId() : 0L;
+        return tripRepository.findOccupancies(SOLD, window.from(), window.to(), afterDeparture, afterId, Limit.of(size))
+                .stream()
+                .map(TripOccupancy::of)
+                .toList();
+    }
+
+    /** Самые заполненные рейсы окна, не больше {@code analytics.occupancy.top}. */
+    public List<TripOccupancy> getFullestTrips() {
+        OccupancyWindow window = occupancyWindow();
+        return tripRepository.findFullest(SOLD, window.from(), window.to(), PageRequest.of(0, occupancyTop)).stream()
+                .map(TripOccupancy::of)
+                .toList();
+    }
+
+    /** Число рейсов окна по десятипроцентным интервалам заполняемости, включая пустые интервалы. */
+    public Map<String, Long> getOccupancyHistogram() {
+        long[] trips = new long[OCCUPANCY_BUCKETS];
+        OccupancyWindow window = occupancyWindow();
+        tripRepository.countByOccupancyBucket(SOLD, window.from(), window.to())
+                .forEach(row -> trips[Math.max(0, Math.min(row.bucket(), OCCUPANCY_BUCKETS - 1))] += row.trips());
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < OCCUPANCY_BUCKETS; i++) {
+            result.put(i * 10 + "–" + (i + 1) * 10 + "%", trips[i]);
         }
         return result;
     }
@@ -46,93 +109,112 @@ public class AnalyticsService {
     public Map<LocalDate, Long> getDemandByDate(int daysBack) {
         LocalDate today = LocalDate.now();
         LocalDate start = today.minusDays(daysBack);
-        // Забираем все билеты и группируем по дате отправления рейса
-        var tickets = ticketRepository.findAll();
         Map<LocalDate, Long> counts = new TreeMap<>();
-        tickets.stream()
-                .filter(t -> t.getStatus() == TicketStatus.BOOKED || t.getStatus() == TicketStatus.PAID)
-                .forEach(t -> {
-                    LocalDate date = t.getTrip().getDepartureTime().toLocalDate();
-                    if (!date.isBefore(start) && !date.isAfter(today)) {
-                        counts.merge(date, 1L, Long::sum);
-                    }
-                });
-        // Заполняем пропущенные даты нулями
+        // Заполняем все даты нулями, затем подставляем посчитанные в БД
         for (int i = 0; i <= daysBack; i++) {
-            LocalDate d = start.plusDays(i);
-            counts.putIfAbsent(d, 0L);
+            counts.put(start.plusDays(i), 0L);
         }
+        rollupRepository.countByDepartureDate(SOLD, start, today)
+                .forEach(row -> counts.put(row.date(), row.count()));
         return counts;
     }
 
     /** Распределение билетов по статусам. */
     public Map<TicketStatus, Long> getTicketStatusDistribution() {
         Map<TicketStatus, Long> dist = new EnumMap<>(TicketStatus.class);
-        var tickets = ticketRepository.findAll();
-        for (var t : tickets) {
-            dist.merge(t.getStatus(), 1L, Long::sum);
-        }
+        rollupRepository.countByStatus().forEach(row -> dist.put(row.status(), row.count()));
         return dist;
     }
 
     /** Выручка по маршрутам (оплаченные билеты). */
     public Map<String, BigDecimal> getRevenueByRoute() {
         Map<String, BigDecimal> result = new LinkedHashMap<>();
-        ticketRepository.findAll().stream()
-                .filter(t -> t.getStatus() == TicketStatus.PAID)
-                .forEach(t -> {
-                    String key = routeLabel(t.getTrip());
-                    BigDecimal price = Optional.ofNullable(t.getPrice()).orElse(BigDecimal.ZERO);
-                    result.merge(key, price, BigDecimal::add);
-                });
+        rollupRepository.totalsByRoute(List.of(TicketStatus.PAID)).forEach(row ->
+                result.merge(row.label(), Optional.ofNullable(row.amount()).orElse(BigDecimal.ZERO), BigDecimal::add));
         return result;
     }
 
     /** Отмены/возвраты по маршрутам. */
     public Map<String, Long> getCancellationsByRoute() {
-        Map<String, Long> result = new LinkedHashMap<>();
-        ticketRepository.findAll().stream()
-                .filter(t -> t.getStatus() == TicketStatus.CANCELLED || t.getStatus() == TicketStatus.REFUNDED)
-                .forEach(t -> result.merge(routeLabel(t.getTrip()), 1L, Long::sum));
-        return result;
+        return ticketsByRoute(List.of(TicketStatus.CANCELLED, TicketStatus.REFUNDED));
     }
 
     /** Популярность направлений по количеству бронирований/покупок. */
     public Map<String, Long> getRouteDemand() {
+        return ticketsByRoute(EnumSet.allOf(TicketStatus.class));
+    }
+
+    private Map<String, Long> ticketsByRoute(Collection<TicketStatus> statuses) {
         Map<String, Long> result = new LinkedHashMap<>();
-        ticketRepository.findAll().forEach(t -> result.merge(routeLabel(t.getTrip()), 1L, Long::sum));
+        rollupRepository.totalsByRoute(statuses).forEach(row -> result.merge(row.label(), row.tickets(), Long::sum));
         return result;
     }
 
-    /** XLSX отчёт с основными срезами. */
-    public byte[] buildReport() {
-        try (Workbook wb = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            writeOccupancySheet(wb);
-            writeDemandSheet(wb);
-            writeRevenueSheet(wb);
-            writeStatusesSheet(wb);
+    /**
+     * Пишет XLSX отчёт с основными срезами в поток.
+     * <p>
+     * Книга потоковая: в памяти держится не больше {@code analytics.report.row-window} строк листа,
+     * остальные сбрасываются во временные файлы, которые удаляются после записи. Строки заполняемости
+     * читаются курсором в одной read-only транзакции, поэтому расход памяти не зависит от числа рейсов.
+     *
+     * @param out destination of the workbook, e.g. the servlet response; not closed
+     */
+    public void writeReport(OutputStream out) throws IOException {
+        writeReport(out, percent -> { });
+    }
+
+    /**
+     * То же, что {@link #writeReport(OutputStream)}, с отчётом о доле выполненной работы в процентах.
+     *
+     * @param progress receives growing values from 0 to 100
+     */
+    public void writeReport(OutputStream out, IntConsumer progress) throws IOException {
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(reportRowWindow)) {
+            wb.setCompressTempFiles(true);
+            TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> {
+                writeOccupancySheet(wb, progress);
+                writeDemandSheet(wb);
+                progress.accept(85);
+                writeRevenueSheet(wb);
+                progress.accept(90);
+                writeStatusesSheet(wb);
+                progress.accept(95);
+            });
             wb.write(out);
-            return out.toByteArray();
-        } catch (Exception e) {
-            throw new IllegalStateException("Не удалось сформировать отчёт", e);
+            progress.accept(100);
         }
     }
 
-    private void writeOccupancySheet(Workbook wb) {
+    /**
+     * Пишет лист заполняемости; прогресс растёт от 0 до 80 по мере чтения рейсов окна.
+     */
+    private void writeOccupancySheet(Workbook wb, IntConsumer progress) {
         Sheet sheet = wb.createSheet("Заполняемость");
         Row header = sheet.createRow(0);
         header.createCell(0).setCellValue("Маршрут");
         header.createCell(1).setCellValue("Рейс");
         header.createCell(2).setCellValue("Свободно/вместимость");
         header.createCell(3).setCellValue("Заполнено (%)");
-        int rowIdx = 1;
-        for (TripOccupancy o : getTripOccupancies()) {
-            Row row = sheet.createRow(rowIdx++);
-            row.createCell(0).setCellValue(o.routeLabel());
-            row.createCell(1).setCellValue(o.trip().getId());
-            row.createCell(2).setCellValue(o.booked() + " / " + o.capacity());
-            row.createCell(3).setCellValue(BigDecimal.valueOf(o.occupancy()).setScale(1, RoundingMode.HALF_UP).doubleValue());
+        OccupancyWindow window = occupancyWindow();
+        long total = Math.max(1, tripRepository.countByDepartureTimeGreaterThanEqualAndDepartureTimeLessThan(
+                window.from(), window.to()));
+        progress.accept(0);
+        int[] rowIdx = {1};
+        try (Stream<TripOccupancyRow> rows = tripRepository.streamOccupancies(SOLD, window.from(), window.to())) {
+            rows.forEach(o -> {
+                if (rowIdx[0] % 1000 == 0) {
+                    progress.accept((int) Math.min(80, rowIdx[0] * 80 / total));
+                }
+                Row row = sheet.createRow(rowIdx[0]++);
+                row.createCell(0).setCellValue(o.label());
+                row.createCell(1).setCellValue(o.tripId());
+                row.createCell(2).setCellValue(o.booked() + " / " + o.capacity());
+                row.createCell(3).setCellValue(BigDecimal.valueOf(o.occupancy()).setScale(1, RoundingMode.HALF_UP).doubleValue());
+            });
         }
+        progress.accept(80);
     }
 
     private void writeDemandSheet(Workbook wb) {
@@ -175,21 +257,21 @@ public class AnalyticsService {
         }
     }
 
-    private String routeLabel(Trip trip) {
-        if (trip == null || trip.getRoute() == null) return "Маршрут";
-        var r = trip.getRoute();
-        return (r.getOrigin() != null ? r.getOrigin().getName() : "?")
-                + " — "
-                + (r.getDestination() != null ? r.getDestination().getName() : "?");
+    /** Окно отправления рейсов для среза заполняемости, {@code to} не включается. */
+    public record OccupancyWindow(LocalDateTime from, LocalDateTime to) {
     }
 
     /** DTO для графика заполняемости. */
-    public record TripOccupancy(Trip trip, int capacity, int booked, double occupancy) {
-        public String routeLabel() {
-            return trip.getRoute().getOrigin().getName() + " — " + trip.getRoute().getDestination().getName();
+    public record TripOccupancy(Long tripId, String routeLabel, LocalDateTime departure,
+                                int capacity, int booked, double occupancy) {
+
+        static TripOccupancy of(TripOccupancyRow row) {
+            return new TripOccupancy(row.tripId(), row.label(), row.departure(),
+                    row.capacity(), (int) row.booked(), row.occupancy());
         }
+
         public String formattedDeparture() {
-            return trip.getDepartureTime().toString();
+            return departure.toLocalDate() + " " + departure.toLocalTime().withSecond(0).withNano(0);
         }
     }
 }
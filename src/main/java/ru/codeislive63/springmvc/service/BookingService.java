@@ -3,12 +3,30 @@ package ru.codeislive63.springmvc.service;
 import jakarta.transaction.Transactional;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.codeislive63.springmvc.domain.PaymentStatus;
 import ru.codeislive63.springmvc.domain.TicketStatus;
 import ru.codeislive63.springmvc.domain.entity.*;
 import ru.codeislive63.springmvc.repository.PaymentRepository;
 import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TrainCarRepository;
+import ru.codeislive63.springmvc.repository.projection.BookedInterval;
+import ru.codeislive63.springmvc.repository.projection.BookedSeat;
+import ru.codeislive63.springmvc.repository.projection.TicketHold;
+import ru.codeislive63.springmvc.service.booking.SeatHoldEndedEvent;
+import ru.codeislive63.springmvc.service.booking.SeatHoldExpirer;
+import ru.codeislive63.springmvc.service.booking.SeatInventory;
+import ru.codeislive63.springmvc.service.booking.SeatsReleasedEvent;
+import ru.codeislive63.springmvc.service.booking.SegmentInventory;
+import ru.codeislive63.springmvc.service.booking.TicketStatusChangedEvent;
+import ru.codeislive63.springmvc.service.booking.TripLockManager;
 import ru.codeislive63.springmvc.service.pricing.PriceStrategyFactory;
 import ru.codeislive63.springmvc.web.dto.BookingRequest;
 import ru.codeislive63.springmvc.web.dto.SeatView;
@@ -18,181 +36,475 @@ import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class BookingService {
 
+    private static final List<TicketStatus> RESERVED_STATUSES = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+    private static final int MAX_CLAIM_ATTEMPTS = 3;
+
     private final TicketRepository ticketRepository;
+    private final TrainCarRepository trainCarRepository;
     private final PaymentRepository paymentRepository;
     private final TripService tripService;
     private final UserService userService;
     private final PriceStrategyFactory priceStrategyFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final TripLockManager tripLockManager;
+    private final SeatHoldExpirer seatHoldExpirer;
+    private final ApplicationEventPublisher eventPublisher;
 
-    @Transactional
-    public Ticket bookTicket(Long userId, Long tripId) {
-        Trip trip = tripService.getTrip(tripId);
-        UserAccount user = userService.getUser(userId);
-
-        if (trip.getSeatsAvailable() <= 0) {
-            throw new IllegalStateException("Нет свободных мест");
+    /**
+     * Заполняет при старте active_seat активных билетов на весь рейс, проданных до появления колонки,
+     * чтобы уникальный ключ (рейс, место) защищал и их. Повторный запуск ничего не меняет.
+     *
+     * @return number of tickets that got an active seat
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public int backfillActiveSeats() {
+        int backfilled = ticketRepository.backfillActiveSeats(RESERVED_STATUSES);
+        if (backfilled > 0) {
+            log.info("Filled active_seat of {} active tickets", backfilled);
         }
-
-        List<Integer> freeSeats = availableSeats(tripId);
-
-        if (freeSeats.isEmpty())
-        {
-            throw new IllegalStateException("Нет свободных мест");
+        long unguarded = ticketRepository.countUnguardedSeats(RESERVED_STATUSES);
+        if (unguarded > 0) {
+            log.warn("{} active tickets share a seat with an earlier ticket and are not guarded by the unique key",
+                    unguarded);
         }
-        int nextSeat = freeSeats.getFirst();
-        return getTicket(trip, user, nextSeat);
+        return backfilled;
+    }
+
+    /**
+     * Books the first free seat on the trip.
+     * The seat counter is claimed atomically first; a unique-seat conflict is retried with a fresh snapshot.
+     *
+     * @param userId ID of the user
+     * @param tripId ID of the trip
+     * @return booked ticket
+     */
+    public Ticket bookTicket(Long userId, Long tripId) {
+        Ticket ticket = tripLockManager.withTripLock(tripId, () -> withClaimRetry(() -> {
+            Trip trip = tripService.claimSeats(tripId, 1);
+            UserAccount user = userService.getUser(userId);
+
+            int nextSeat = occupancy(trip).firstFree()
+                    .orElseThrow(() -> new IllegalStateException("Нет свободных мест"));
+            return getTicket(trip, user, nextSeat);
+        }));
+        seatHoldExpirer.schedule(List.of(ticket));
+        return ticket;
     }
 
     @NonNull
     private Ticket getTicket(Trip trip, UserAccount user, int nextSeat) {
         BigDecimal price = priceStrategyFactory.chooseFor(trip).calculate(trip, 1);
+        Ticket saved = ticketRepository.save(newTicket(trip, user, nextSeat, price, null));
+        eventPublisher.publishEvent(TicketStatusChangedEvent.booked(List.of(saved)));
+        return saved;
+    }
 
-        trip.setSeatsAvailable(trip.getSeatsAvailable() - 1);
+    private Ticket newTicket(Trip trip, UserAccount user, int seatNumber, BigDecimal basePrice, BookingRequest request) {
         Ticket ticket = new Ticket();
         ticket.setTrip(trip);
         ticket.setUser(user);
-        ticket.setSeatNumber(nextSeat);
-        ticket.setPrice(price);
+        ticket.setSeatNumber(seatNumber);
+        ticket.setPrice(basePrice);
         ticket.setBookedAt(LocalDateTime.now());
         ticket.setStatus(TicketStatus.BOOKED);
+        ticket.setHoldExpiresAt(seatHoldExpirer.expiresAt(ticket.getBookedAt()));
 
-        Ticket saved = ticketRepository.save(ticket);
-        tripService.save(trip);
-        return saved;
+        if (request != null) {
+            enrichWithPassenger(ticket, request);
+            enrichWithServices(ticket, request);
+            ticket.setPrice(applyDiscounts(basePrice, request));
+        }
+        return ticket;
     }
 
     /**
-     * Returns the list of seat numbers that are available for booking on the given trip.
+     * Runs a seat claim in its own transaction and repeats it when it loses a race:
+     * either the seat was taken by a concurrent booking (unique key on the active seat)
+     * or the database reported a lock conflict.
+     */
+    private <T> T withClaimRetry(Supplier<T> claim) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> claim.get());
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                if (attempt >= MAX_CLAIM_ATTEMPTS) {
+                    throw new IllegalStateException("Место уже занято", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the seat occupancy snapshot of the given trip.
+     *
+     * @param tripId ID of the trip
+     * @return seat inventory built with a single query of occupied seats
+     */
+    public SeatInventory seatInventory(Long tripId) {
+        return seatInventory(tripService.getTrip(tripId));
+    }
+
+    /**
+     * Builds the seat occupancy snapshot for an already loaded trip, including the car layout of its train.
      * Seats that are either booked or paid (i.e. statuses {@link TicketStatus#BOOKED} or {@link TicketStatus#PAID})
-     * are excluded from the result.
+     * are marked as occupied.
+     *
+     * @param trip loaded trip
+     * @return seat inventory snapshot
+     */
+    public SeatInventory seatInventory(Trip trip) {
+        List<Integer> booked = ticketRepository.findBookedSeats(trip.getId(), RESERVED_STATUSES);
+        List<TrainCar> cars = trainCarRepository.findByTrainIdOrderByNumber(trip.getTrain().getId());
+        return SeatInventory.of(trip.getTrain(), cars, booked);
+    }
+
+    /**
+     * Builds the seat snapshot for a part of the trip: a seat is shown as free if no active ticket
+     * holds it on any segment between {@code fromStop} and {@code toStop}.
+     *
+     * @param trip     loaded trip
+     * @param fromStop index of the boarding stop, {@code 0} is the trip origin
+     * @param toStop   index of the alighting stop
+     * @return seat inventory snapshot for the interval
+     */
+    public SeatInventory seatInventory(Trip trip, int fromStop, int toStop) {
+        BitSet occupied = segmentInventory(trip).occupiedOver(fromStop, toStop);
+        List<TrainCar> cars = trainCarRepository.findByTrainIdOrderByNumber(trip.getTrain().getId());
+        return SeatInventory.of(trip.getTrain(), cars, occupied);
+    }
+
+    /**
+     * Loads the per-segment seat occupancy of the trip with a single query of occupied intervals.
+     *
+     * @param trip loaded trip
+     * @return segment inventory
+     */
+    public SegmentInventory segmentInventory(Trip trip) {
+        List<BookedInterval> intervals = ticketRepository.findBookedIntervals(trip.getId(), RESERVED_STATUSES);
+        return SegmentInventory.of(trip.getTrain().getSeatCapacity(), segmentCount(trip), intervals);
+    }
+
+    /**
+     * Возвращает названия остановок рейса по порядку: станция отправления, промежуточные остановки, станция прибытия.
+     */
+    public List<String> stopNames(Trip trip) {
+        List<String> names = new ArrayList<>();
+        names.add(trip.getRoute().getOrigin().getName());
+        names.addAll(trip.getRoute().getStops());
+        names.add(trip.getRoute().getDestination().getName());
+        return names;
+    }
+
+    private int segmentCount(Trip trip) {
+        return trip.getRoute().getStops().size() + 1;
+    }
+
+    /**
+     * Снимок занятости без схемы вагонов — для проверки и подбора мест при бронировании.
+     */
+    private SeatInventory occupancy(Trip trip) {
+        List<Integer> booked = ticketRepository.findBookedSeats(trip.getId(), RESERVED_STATUSES);
+        return SeatInventory.of(trip.getTrain().getSeatCapacity(), booked);
+    }
+
+    /**
+     * Builds seat occupancy snapshots for several trips with a single query of occupied seats
+     * and a single query of train cars.
+     *
+     * @param trips loaded trips
+     * @return seat inventory per trip ID
+     */
+    public Map<Long, SeatInventory> seatInventories(Collection<Trip> trips) {
+        Map<Long, List<Integer>> booked = new HashMap<>();
+        List<Long> tripIds = trips.stream().map(Trip::getId).toList();
+        for (BookedSeat seat : ticketRepository.findBookedSeatsByTrips(tripIds, RESERVED_STATUSES)) {
+            booked.computeIfAbsent(seat.tripId(), id -> new ArrayList<>()).add(seat.seatNumber());
+        }
+
+        Map<Long, List<TrainCar>> cars = new HashMap<>();
+        List<Long> trainIds = trips.stream().map(trip -> trip.getTrain().getId()).distinct().toList();
+        for (TrainCar car : trainCarRepository.findByTrainIdInOrderByNumber(trainIds)) {
+            cars.computeIfAbsent(car.getTrain().getId(), id -> new ArrayList<>()).add(car);
+        }
+
+        Map<Long, SeatInventory> inventories = new HashMap<>();
+        for (Trip trip : trips) {
+            inventories.put(trip.getId(), SeatInventory.of(trip.getTrain(),
+                    cars.getOrDefault(trip.getTrain().getId(), List.of()),
+                    booked.getOrDefault(trip.getId(), List.of())));
+        }
+        return inventories;
+    }
+
+    /**
+     * Returns the list of seat numbers that are available for booking on the given trip.
      *
      * @param tripId ID of the trip
      * @return list of free seat numbers starting from 1 up to the train's seat capacity
+     * @see #seatInventory(Long)
      */
     public List<Integer> availableSeats(Long tripId) {
-        Trip trip = tripService.getTrip(tripId);
-
-        int capacity = Math.min(trip.getTrain().getSeatCapacity(), 50);
-        List<TicketStatus> reservedStatuses = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
-        List<Integer> booked = ticketRepository.findBookedSeats(tripId, reservedStatuses);
-        List<Integer> free = new ArrayList<>();
-        for (int i = 1; i <= capacity; i++) {
-            if (!booked.contains(i)) {
-                free.add(i);
-            }
-        }
-        return free;
+        return seatInventory(tripId).freeSeats();
     }
 
     /**
-     * Возвращает схему вагона: список мест с указанием доступности.
+     * Возвращает схему поезда: по одному элементу на вагон.
      */
     public List<SeatView> seatMap(Long tripId) {
-        Trip trip = tripService.getTrip(tripId);
-        int capacity = Math.min(trip.getTrain().getSeatCapacity(), 50);
-        List<Integer> free = availableSeats(tripId);
-
-        List<SeatView> seats = new ArrayList<>(capacity);
-        for (int i = 1; i <= capacity; i++) {
-            seats.add(new SeatView(i, free.contains(i)));
-        }
-        return seats;
+        return seatInventory(tripId).seatMap();
     }
 
     /**
      * Books a specific seat on a trip for the given user.
      * If the seat is not available or out of range, an exception will be thrown.
+     * The seat is held until the ticket is paid or the hold expires.
+     * A request with {@link BookingRequest#getBoardStop()} or {@link BookingRequest#getAlightStop()}
+     * books the seat only between those stops.
      *
      * @param userId     ID of the user
      * @param tripId     ID of the trip
      * @param seatNumber desired seat number
      * @return booked ticket
      */
-    @Transactional
     public Ticket bookSeat(Long userId, Long tripId, int seatNumber) {
-        Trip trip = tripService.getTrip(tripId);
-        UserAccount user = userService.getUser(userId);
-
-        int capacity = Math.min(trip.getTrain().getSeatCapacity(), 50);
+        return bookSeat(userId, tripId, seatNumber, null);
+    }
 
-        if (seatNumber < 1 || seatNumber > capacity) {
-            throw new IllegalArgumentException("Неверный номер места");
+    public Ticket bookSeat(Long userId, Long tripId, int seatNumber, BookingRequest request) {
+        if (request != null && (request.getBoardStop() != null || request.getAlightStop() != null)) {
+            return bookSegment(userId, tripId, seatNumber, request);
         }
+        Ticket ticket = tripLockManager.withTripLock(tripId, () -> withClaimRetry(() -> {
+            Trip trip = tripService.claimSeats(tripId, 1);
+            UserAccount user = userService.getUser(userId);
+            SeatInventory inventory = occupancy(trip);
 
-        if (trip.getSeatsAvailable() <= 0) {
-            throw new IllegalStateException("Нет свободных мест");
-        }
+            if (!inventory.contains(seatNumber)) {
+                throw new IllegalArgumentException("Неверный номер места");
+            }
 
-        List<Integer> available = availableSeats(tripId);
-        if (!available.contains(seatNumber)) {
-            throw new IllegalStateException("Место уже занято");
-        }
+            if (!inventory.isFree(seatNumber)) {
+                throw new IllegalStateException("Место уже занято");
+            }
 
-        return getTicket(trip, user, seatNumber);
+            BigDecimal price = priceStrategyFactory.chooseFor(trip).calculate(trip, 1);
+            Ticket saved = ticketRepository.save(newTicket(trip, user, seatNumber, price, request));
+            eventPublisher.publishEvent(TicketStatusChangedEvent.booked(List.of(saved)));
+            return saved;
+        }));
+        seatHoldExpirer.schedule(List.of(ticket));
+        return ticket;
     }
 
-    @Transactional
-    public Ticket bookSeat(Long userId, Long tripId, int seatNumber, BookingRequest request) {
-        Trip trip = tripService.getTrip(tripId);
-        UserAccount user = userService.getUser(userId);
+    /**
+     * Books a seat for a part of the trip. The trip row is locked for the whole check-and-insert,
+     * the seat is validated against the segment inventory and the counter of seats free on the whole trip
+     * is rewritten from the same snapshot. The price is prorated by the number of segments.
+     */
+    private Ticket bookSegment(Long userId, Long tripId, int seatNumber, BookingRequest request) {
+        Ticket ticket = tripLockManager.withTripLock(tripId, () -> withClaimRetry(() -> {
+            Trip trip = tripService.lockTrip(tripId);
+            UserAccount user = userService.getUser(userId);
+            SegmentInventory inventory = segmentInventory(trip);
+
+            int fromStop = request.getBoardStop() != null ? request.getBoardStop() : 0;
+            int toStop = request.getAlightStop() != null ? request.getAlightStop() : inventory.segments();
+            if (fromStop < 0 || fromStop >= toStop || toStop > inventory.segments()) {
+                throw new IllegalArgumentException("Неверный участок маршрута");
+            }
+            if (!inventory.contains(seatNumber)) {
+                throw new IllegalArgumentException("Неверный номер места");
+            }
+            if (!inventory.isFree(seatNumber, fromStop, toStop)) {
+                throw new IllegalStateException("Место уже занято");
+            }
 
-        int capacity = Math.min(trip.getTrain().getSeatCapacity(), 50);
+            BigDecimal price = priceStrategyFactory.chooseFor(trip).calculate(trip, 1)
+                    .multiply(BigDecimal.valueOf(toStop - fromStop))
+                    .divide(BigDecimal.valueOf(inventory.segments()), 2, RoundingMode.HALF_UP);
+            Ticket segmentTicket = newTicket(trip, user, seatNumber, price, request);
+            if (toStop - fromStop < inventory.segments()) {
+                segmentTicket.setBoardStop(fromStop);
+                segmentTicket.setAlightStop(toStop);
+            }
+            Ticket saved = ticketRepository.save(segmentTicket);
+            eventPublisher.publishEvent(TicketStatusChangedEvent.booked(List.of(saved)));
+
+            inventory.occupy(seatNumber, fromStop, toStop);
+            trip.setSeatsAvailable(inventory.freeCount(0, inventory.segments()));
+            return saved;
+        }));
+        seatHoldExpirer.schedule(List.of(ticket));
+        return ticket;
+    }
 
-        if (seatNumber < 1 || seatNumber > capacity) {
-            throw new IllegalArgumentException("Неверный номер места");
+    /**
+     * Books seats for several passengers of one trip atomically: either every passenger gets a ticket or none does.
+     * The seat counter is claimed once for the whole group, seats are picked from a single inventory snapshot
+     * and all tickets are inserted with one {@code saveAll} call.
+     *
+     * @param userId     ID of the user who books
+     * @param tripId     ID of the trip
+     * @param passengers passengers; a passenger without {@link BookingRequest#getSeat()} gets any free seat
+     * @return booked tickets in the order of {@code passengers}
+     * @throws IllegalArgumentException if a passenger asks for a part of the route
+     */
+    public List<Ticket> bookGroup(Long userId, Long tripId, List<BookingRequest> passengers) {
+        if (passengers == null || passengers.isEmpty()) {
+            throw new IllegalArgumentException("Не указаны пассажиры");
         }
+        passengers.forEach(BookingService::requireWholeTrip);
 
-        if (trip.getSeatsAvailable() <= 0) {
-            throw new IllegalStateException("Нет свободных мест");
-        }
+        List<Ticket> tickets = tripLockManager.withTripLock(tripId, () -> withClaimRetry(() -> {
+            Trip trip = tripService.claimSeats(tripId, passengers.size());
+            UserAccount user = userService.getUser(userId);
+            int[] seats = occupancy(trip).allocate(passengers.stream().map(BookingRequest::getSeat).toList());
 
-        List<Integer> available = availableSeats(tripId);
-        if (!available.contains(seatNumber)) {
-            throw new IllegalStateException("Место уже занято");
-        }
+            BigDecimal price = priceStrategyFactory.chooseFor(trip).calculate(trip, 1);
+            List<Ticket> group = new ArrayList<>(seats.length);
+            for (int i = 0; i < seats.length; i++) {
+                group.add(newTicket(trip, user, seats[i], price, passengers.get(i)));
+            }
+            List<Ticket> saved = ticketRepository.saveAll(group);
+            eventPublisher.publishEvent(TicketStatusChangedEvent.booked(saved));
+            return saved;
+        }));
+        seatHoldExpirer.schedule(tickets);
+        return tickets;
+    }
 
-        Ticket ticket = getTicket(trip, user, seatNumber);
-        enrichWithPassenger(ticket, request);
-        enrichWithServices(ticket, request);
-        ticket.setPrice(applyDiscounts(ticket.getPrice(), request));
-        return ticketRepository.save(ticket);
+    /**
+     * Books a multi-leg (transfer) itinerary atomically: either every leg gets its ticket or none does.
+     * Trip locks and trip rows are taken in ascending trip ID order to rule out deadlocks between
+     * overlapping itineraries, and the seats of all legs are validated against one snapshot.
+     *
+     * @param userId  ID of the user
+     * @param legs    trip and seat for every leg of the itinerary
+     * @param request passenger data and extra services applied to every leg, may be {@code null}
+     * @return booked tickets in the order of {@code legs}
+     * @throws IllegalArgumentException if the request asks for a part of the route
+     */
+    public List<Ticket> bookItinerary(Long userId, List<LegSeat> legs, BookingRequest request) {
+        List<Long> tripIds = legs.stream().map(LegSeat::tripId).toList();
+        if (legs.isEmpty() || tripIds.stream().distinct().count() != tripIds.size()) {
+            throw new IllegalArgumentException("Неверные параметры для бронирования");
+        }
+        requireWholeTrip(request);
+
+        List<Ticket> tickets = tripLockManager.withTripLocks(tripIds, () -> withClaimRetry(() -> {
+            Map<Long, Trip> trips = tripService.claimSeatOnEach(tripIds);
+            UserAccount user = userService.getUser(userId);
+            Map<Long, SeatInventory> inventories = seatInventories(trips.values());
+
+            List<Ticket> legTickets = new ArrayList<>(legs.size());
+            for (LegSeat leg : legs) {
+                SeatInventory inventory = inventories.get(leg.tripId());
+                if (!inventory.contains(leg.seatNumber())) {
+                    throw new IllegalArgumentException("Неверный номер места");
+                }
+                if (!inventory.isFree(leg.seatNumber())) {
+                    throw new IllegalStateException("Место уже занято");
+                }
+                Trip trip = trips.get(leg.tripId());
+                BigDecimal price = priceStrategyFactory.chooseFor(trip).calculate(trip, 1);
+                legTickets.add(newTicket(trip, user, leg.seatNumber(), price, request));
+            }
+            List<Ticket> saved = ticketRepository.saveAll(legTickets);
+            Map<Long, List<Ticket>> byTrip = new LinkedHashMap<>();
+            saved.forEach(ticket -> byTrip.computeIfAbsent(ticket.getTrip().getId(), id -> new ArrayList<>()).add(ticket));
+            byTrip.values().forEach(tripTickets -> eventPublisher.publishEvent(TicketStatusChangedEvent.booked(tripTickets)));
+            return saved;
+        }));
+        seatHoldExpirer.schedule(tickets);
+        return tickets;
     }
 
+    /**
+     * Pays for a booked ticket and ends its seat hold.
+     * The status is switched with a conditional update that also checks the hold expiry,
+     * so a payment cannot revive a hold that has run out even before the expirer released it.
+     *
+     * @param ticketId ID of the ticket
+     * @return successful payment
+     */
     @Transactional
     public Payment payTicket(Long ticketId) {
+        Optional<TicketHold> hold = ticketRepository.findPendingHold(ticketId);
+        if (ticketRepository.markPaid(ticketId, LocalDateTime.now()) == 0) {
+            ticketRepository.findTripIdById(ticketId)
+                    .orElseThrow(() -> new IllegalArgumentException("Билет не найден"));
+            throw new IllegalStateException("Бронь истекла или билет уже оплачен");
+        }
         Ticket ticket = ticketRepository.findById(ticketId)
                 .orElseThrow(() -> new IllegalArgumentException("Билет не найден"));
-        ticket.setStatus(TicketStatus.PAID);
         Payment payment = new Payment();
         payment.setTicket(ticket);
         payment.setAmount(ticket.getPrice());
         payment.setStatus(PaymentStatus.SUCCESS);
         payment.setProcessedAt(OffsetDateTime.now());
-        ticketRepository.save(ticket);
+        eventPublisher.publishEvent(TicketStatusChangedEvent.of(ticket, TicketStatus.BOOKED, TicketStatus.PAID));
+        hold.ifPresent(h -> eventPublisher.publishEvent(new SeatHoldEndedEvent(h.ticketId(), h.tripId(), h.expiresAt())));
         return paymentRepository.save(payment);
     }
 
-    @Transactional
+    /**
+     * Cancels (or refunds, if paid) the user's ticket and returns its seat to the trip.
+     * Runs under the trip lock, so it is serialized with bookings of the same trip.
+     *
+     * @param ticketId ID of the ticket
+     * @param userId   ID of the ticket owner
+     * @return cancelled ticket
+     */
     public Ticket cancel(Long ticketId, Long userId) {
-        Ticket ticket = ticketRepository.findByIdAndUser(ticketId, userService.getUser(userId))
+        Long tripId = ticketRepository.findTripIdById(ticketId)
                 .orElseThrow(() -> new IllegalArgumentException("Билет не найден у пользователя"));
 
-        if (ticket.getStatus() == TicketStatus.PAID) {
-            ticket.setStatus(TicketStatus.REFUNDED);
-        } else {
-            ticket.setStatus(TicketStatus.CANCELLED);
-        }
+        return tripLockManager.withTripLock(tripId, () -> transactionTemplate.execute(status -> {
+            Ticket ticket = ticketRepository.findByIdAndUser(ticketId, userService.getUser(userId))
+                    .orElseThrow(() -> new IllegalArgumentException("Билет не найден у пользователя"));
+
+            if (ticket.getStatus() == TicketStatus.CANCELLED || ticket.getStatus() == TicketStatus.REFUNDED) {
+                throw new IllegalStateException("Билет уже отменён");
+            }
 
-        Trip trip = ticket.getTrip();
-        trip.setSeatsAvailable(trip.getSeatsAvailable() + 1);
-        tripService.save(trip);
-        return ticketRepository.save(ticket);
+            TicketStatus previous = ticket.getStatus();
+            if (previous == TicketStatus.BOOKED && ticket.getHoldExpiresAt() != null) {
+                eventPublisher.publishEvent(new SeatHoldEndedEvent(ticketId, tripId, ticket.getHoldExpiresAt()));
+            }
+            if (previous == TicketStatus.PAID) {
+                ticket.setStatus(TicketStatus.REFUNDED);
+            } else {
+                ticket.setStatus(TicketStatus.CANCELLED);
+            }
+            ticket.setHoldExpiresAt(null);
+
+            Ticket saved = ticketRepository.save(ticket);
+            int released = 1;
+            if (ticket.getBoardStop() == null) {
+                tripService.releaseSeats(ticket.getTrip(), 1);
+            } else {
+                released = tripService.recountSeats(tripId);
+            }
+            eventPublisher.publishEvent(TicketStatusChangedEvent.of(saved, previous, saved.getStatus()));
+            if (released > 0) {
+                eventPublisher.publishEvent(new SeatsReleasedEvent(tripId, released));
+            }
+            return saved;
+        }));
     }
 
     public List<Ticket> myTickets(Long userId) {
@@ -200,6 +512,16 @@ public class BookingService {
         return ticketRepository.findByUser(user);
     }
 
+    /**
+     * Группы и маршруты с пересадками продаются только на весь рейс: их места берутся из снимка всего рейса,
+     * поэтому посадку и высадку на промежуточных остановках нельзя молча пропустить.
+     */
+    private static void requireWholeTrip(BookingRequest request) {
+        if (request != null && (request.getBoardStop() != null || request.getAlightStop() != null)) {
+            throw new IllegalArgumentException("Посадка и высадка на промежуточных остановках доступны только для одного рейса");
+        }
+    }
+
     private void enrichWithPassenger(Ticket ticket, BookingRequest request) {
         if (request == null) {
             return;
@@ -250,4 +572,8 @@ public class BookingService {
             default -> raw;
         };
     }
+
+    /** Место на одном сегменте маршрута с пересадками. */
+    public record LegSeat(Long tripId, int seatNumber) {
+    }
 }
@@ -0,0 +1,45 @@
+package ru.codeislive63.springmvc.service;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.domain.entity.UserNotification;
+import ru.codeislive63.springmvc.repository.UserNotificationRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Лента уведомлений личного кабинета.
+ */
+@Service
+@RequiredArgsConstructor
+public class NotificationService {
+
+    private final UserNotificationRepository notificationRepository;
+
+    @Transactional
+    public UserNotification notify(UserAccount user, String message, Ticket ticket) {
+        UserNotification notification = new UserNotification();
+        notification.setUser(user);
+        notification.setMessage(message);
+        notification.setTicket(ticket);
+        notification.setCreatedAt(LocalDateTime.now());
+        return notificationRepository.save(notification);
+    }
+
+    public List<UserNotification> feed(Long userId) {
+        return notificationRepository.findTop20ByUserIdOrderByIdDesc(userId);
+    }
+
+    public long unreadCount(Long userId) {
+        return notificationRepository.countByUserIdAndReadFalse(userId);
+    }
+
+    @Transactional
+    public void markAllRead(Long userId) {
+        notificationRepository.markAllRead(userId);
+    }
+}
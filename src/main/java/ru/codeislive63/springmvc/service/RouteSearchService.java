@@ -3,10 +3,19 @@ package ru.codeislive63.springmvc.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-import ru.codeislive63.springmvc.domain.entity.Route;
-import ru.codeislive63.springmvc.domain.entity.Trip;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.codeislive63.springmvc.repository.RouteRepository;
 import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.RouteStop;
+import ru.codeislive63.springmvc.repository.projection.TripLegRow;
+import ru.codeislive63.springmvc.repository.projection.TripSeats;
+import ru.codeislive63.springmvc.service.search.FareSummary;
+import ru.codeislive63.springmvc.service.search.JourneyQuery;
+import ru.codeislive63.springmvc.service.search.SearchCoalescer;
+import ru.codeislive63.springmvc.service.search.SearchKey;
+import ru.codeislive63.springmvc.service.search.SearchResultCache;
+import ru.codeislive63.springmvc.service.search.Timetable;
+import ru.codeislive63.springmvc.web.dto.FareDay;
 import ru.codeislive63.springmvc.web.dto.ItineraryDto;
 import ru.codeislive63.springmvc.web.dto.RouteSearchRequest;
 import ru.codeislive63.springmvc.web.dto.TripLegDto;
@@ -18,10 +27,14 @@ import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
-@Transactional(readOnly = true)
 public class RouteSearchService {
 
     private final TripRepository tripRepository;
+    private final RouteRepository routeRepository;
+    private final Timetable timetable;
+    private final SearchResultCache searchResultCache;
+    private final SearchCoalescer searchCoalescer;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${route.min-transfer:20}")
     private int minTransferMinutes;
@@ -29,63 +42,328 @@ public class RouteSearchService {
     @Value("${route.max-transfer-hours:6}")
     private int maxTransferHours;
 
+    @Value("${route.max-transfers:2}")
+    private int maxTransfers;
+
+    @Value("${route.calendar.max-days:7}")
+    private int maxCalendarDays;
+
+    /**
+     * Ищет поездки по запросу. Результат без фильтров кэшируется и считается один раз на все
+     * одновременные одинаковые запросы. Запрос с фильтрами по отправлению и цене берёт готовый результат
+     * из кэша, если он есть: поездка, вытеснившая из Парето-множества подходящую, сама проходит эти фильтры.
+     * Фильтры по поезду и времени прибытия кэш не читают — вытеснившая поездка могла идти другим поездом
+     * или прибыть вечером дня отправления, позже времени фильтра.
+     * Без готового результата фильтры передаются в перебор кандидатов и результат не кэшируется.
+     */
     public List<ItineraryDto> search(RouteSearchRequest req) {
-        Duration minTransfer = Duration.ofMinutes(minTransferMinutes);
-        Duration maxTransfer = Duration.ofHours(maxTransferHours);
+        JourneyQuery query = journeyQuery(req);
+        SearchKey key = new SearchKey(req.getFromPointId(), req.getToPointId(), req.getDepartureDate());
+
+        if (!hasParetoBreakingFilters(req)) {
+            Optional<List<ItineraryDto>> cached = searchResultCache.get(key).map(this::withLiveSeats);
+            if (cached.isPresent()) {
+                return applyFilters(cached.get(), req);
+            }
+        }
+        if (hasFilters(req)) {
+            return applyFilters(inReadOnlyTransaction(query), req);
+        }
+        return searchCoalescer.execute(key, () -> compute(key, query));
+    }
+
+    /**
+     * Календарь цен: для каждого дня в пределах {@code ±days} от {@code date} — минимальная цена
+     * и самая быстрая поездка между станциями. Все дни считаются параллельно по одному снимку
+     * расписания без загрузки рейсов из БД. Прошедшие дни и дни за горизонтом расписания пропускаются.
+     */
+    public List<FareDay> fareCalendar(Long fromPointId, Long toPointId, LocalDate date, int days) {
+        int radius = Math.clamp(days, 0, maxCalendarDays);
+        LocalDate first = date.minusDays(radius);
+        if (first.isBefore(LocalDate.now())) {
+            first = LocalDate.now();
+        }
+
+        List<LocalDate> dates = new ArrayList<>();
+        List<JourneyQuery> queries = new ArrayList<>();
+        for (LocalDate day = first; !day.isAfter(date.plusDays(radius)); day = day.plusDays(1)) {
+            LocalDateTime dayEnd = day.atTime(LocalTime.MAX);
+            JourneyQuery query = new JourneyQuery(
+                    fromPointId,
+                    toPointId,
+                    day.atStartOfDay(),
+                    dayEnd,
+                    dayEnd.plusDays(1),
+                    Duration.ofMinutes(minTransferMinutes),
+                    Duration.ofHours(maxTransferHours),
+                    maxTransfers + 1);
+            if (timetable.covers(query)) {
+                dates.add(day);
+                queries.add(query);
+            }
+        }
+
+        List<FareSummary> summaries = timetable.fareSummaries(queries);
+        List<FareDay> calendar = new ArrayList<>(dates.size());
+        for (int i = 0; i < dates.size(); i++) {
+            FareSummary summary = summaries.get(i);
+            calendar.add(summary.found()
+                    ? new FareDay(dates.get(i), summary.minPrice(), summary.fastest().toMinutes(),
+                            formatDuration(summary.fastest()))
+                    : new FareDay(dates.get(i), null, null, null));
+        }
+        return calendar;
+    }
+
+    private static boolean hasParetoBreakingFilters(RouteSearchRequest req) {
+        return req.getTrainType() != null || req.getTrainClass() != null || req.getArrivalTo() != null;
+    }
 
-        LocalDateTime fromDt = req.getDepartureDate().atStartOfDay();
-        LocalDateTime toDt = req.getDepartureDate().atTime(LocalTime.MAX);
+    private static boolean hasFilters(RouteSearchRequest req) {
+        return hasParetoBreakingFilters(req)
+                || req.getDepartureFrom() != null
+                || req.getMaxPrice() != null;
+    }
 
+    /**
+     * Переводит запрос формы в параметры перебора. Окно отправления сужается до {@code departureFrom},
+     * а {@code arrivalTo} ограничивает время прибытия и в день поездки, и на следующий день (ночные поезда).
+     */
+    private JourneyQuery journeyQuery(RouteSearchRequest req) {
+        LocalDate date = req.getDepartureDate();
+        LocalDateTime fromDt = req.getDepartureFrom() != null ? date.atTime(req.getDepartureFrom()) : date.atStartOfDay();
+        LocalDateTime toDt = date.atTime(LocalTime.MAX);
         LocalDateTime searchEnd = toDt.plusDays(1);
+        LocalDateTime arriveBy = req.getArrivalTo() != null ? date.plusDays(1).atTime(req.getArrivalTo()) : null;
+        if (arriveBy != null && arriveBy.isBefore(searchEnd)) {
+            searchEnd = arriveBy;
+        }
 
-        Long originId = req.getFromPointId();
-        Long destinationId = req.getToPointId();
+        return new JourneyQuery(
+                req.getFromPointId(),
+                req.getToPointId(),
+                fromDt,
+                toDt,
+                searchEnd,
+                Duration.ofMinutes(minTransferMinutes),
+                Duration.ofHours(maxTransferHours),
+                maxTransfers + 1,
+                req.getTrainType(),
+                req.getTrainClass(),
+                req.getMaxPrice(),
+                arriveBy);
+    }
 
-        List<ItineraryDto> direct = tripRepository.findDirectTrips(originId, destinationId, fromDt, toDt)
-                .stream()
-                .map(t -> itineraryOf(List.of(toLeg(t))))
-                .toList();
+    /**
+     * Считает поиск без фильтров и кладёт результат в кэш.
+     * Вызывается только у ведущего запроса: ожидающие в {@link SearchCoalescer} не держат соединения с БД.
+     */
+    private List<ItineraryDto> compute(SearchKey key, JourneyQuery query) {
+        long version = searchResultCache.version();
+        List<ItineraryDto> found = inReadOnlyTransaction(query);
+        searchResultCache.put(key, found, version);
+        return found;
+    }
 
-        List<Trip> firstLegs = tripRepository.findFirstLegs(originId, fromDt, toDt);
+    private List<ItineraryDto> inReadOnlyTransaction(JourneyQuery query) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        return readOnly.execute(status -> timetable.covers(query)
+                ? searchTimetable(query)
+                : searchDatabase(query));
+    }
 
-        List<ItineraryDto> withTransfer = new ArrayList<>();
+    /**
+     * Подставляет в закэшированные поездки текущие счётчики свободных мест одним запросом.
+     */
+    private List<ItineraryDto> withLiveSeats(List<ItineraryDto> cached) {
+        Set<Long> tripIds = new HashSet<>();
+        cached.forEach(it -> it.getLegs().forEach(leg -> tripIds.add(leg.getTripId())));
+        if (tripIds.isEmpty()) {
+            return cached;
+        }
+        Map<Long, Integer> seats = tripRepository.findSeatsAvailable(tripIds).stream()
+                .collect(Collectors.toMap(TripSeats::tripId, TripSeats::seatsAvailable));
+
+        List<ItineraryDto> live = new ArrayList<>(cached.size());
+        for (ItineraryDto itinerary : cached) {
+            List<TripLegDto> legs = itinerary.getLegs().stream()
+                    .map(leg -> leg.toBuilder()
+                            .seatsAvailable(seats.getOrDefault(leg.getTripId(), leg.getSeatsAvailable()))
+                            .build())
+                    .toList();
+            live.add(itinerary.toBuilder().legs(legs).build());
+        }
+        return live;
+    }
 
-        for (Trip first : firstLegs) {
-            Route firstRoute = first.getRoute();
+    /**
+     * Ищет маршруты по расписанию в памяти и возвращает Парето-оптимальные поездки: каждая из них
+     * лучше остальных хотя бы по одному из критериев — отправление, прибытие, цена, число пересадок
+     * (не больше {@code route.max-transfers}). Строки рейсов найденных поездок загружаются одним запросом.
+     */
+    private List<ItineraryDto> searchTimetable(JourneyQuery query) {
+        List<List<Long>> journeys = timetable.paretoJourneys(query);
+        Set<Long> tripIds = new HashSet<>();
+        journeys.forEach(tripIds::addAll);
+        Map<Long, TripLegRow> rows = tripIds.isEmpty() ? Map.of() : tripRepository.findLegs(tripIds).stream()
+                .collect(Collectors.toMap(TripLegRow::tripId, row -> row));
+
+        List<List<TripLegRow>> found = new ArrayList<>(journeys.size());
+        for (List<Long> journey : journeys) {
+            List<TripLegRow> legs = new ArrayList<>(journey.size());
+            for (Long tripId : journey) {
+                TripLegRow row = rows.get(tripId);
+                if (row == null) {
+                    break;
+                }
+                legs.add(row);
+            }
+            if (legs.size() == journey.size()) {
+                found.add(legs);
+            }
+        }
+        return mergeAndSort(itineraries(found), List.of());
+    }
 
-            Long transferId = firstRoute.getDestination().getId();
+    /**
+     * Поиск по БД для дат за горизонтом расписания в памяти: прямые рейсы и одна пересадка.
+     * Выполняет два запроса: рейсы из пункта отправления (среди них и прямые) и все кандидаты
+     * на второе плечо сразу для всех станций пересадки. Вторые плечи соединяются с первыми в памяти
+     * через таблицу по станции пересадки и бинарный поиск по времени отправления.
+     * Фильтры по поезду и цене рейса проверяются в запросах; первое плечо, после которого уже
+     * не успеть к {@code arriveBy}, и пара дороже {@code maxPrice} отбрасываются до сборки DTO.
+     */
+    private List<ItineraryDto> searchDatabase(JourneyQuery query) {
+        Duration minTransfer = query.minTransfer();
+        Duration maxTransfer = query.maxTransfer();
+
+        LocalDateTime fromDt = query.departFrom();
+        LocalDateTime searchEnd = query.searchEnd();
+        LocalDateTime arriveBy = query.arriveBy();
+        BigDecimal maxPrice = query.maxPrice();
+
+        Long originId = query.originId();
+        Long destinationId = query.destinationId();
+
+        List<TripLegRow> firstLegs = tripRepository.findFirstLegs(originId, fromDt, query.departTo(),
+                query.trainType(), query.trainClass(), maxPrice);
+
+        List<List<TripLegRow>> direct = new ArrayList<>();
+        List<TripLegRow> transferLegs = new ArrayList<>();
+        Set<Long> transferIds = new HashSet<>();
+        LocalDateTime earliestSecond = null;
+        BigDecimal cheapestFirst = null;
+
+        for (TripLegRow first : firstLegs) {
+            Long transferId = first.destinationId();
+
+            if (Objects.equals(transferId, destinationId)) {
+                if (arriveBy == null || !first.arrival().isAfter(arriveBy)) {
+                    direct.add(List.of(first));
+                }
+                continue;
+            }
 
             if (Objects.equals(transferId, originId)) {
                 continue;
             }
 
-            if (Objects.equals(transferId, destinationId)){
+            if (first.arrival().plus(maxTransfer).isBefore(fromDt)) {
                 continue;
             }
 
-            LocalDateTime minDep = first.getArrivalTime().plus(minTransfer);
-            LocalDateTime maxDep = first.getArrivalTime().plus(maxTransfer);
-
-            if (maxDep.isBefore(fromDt)) {
+            LocalDateTime realMin = secondLegFrom(first, minTransfer, fromDt);
+            if (arriveBy != null && !realMin.isBefore(arriveBy)) {
                 continue;
             }
+            transferLegs.add(first);
+            transferIds.add(transferId);
+            if (earliestSecond == null || realMin.isBefore(earliestSecond)) {
+                earliestSecond = realMin;
+            }
+            if (cheapestFirst == null || first.price().compareTo(cheapestFirst) < 0) {
+                cheapestFirst = first.price();
+            }
+        }
 
-            LocalDateTime realMin = minDep.isBefore(fromDt) ? fromDt : minDep;
-            List<Trip> seconds = tripRepository.findSecondLegs(transferId, destinationId, realMin, searchEnd);
+        if (transferIds.isEmpty()) {
+            return mergeAndSort(itineraries(direct), List.of());
+        }
+
+        BigDecimal secondMaxPrice = maxPrice != null ? maxPrice.subtract(cheapestFirst) : null;
+        Map<Long, List<TripLegRow>> secondsByTransfer = tripRepository
+                .findSecondLegs(transferIds, destinationId, earliestSecond, searchEnd,
+                        query.trainType(), query.trainClass(), secondMaxPrice)
+                .stream()
+                .collect(Collectors.groupingBy(TripLegRow::originId));
 
-            for (Trip second : seconds) {
-                Long secondDestId = second.getRoute().getDestination().getId();
+        List<List<TripLegRow>> withTransfer = new ArrayList<>();
 
-                if (Objects.equals(secondDestId, originId)) {
+        for (TripLegRow first : transferLegs) {
+            List<TripLegRow> seconds = secondsByTransfer.getOrDefault(first.destinationId(), List.of());
+            LocalDateTime realMin = secondLegFrom(first, minTransfer, fromDt);
+
+            for (int i = firstDepartingAtOrAfter(seconds, realMin); i < seconds.size(); i++) {
+                TripLegRow second = seconds.get(i);
+                if (arriveBy != null && second.arrival().isAfter(arriveBy)) {
+                    continue;
+                }
+                if (maxPrice != null && first.price().add(second.price()).compareTo(maxPrice) > 0) {
                     continue;
                 }
+                withTransfer.add(List.of(first, second));
+            }
+        }
+
+        return mergeAndSort(itineraries(direct), itineraries(withTransfer));
+    }
 
-                withTransfer.add(itineraryOf(List.of(toLeg(first), toLeg(second))));
+    private LocalDateTime secondLegFrom(TripLegRow first, Duration minTransfer, LocalDateTime fromDt) {
+        LocalDateTime minDep = first.arrival().plus(minTransfer);
+        return minDep.isBefore(fromDt) ? fromDt : minDep;
+    }
+
+    /**
+     * Returns the index of the first trip departing at or after {@code time}; trips are sorted by departure.
+     */
+    private int firstDepartingAtOrAfter(List<TripLegRow> trips, LocalDateTime time) {
+        int lo = 0;
+        int hi = trips.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (trips.get(mid).departure().isBefore(time)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
             }
         }
+        return lo;
+    }
 
-        List<ItineraryDto> merged = mergeAndSort(direct, withTransfer);
-        return applyFilters(merged, req);
+    /**
+     * Собирает поездки из строк рейсов. Остановки всех маршрутов выдачи загружаются одним запросом,
+     * а DTO плеча строится один раз на рейс, даже если рейс входит в несколько поездок.
+     */
+    private List<ItineraryDto> itineraries(List<List<TripLegRow>> journeys) {
+        if (journeys.isEmpty()) {
+            return List.of();
+        }
+        Set<Long> routeIds = new HashSet<>();
+        journeys.forEach(journey -> journey.forEach(row -> routeIds.add(row.routeId())));
+        Map<Long, List<String>> stops = routeRepository.findStops(routeIds).stream()
+                .collect(Collectors.groupingBy(RouteStop::routeId,
+                        Collectors.mapping(RouteStop::name, Collectors.toList())));
+
+        Map<Long, TripLegDto> legs = new HashMap<>();
+        List<ItineraryDto> found = new ArrayList<>(journeys.size());
+        for (List<TripLegRow> journey : journeys) {
+            found.add(itineraryOf(journey.stream()
+                    .map(row -> legs.computeIfAbsent(row.tripId(),
+                            id -> toLeg(row, stops.getOrDefault(row.routeId(), List.of()))))
+                    .toList()));
+        }
+        return found;
     }
 
     private List<ItineraryDto> mergeAndSort(List<ItineraryDto> direct, List<ItineraryDto> transfer) {
@@ -132,28 +410,24 @@ public class RouteSearchService {
                 .build();
     }
 
-    private TripLegDto toLeg(Trip t) {
-        Route r = t.getRoute();
-        var train = t.getTrain();
-        var duration = Duration.between(t.getDepartureTime(), t.getArrivalTime());
-
+    private TripLegDto toLeg(TripLegRow row, List<String> stops) {
         return TripLegDto.builder()
-                .tripId(t.getId())
-                .routeId(r.getId())
-                .fromName(r.getOrigin().getName())
-                .toName(r.getDestination().getName())
-                .departureTime(t.getDepartureTime())
-                .arrivalTime(t.getArrivalTime())
-                .price(t.getBasePrice())
-                .trainName(train != null ? train.getName() : null)
-                .trainType(train != null ? train.getType() : null)
-                .trainClass(train != null ? train.getTrainClass() : null)
-                .wifiAvailable(train != null && train.isWifiAvailable())
-                .diningAvailable(train != null && train.isDiningAvailable())
-                .powerOutlets(train != null && train.isPowerOutlets())
-                .stops(r.getStops())
-                .legDuration(duration)
-                .seatsAvailable(t.getSeatsAvailable())
+                .tripId(row.tripId())
+                .routeId(row.routeId())
+                .fromName(row.originName())
+                .toName(row.destinationName())
+                .departureTime(row.departure())
+                .arrivalTime(row.arrival())
+                .price(row.price())
+                .trainName(row.trainName())
+                .trainType(row.trainType())
+                .trainClass(row.trainClass())
+                .wifiAvailable(row.wifiAvailable())
+                .diningAvailable(row.diningAvailable())
+                .powerOutlets(row.powerOutlets())
+                .stops(stops)
+                .legDuration(Duration.between(row.departure(), row.arrival()))
+                .seatsAvailable(row.seatsAvailable())
                 .build();
     }
 
@@ -1,8 +1,11 @@
 package ru.codeislive63.springmvc.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.codeislive63.springmvc.domain.TicketStatus;
 import ru.codeislive63.springmvc.domain.entity.Route;
 import ru.codeislive63.springmvc.domain.entity.Trip;
 import ru.codeislive63.springmvc.repository.RouteRepository;
@@ -11,15 +14,23 @@ import ru.codeislive63.springmvc.repository.TripRepository;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class TripService {
 
+    private static final List<TicketStatus> ACTIVE_STATUSES = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+
     private final TripRepository tripRepository;
     private final RouteRepository routeRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     public Trip getTrip(Long id) {
         return tripRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("Рейс не найден"));
     }
@@ -36,6 +47,106 @@ public class TripService {
     public Trip save(Trip trip) {
         return tripRepository.save(trip);
     }
+
+    /**
+     * Списывает места со счётчика рейса условным UPDATE и возвращает рейс с актуальным счётчиком.
+     * Строка рейса остаётся заблокированной до конца транзакции, поэтому параллельные брони
+     * одного рейса выстраиваются в очередь на уровне БД.
+     *
+     * @param tripId ID of the trip
+     * @param count  number of seats to claim
+     * @return trip with the refreshed seat counter
+     * @throws IllegalStateException if the trip does not have enough free seats
+     */
+    @Transactional
+    public Trip claimSeats(Long tripId, int count) {
+        if (tripRepository.claimSeats(tripId, count) == 0) {
+            getTrip(tripId);
+            throw new IllegalStateException("Нет свободных мест");
+        }
+        Trip trip = getTrip(tripId);
+        entityManager.refresh(trip);
+        return trip;
+    }
+
+    /**
+     * Пытается списать места со счётчика рейса. В отличие от {@link #claimSeats(Long, int)} не бросает исключение,
+     * поэтому годится для вызова из чужой транзакции, которую нельзя помечать на откат.
+     *
+     * @param tripId ID of the trip
+     * @param count  number of seats to claim
+     * @return {@code true} if the seats were claimed
+     */
+    @Transactional
+    public boolean tryClaimSeats(Long tripId, int count) {
+        if (tripRepository.claimSeats(tripId, count) == 0) {
+            return false;
+        }
+        entityManager.refresh(getTrip(tripId));
+        return true;
+    }
+
+    /**
+     * Списывает по одному месту на каждом из рейсов маршрута с пересадками.
+     * Строки рейсов блокируются в порядке возрастания ID, поэтому встречные брони
+     * одних и тех же рейсов не могут взаимно заблокироваться.
+     *
+     * @param tripIds IDs of the trips
+     * @return trips with refreshed seat counters, keyed by ID
+     * @throws IllegalStateException if any of the trips has no free seats
+     */
+    @Transactional
+    public Map<Long, Trip> claimSeatOnEach(Collection<Long> tripIds) {
+        Map<Long, Trip> trips = new HashMap<>();
+        for (Long tripId : tripIds.stream().distinct().sorted().toList()) {
+            trips.put(tripId, claimSeats(tripId, 1));
+        }
+        return trips;
+    }
+
+    /**
+     * Блокирует строку рейса до конца транзакции и возвращает рейс.
+     * Нужна броням на часть маршрута: они проверяют место по участкам и не могут опереться на уникальный ключ места.
+     *
+     * @param tripId ID of the trip
+     * @return locked trip
+     */
+    @Transactional
+    public Trip lockTrip(Long tripId) {
+        Trip trip = tripRepository.lockById(tripId).orElseThrow(() -> new IllegalArgumentException("Рейс не найден"));
+        entityManager.refresh(trip);
+        return trip;
+    }
+
+    /**
+     * Пересчитывает счётчик мест, свободных на всём рейсе, по активным билетам.
+     * Используется после отмены билетов на часть маршрута, место которых может оставаться занятым на других участках.
+     *
+     * @param tripId ID of the trip
+     * @return change of the counter; positive if seats became free on the whole trip
+     */
+    @Transactional
+    public int recountSeats(Long tripId) {
+        Trip trip = lockTrip(tripId);
+        int before = trip.getSeatsAvailable();
+        tripRepository.recountSeats(tripId, ACTIVE_STATUSES);
+        entityManager.refresh(trip);
+        return trip.getSeatsAvailable() - before;
+    }
+
+    /**
+     * Возвращает места в счётчик рейса без чтения и перезаписи текущего значения.
+     *
+     * @param trip  trip whose seats are released
+     * @param count number of seats to release
+     */
+    @Transactional
+    public void releaseSeats(Trip trip, int count) {
+        tripRepository.releaseSeats(trip.getId(), count);
+        if (entityManager.contains(trip)) {
+            entityManager.refresh(trip);
+        }
+    }
 }
 
 
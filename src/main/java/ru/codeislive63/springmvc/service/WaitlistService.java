@@ -0,0 +1,183 @@
+package ru.codeislive63.springmvc.service;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.WaitlistStatus;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.domain.entity.WaitlistEntry;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.WaitlistEntryRepository;
+import ru.codeislive63.springmvc.service.booking.SeatHoldExpirer;
+import ru.codeislive63.springmvc.service.booking.SeatInventory;
+import ru.codeislive63.springmvc.service.booking.SeatsReleasedEvent;
+import ru.codeislive63.springmvc.service.booking.TicketStatusChangedEvent;
+import ru.codeislive63.springmvc.service.pricing.PriceStrategyFactory;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Лист ожидания заполненных рейсов.
+ * <p>
+ * Освободившееся место отдаётся самой ранней ожидающей заявке рейса в той же транзакции, что и отмена
+ * билета или снятие истёкшей брони: выписывается неоплаченный билет с обычным сроком удержания,
+ * а владелец заявки получает уведомление в личном кабинете. Наличие очереди проверяется в той же транзакции
+ * одним индексным запросом к {@code waitlist_entries}, поэтому заявки, принятые другим узлом, не пропускаются;
+ * освобождение места на рейсе без очереди обходится этим одним запросом.
+ */
+@Service
+@RequiredArgsConstructor
+public class WaitlistService {
+
+    private static final List<TicketStatus> RESERVED_STATUSES = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+    private static final DateTimeFormatter DEPARTURE_FORMAT = DateTimeFormatter.ofPattern("dd.MM HH:mm");
+    private static final DateTimeFormatter HOLD_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final WaitlistEntryRepository waitlistRepository;
+    private final TicketRepository ticketRepository;
+    private final TripService tripService;
+    private final UserService userService;
+    private final NotificationService notificationService;
+    private final PriceStrategyFactory priceStrategyFactory;
+    private final SeatHoldExpirer seatHoldExpirer;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Ставит пользователя в лист ожидания рейса, на котором не осталось свободных мест.
+     *
+     * @param userId ID of the user
+     * @param tripId ID of the trip
+     * @return created entry
+     */
+    @Transactional
+    public WaitlistEntry join(Long userId, Long tripId) {
+        Trip trip = tripService.getTrip(tripId);
+        if (trip.getSeatsAvailable() > 0) {
+            throw new IllegalStateException("На рейсе есть свободные места, забронируйте билет");
+        }
+        if (waitlistRepository.existsByUserIdAndTripIdAndStatus(userId, tripId, WaitlistStatus.WAITING)) {
+            throw new IllegalStateException("Вы уже в листе ожидания этого рейса");
+        }
+
+        WaitlistEntry entry = new WaitlistEntry();
+        entry.setUser(userService.getUser(userId));
+        entry.setTrip(trip);
+        entry.setCreatedAt(LocalDateTime.now());
+        return waitlistRepository.save(entry);
+    }
+
+    /**
+     * Снимает заявку пользователя из листа ожидания.
+     *
+     * @param userId  ID of the user
+     * @param entryId ID of the entry
+     */
+    @Transactional
+    public void leave(Long userId, Long entryId) {
+        WaitlistEntry entry = waitlistRepository.findByIdAndUserId(entryId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("Заявка не найдена"));
+        if (entry.getStatus() != WaitlistStatus.WAITING) {
+            throw new IllegalStateException("Заявка уже не в ожидании");
+        }
+        entry.setStatus(WaitlistStatus.CANCELLED);
+    }
+
+    public List<WaitlistEntry> waitingEntries(Long userId) {
+        return waitlistRepository.findByUserIdAndStatusOrderByIdDesc(userId, WaitlistStatus.WAITING);
+    }
+
+    /**
+     * Возвращает число ожидающих заявок рейса.
+     */
+    public long waitingCount(Long tripId) {
+        return waitlistRepository.countByTripIdAndStatus(tripId, WaitlistStatus.WAITING);
+    }
+
+    /**
+     * Раздаёт освободившиеся места ожидающим заявкам. Выполняется в транзакции, освободившей места.
+     */
+    @EventListener
+    @Transactional
+    public void onSeatsReleased(SeatsReleasedEvent event) {
+        if (!waitlistRepository.existsByTripIdAndStatus(event.tripId(), WaitlistStatus.WAITING)) {
+            return;
+        }
+        for (int i = 0; i < event.count(); i++) {
+            if (!allocateNext(event.tripId())) {
+                return;
+            }
+        }
+    }
+
+    private boolean allocateNext(Long tripId) {
+        if (!tripService.tryClaimSeats(tripId, 1)) {
+            return false;
+        }
+        Trip trip = tripService.getTrip(tripId);
+        List<WaitlistEntry> next = waitlistRepository.findNextWaiting(tripId, Limit.of(1));
+        var seat = SeatInventory.of(trip.getTrain().getSeatCapacity(),
+                ticketRepository.findBookedSeats(tripId, RESERVED_STATUSES)).firstFree();
+        if (next.isEmpty() || seat.isEmpty()) {
+            tripService.releaseSeats(trip, 1);
+            return false;
+        }
+
+        WaitlistEntry entry = next.get(0);
+        Ticket ticket = ticketRepository.save(newTicket(trip, entry.getUser(), seat.getAsInt()));
+        eventPublisher.publishEvent(TicketStatusChangedEvent.booked(List.of(ticket)));
+        entry.setStatus(WaitlistStatus.ALLOCATED);
+        entry.setTicket(ticket);
+        entry.setAllocatedAt(ticket.getBookedAt());
+        notificationService.notify(entry.getUser(), allocationMessage(trip, ticket), ticket);
+
+        afterCommit(() -> seatHoldExpirer.schedule(List.of(ticket)));
+        return true;
+    }
+
+    private Ticket newTicket(Trip trip, UserAccount user, int seatNumber) {
+        BigDecimal price = priceStrategyFactory.chooseFor(trip).calculate(trip, 1);
+        Ticket ticket = new Ticket();
+        ticket.setTrip(trip);
+        ticket.setUser(user);
+        ticket.setSeatNumber(seatNumber);
+        ticket.setPrice(price);
+        ticket.setBookedAt(LocalDateTime.now());
+        ticket.setStatus(TicketStatus.BOOKED);
+        ticket.setHoldExpiresAt(seatHoldExpirer.expiresAt(ticket.getBookedAt()));
+        return ticket;
+    }
+
+    private String allocationMessage(Trip trip, Ticket ticket) {
+        var route = trip.getRoute();
+        return String.format("Из листа ожидания: вам выделено место %d на рейс %s — %s (%s). Оплатите бронь до %s.",
+                ticket.getSeatNumber(),
+                route.getOrigin().getName(),
+                route.getDestination().getName(),
+                trip.getDepartureTime().format(DEPARTURE_FORMAT),
+                ticket.getHoldExpiresAt().format(HOLD_FORMAT));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
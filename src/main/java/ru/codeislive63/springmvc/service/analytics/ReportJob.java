@@ -0,0 +1,98 @@
+package ru.codeislive63.springmvc.service.analytics;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Задание на построение XLSX отчёта. Состояние меняет поток пула отчётов, читают — запросы опроса.
+ */
+public final class ReportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    /**
+     * Параметры отчёта и версия данных, из которых он строится; одинаковые ключи дают одинаковые отчёты.
+     *
+     * @param date        day the occupancy window and the demand period are counted from
+     * @param dataVersion {@link TicketRollups#version()} at submission
+     */
+    public record Key(LocalDate date, long dataVersion) {
+    }
+
+    private final String id;
+    private final Key key;
+    private final Path file;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+    private volatile Status status = Status.QUEUED;
+    private volatile int progress;
+    private volatile String error;
+
+    ReportJob(String id, Key key, Path file) {
+        this.id = id;
+        this.key = key;
+        this.file = file;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public Key key() {
+        return key;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public LocalDateTime createdAt() {
+        return createdAt;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * Возвращает долю выполненной работы в процентах.
+     */
+    public int progress() {
+        return progress;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    /**
+     * Завершается файлом отчёта, когда задание выполнено, или исключением, если оно не удалось.
+     */
+    public CompletableFuture<Path> result() {
+        return result;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+    }
+
+    void progress(int percent) {
+        progress = Math.max(progress, Math.min(percent, 100));
+    }
+
+    void complete() {
+        progress = 100;
+        status = Status.DONE;
+        result.complete(file);
+    }
+
+    void fail(Throwable cause) {
+        error = "Не удалось сформировать отчёт";
+        status = Status.FAILED;
+        result.completeExceptionally(new IllegalStateException(error, cause));
+    }
+}
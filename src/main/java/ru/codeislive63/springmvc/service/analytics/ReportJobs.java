@@ -0,0 +1,245 @@
+package ru.codeislive63.springmvc.service.analytics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import ru.codeislive63.springmvc.service.AnalyticsService;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронное построение XLSX отчётов.
+ * <p>
+ * Задания выполняются ограниченным пулом ({@code analytics.report.jobs.threads} потоков,
+ * очередь на {@code analytics.report.jobs.queue-capacity} заданий) и пишут отчёт во временный файл
+ * каталога {@code analytics.report.jobs.dir}. Задания с одинаковым {@link ReportJob.Key} — те же параметры
+ * и та же версия данных — не дублируются: повторный запрос получает уже идущее задание или готовый файл.
+ * Готовые файлы хранятся до вытеснения: сверх {@code analytics.report.jobs.max-artifacts} удаляется
+ * давнее всего запрошенный; файл, который сейчас скачивают, удаляется только после закрытия последнего
+ * потока чтения. Неудавшиеся задания файлов не имеют и готовые не вытесняют: их состояние хранится
+ * для опроса в отдельном списке того же размера. Задания живут в памяти узла, поэтому при старте каталог очищается.
+ */
+@Slf4j
+@Component
+public class ReportJobs {
+
+    private static final String EXTENSION = ".xlsx";
+
+    private final AnalyticsService analyticsService;
+    private final TicketRollups ticketRollups;
+    private final Path directory;
+    private final int maxArtifacts;
+    private final ThreadPoolExecutor executor;
+    private final Counter deduplicated;
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<ReportJob.Key, ReportJob> running = new HashMap<>();
+    private final LinkedHashMap<ReportJob.Key, ReportJob> finished = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, ReportJob> failed = new LinkedHashMap<>();
+    private final Map<String, Integer> readers = new HashMap<>();
+
+    public ReportJobs(AnalyticsService analyticsService,
+                      TicketRollups ticketRollups,
+                      @Value("${analytics.report.jobs.dir:${java.io.tmpdir}/railway-reports}") Path directory,
+                      @Value("${analytics.report.jobs.threads:2}") int threads,
+                      @Value("${analytics.report.jobs.queue-capacity:16}") int queueCapacity,
+                      @Value("${analytics.report.jobs.max-artifacts:8}") int maxArtifacts,
+                      MeterRegistry meterRegistry) throws IOException {
+        if (threads < 1 || queueCapacity < 1 || maxArtifacts < 1) {
+            throw new IllegalArgumentException("analytics.report.jobs limits must be positive");
+        }
+        this.analyticsService = analyticsService;
+        this.ticketRollups = ticketRollups;
+        this.directory = Files.createDirectories(directory);
+        this.maxArtifacts = maxArtifacts;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "report-job-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.deduplicated = Counter.builder("analytics.report.jobs.deduplicated")
+                .description("Report requests served by an existing job or artifact")
+                .register(meterRegistry);
+        Gauge.builder("analytics.report.jobs.queued", executor, e -> e.getQueue().size())
+                .description("Report jobs waiting for a worker")
+                .register(meterRegistry);
+        removeArtifacts();
+    }
+
+    /**
+     * Возвращает задание на отчёт по текущим данным: готовое, уже идущее или новое.
+     *
+     * @return report job
+     * @throws IllegalStateException if the job queue is full
+     */
+    public synchronized ReportJob submit() {
+        ReportJob.Key key = new ReportJob.Key(LocalDate.now(), ticketRollups.version());
+        ReportJob done = finished.get(key);
+        if (done != null && done.status() == ReportJob.Status.DONE && Files.exists(done.file())) {
+            deduplicated.increment();
+            return done;
+        }
+        ReportJob current = running.get(key);
+        if (current != null) {
+            deduplicated.increment();
+            return current;
+        }
+
+        String id = UUID.randomUUID().toString();
+        ReportJob job = new ReportJob(id, key, directory.resolve(id + EXTENSION));
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Слишком много отчётов в очереди, попробуйте позже");
+        }
+        jobs.put(id, job);
+        running.put(key, job);
+        return job;
+    }
+
+    public Optional<ReportJob> find(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Открывает файл готового задания и отмечает его как недавно запрошенный. Файл остаётся на диске,
+     * пока поток возвращённого ресурса не закрыт, даже если задание за это время вытеснено.
+     *
+     * @return single-use resource with the known content length
+     * @throws IllegalArgumentException if there is no such job or its file was evicted
+     * @throws IllegalStateException    if the job has not finished successfully
+     */
+    public synchronized Resource artifact(String id) throws IOException {
+        ReportJob job = find(id).orElseThrow(() -> new IllegalArgumentException("Отчёт не найден"));
+        if (job.status() != ReportJob.Status.DONE) {
+            throw new IllegalStateException("Отчёт ещё не готов");
+        }
+        finished.get(job.key());
+        long size = Files.size(job.file());
+        InputStream in = new FilterInputStream(Files.newInputStream(job.file())) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!closed) {
+                        closed = true;
+                        release(job);
+                    }
+                }
+            }
+        };
+        readers.merge(id, 1, Integer::sum);
+        return new InputStreamResource(in, "report " + id) {
+            @Override
+            public long contentLength() {
+                return size;
+            }
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(ReportJob job) {
+        job.start();
+        Path part = directory.resolve(job.id() + ".part");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part))) {
+                analyticsService.writeReport(out, job::progress);
+            }
+            Files.move(part, job.file(), StandardCopyOption.REPLACE_EXISTING);
+            finish(job, null);
+        } catch (Exception e) {
+            log.warn("Report job {} failed", job.id(), e);
+            deleteQuietly(part);
+            finish(job, e);
+        }
+    }
+
+    private synchronized void finish(ReportJob job, Exception failure) {
+        running.remove(job.key(), job);
+        if (failure != null) {
+            job.fail(failure);
+            failed.put(job.id(), job);
+            if (failed.size() > maxArtifacts) {
+                Iterator<ReportJob> eldest = failed.values().iterator();
+                jobs.remove(eldest.next().id());
+                eldest.remove();
+            }
+            return;
+        }
+        ReportJob previous = finished.put(job.key(), job);
+        if (previous != null && previous != job) {
+            discard(previous);
+        }
+        while (finished.size() > maxArtifacts) {
+            Iterator<ReportJob> eldest = finished.values().iterator();
+            discard(eldest.next());
+            eldest.remove();
+        }
+        job.complete();
+    }
+
+    private void discard(ReportJob job) {
+        jobs.remove(job.id());
+        if (!readers.containsKey(job.id())) {
+            deleteQuietly(job.file());
+        }
+    }
+
+    private synchronized void release(ReportJob job) {
+        if (readers.merge(job.id(), -1, Integer::sum) == 0) {
+            readers.remove(job.id());
+            if (!jobs.containsKey(job.id())) {
+                deleteQuietly(job.file());
+            }
+        }
+    }
+
+    private void removeArtifacts() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{xlsx,part}")) {
+            files.forEach(this::deleteQuietly);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete report file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package ru.codeislive63.springmvc.service.analytics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.TicketRollup;
+import ru.codeislive63.springmvc.domain.entity.TicketRollupId;
+import ru.codeislive63.springmvc.domain.entity.TicketRollupState;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TicketRollupRepository;
+import ru.codeislive63.springmvc.repository.TicketRollupStateRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.TicketRollupRow;
+import ru.codeislive63.springmvc.service.booking.TicketStatusChangedEvent;
+import ru.codeislive63.springmvc.service.search.TripChangedEvent;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Инкрементальное ведение таблицы {@code ticket_rollups}.
+ * <p>
+ * После фиксации транзакции, создавшей билеты или сменившей их статус ({@link TicketStatusChangedEvent}),
+ * приращения складываются в память по ключу (маршрут, дата отправления, статус) и раз в
+ * {@code analytics.rollup.flush-interval} записываются в БД одной транзакцией. Каждое приращение
+ * прибавляется к строке условным UPDATE, поэтому записи с нескольких узлов не затирают друг друга;
+ * недостающая строка вставляется, а при гонке вставок вся пачка повторяется при следующей записи.
+ * <p>
+ * Полный пересчёт из {@code tickets} выполняется при старте (приращения, не записанные до остановки, теряются),
+ * по расписанию {@code analytics.rollup.rebuild-cron}, по команде администратора и вместо записи приращений,
+ * если изменение рейса с билетами поменяло ключи его билетов. Пересчёт и приращения упорядочивает строка
+ * {@code ticket_rollup_state}: пересчёт держит её эксклюзивно и увеличивает поколение, а транзакция с билетами
+ * перед фиксацией читает поколение под разделяемой блокировкой и помечает им своё приращение. Поэтому пересчёты
+ * с разных узлов идут по одному, фиксации с билетами на время пересчёта ждут его в БД, а приращение старого
+ * поколения уже учтено пересчётом и при записи отбрасывается.
+ */
+@Slf4j
+@Component
+public class TicketRollups {
+
+    /**
+     * Поколение приращения, записанного вне транзакции или до создания строки состояния: его порядок
+     * относительно пересчёта неизвестен, поэтому вместо записи агрегаты пересчитываются.
+     */
+    private static final long UNKNOWN_GENERATION = -1;
+
+    private final TicketRollupRepository rollupRepository;
+    private final TicketRollupStateRepository stateRepository;
+    private final TicketRepository ticketRepository;
+    private final TripRepository tripRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<PendingKey, Delta> pending = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean stale;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public TicketRollups(TicketRollupRepository rollupRepository,
+                         TicketRollupStateRepository stateRepository,
+                         TicketRepository ticketRepository,
+                         TripRepository tripRepository,
+                         TransactionTemplate transactionTemplate,
+                         MeterRegistry meterRegistry) {
+        this.rollupRepository = rollupRepository;
+        this.stateRepository = stateRepository;
+        this.ticketRepository = ticketRepository;
+        this.tripRepository = tripRepository;
+        this.transactionTemplate = transactionTemplate;
+        Gauge.builder("analytics.rollup.pending", pending, Map::size)
+                .description("Rollup keys with changes not yet written to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Запоминает приращение после фиксации транзакции с поколением агрегатов, прочитанным в ней под разделяемой
+     * блокировкой: пересчёт, начатый позже, увидит изменение, а идущий сейчас задержит фиксацию до своего конца.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onTicketStatusChanged(TicketStatusChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(UNKNOWN_GENERATION, event);
+            return;
+        }
+        long generation = stateRepository.lockShared(TicketRollupState.ID)
+                .map(TicketRollupState::getGeneration)
+                .orElse(UNKNOWN_GENERATION);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(generation, event);
+            }
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripChanged(TripChangedEvent event) {
+        version.incrementAndGet();
+        if (!tripRepository.existsById(event.tripId()) || ticketRepository.existsByTripId(event.tripId())) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Возвращает версию данных аналитики: она растёт при каждой записи агрегатов и изменении рейсов,
+     * поэтому всё построенное по более старой версии могло устареть.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Помечает агрегаты устаревшими: при следующей записи они будут пересчитаны целиком.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Записывает в БД накопленные приращения текущего поколения и отбрасывает более старые — их уже учёл
+     * пересчёт. Если агрегаты помечены устаревшими, вместо записи пересчитывает их.
+     */
+    @Scheduled(initialDelayString = "${analytics.rollup.flush-interval:PT5S}",
+            fixedDelayString = "${analytics.rollup.flush-interval:PT5S}")
+    public synchronized void flush() {
+        if (stale) {
+            rebuild();
+            return;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<PendingKey, Delta> batch = new HashMap<>();
+        for (PendingKey key : pending.keySet()) {
+            Delta delta = pending.remove(key);
+            if (delta != null && !delta.isZero()) {
+                batch.put(key, delta);
+            }
+        }
+        try {
+            int written = transactionTemplate.execute(status -> {
+                long generation = stateRepository.lockShared(TicketRollupState.ID)
+                        .map(TicketRollupState::getGeneration)
+                        .orElse(UNKNOWN_GENERATION);
+                int rows = 0;
+                for (Map.Entry<PendingKey, Delta> entry : batch.entrySet()) {
+                    PendingKey key = entry.getKey();
+                    if (key.generation() == UNKNOWN_GENERATION) {
+                        stale = true;
+                    } else if (key.generation() == generation) {
+                        write(key.id(), entry.getValue());
+                        rows++;
+                    }
+                }
+                return rows;
+            });
+            if (written > 0) {
+                version.incrementAndGet();
+            }
+            log.debug("Flushed {} of {} rollup keys", written, batch.size());
+        } catch (RuntimeException e) {
+            batch.forEach((key, delta) -> pending.merge(key, delta, Delta::plus));
+            log.warn("Failed to flush {} rollup keys, will retry", batch.size(), e);
+        }
+    }
+
+    /**
+     * Пересчитывает агрегаты из таблицы {@code tickets} одним групповым запросом под эксклюзивной блокировкой
+     * строки состояния и увеличивает поколение. Накопленные приращения не сбрасываются: старые отбросит запись,
+     * а приращения транзакций, дождавшихся конца пересчёта, получат новое поколение и будут записаны.
+     * Если пересчёт не удался, агрегаты остаются помеченными устаревшими.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${analytics.rollup.rebuild-cron:0 15 3 * * *}")
+    public synchronized void rebuild() {
+        stale = false;
+        List<TicketRollupRow> rows;
+        try {
+            createState();
+            rows = transactionTemplate.execute(status -> {
+                TicketRollupState state = stateRepository.lockExclusive(TicketRollupState.ID).orElseThrow();
+                state.setGeneration(state.getGeneration() + 1);
+                rollupRepository.deleteAllInBatch();
+                List<TicketRollupRow> totals = ticketRepository.rollupRows();
+                rollupRepository.saveAll(totals.stream()
+                        .map(row -> new TicketRollup(
+                                new TicketRollupId(row.routeId(), row.departureDate(), row.status()),
+                                row.tickets(), row.amount()))
+                        .toList());
+                return totals;
+            });
+        } catch (RuntimeException e) {
+            stale = true;
+            throw e;
+        }
+        version.incrementAndGet();
+        log.info("Rebuilt {} ticket rollup rows", rows.size());
+    }
+
+    /**
+     * Создаёт строку состояния при первом старте; другой узел может создавать её одновременно.
+     */
+    private void createState() {
+        if (stateRepository.existsById(TicketRollupState.ID)) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    entityManager.persist(new TicketRollupState(TicketRollupState.ID, 0)));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Ticket rollup state was created concurrently", e);
+        }
+    }
+
+    private void write(TicketRollupId id, Delta delta) {
+        if (rollupRepository.addDelta(id.getRouteId(), id.getDepartureDate(), id.getStatus().name(),
+                delta.tickets(), delta.amount()) == 0) {
+            entityManager.persist(new TicketRollup(id, delta.tickets(), delta.amount()));
+        }
+    }
+
+    private void record(long generation, TicketStatusChangedEvent event) {
+        if (event.from() != null) {
+            add(generation, event.routeId(), event.departureDate(), event.from(),
+                    -event.tickets(), event.amount().negate());
+        }
+        add(generation, event.routeId(), event.departureDate(), event.to(), event.tickets(), event.amount());
+    }
+
+    private void add(long generation, Long routeId, LocalDate departureDate, TicketStatus status,
+                     long tickets, BigDecimal amount) {
+        pending.merge(new PendingKey(generation, new TicketRollupId(routeId, departureDate, status)),
+                new Delta(tickets, amount), Delta::plus);
+    }
+
+    private record PendingKey(long generation, TicketRollupId id) {
+    }
+
+    private record Delta(long tickets, BigDecimal amount) {
+
+        Delta plus(Delta other) {
+            return new Delta(tickets + other.tickets, amount.add(other.amount));
+        }
+
+        boolean isZero() {
+            return tickets == 0 && amount.signum() == 0;
+        }
+    }
+}
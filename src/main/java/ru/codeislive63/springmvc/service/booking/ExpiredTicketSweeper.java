@@ -0,0 +1,109 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.projection.TicketHold;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Периодическая зачистка неоплаченных билетов с истёкшим удержанием.
+ * <p>
+ * Страховка для {@link SeatHoldExpirer}: подбирает удержания, потерянные при падении узла или ошибке БД.
+ * Билеты читаются проекциями страницами по ключу ({@code id > последний id}), каждая страница снимается
+ * своей транзакцией через {@link SeatHoldReleaser}. UPDATE билетов условный ({@code status = BOOKED}),
+ * а счётчик мест увеличивается ровно на число реально отменённых строк, поэтому зачистку можно
+ * одновременно запускать на нескольких узлах.
+ */
+@Slf4j
+@Component
+public class ExpiredTicketSweeper {
+
+    private final TicketRepository ticketRepository;
+    private final SeatHoldReleaser seatHoldReleaser;
+    private final int chunkSize;
+    private final Counter releasedCounter;
+
+    public ExpiredTicketSweeper(TicketRepository ticketRepository,
+                                SeatHoldReleaser seatHoldReleaser,
+                                @Value("${booking.expiry.chunk-size:500}") int chunkSize,
+                                MeterRegistry meterRegistry) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("booking.expiry.chunk-size must be positive");
+        }
+        this.ticketRepository = ticketRepository;
+        this.seatHoldReleaser = seatHoldReleaser;
+        this.chunkSize = chunkSize;
+        this.releasedCounter = Counter.builder("booking.expiry.released")
+                .description("Unpaid tickets cancelled by the expiry sweep")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${booking.expiry.interval:PT1M}", fixedDelayString = "${booking.expiry.interval:PT1M}")
+    public void scheduledSweep() {
+        sweep();
+    }
+
+    /**
+     * Cancels every unpaid ticket whose hold has expired and returns the seats to their trips.
+     *
+     * @return sweep statistics
+     */
+    public SweepResult sweep() {
+        long startedAt = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        PageRequest page = PageRequest.ofSize(chunkSize);
+
+        int scanned = 0;
+        int released = 0;
+        long afterId = 0;
+        List<TicketHold> chunk;
+        do {
+            chunk = ticketRepository.findExpiredHolds(afterId, now, page);
+            if (chunk.isEmpty()) {
+                break;
+            }
+            Map<Long, List<Long>> ticketIdsByTrip = new HashMap<>();
+            for (TicketHold hold : chunk) {
+                ticketIdsByTrip.computeIfAbsent(hold.tripId(), id -> new ArrayList<>()).add(hold.ticketId());
+            }
+            released += seatHoldReleaser.releaseExpired(ticketIdsByTrip, now);
+            scanned += chunk.size();
+            afterId = chunk.get(chunk.size() - 1).ticketId();
+        } while (chunk.size() == chunkSize);
+
+        releasedCounter.increment(released);
+        SweepResult result = new SweepResult(scanned, released, Duration.ofNanos(System.nanoTime() - startedAt));
+        if (scanned > 0) {
+            log.info("Expiry sweep: released {} of {} expired tickets in {} ms ({} rows/s)",
+                    released, scanned, result.elapsed().toMillis(), Math.round(result.rowsPerSecond()));
+        }
+        return result;
+    }
+
+    /**
+     * Итог одного прохода зачистки.
+     *
+     * @param scanned  expired tickets found by the scan
+     * @param released tickets actually cancelled by this node
+     * @param elapsed  duration of the sweep
+     */
+    public record SweepResult(int scanned, int released, Duration elapsed) {
+
+        public double rowsPerSecond() {
+            long nanos = Math.max(elapsed.toNanos(), 1);
+            return scanned * 1_000_000_000.0 / nanos;
+        }
+    }
+}
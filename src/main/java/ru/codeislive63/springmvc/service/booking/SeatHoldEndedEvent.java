@@ -0,0 +1,13 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import java.time.LocalDateTime;
+
+/**
+ * Публикуется внутри транзакции, которая закрыла удержание места раньше срока: при оплате или отмене брони.
+ *
+ * @param ticketId  ID of the ticket
+ * @param tripId    ID of the trip
+ * @param expiresAt hold expiry the ticket had before the change
+ */
+public record SeatHoldEndedEvent(Long ticketId, Long tripId, LocalDateTime expiresAt) {
+}
@@ -0,0 +1,194 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.projection.TicketHold;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Удержания мест неоплаченными билетами.
+ * <p>
+ * Каждая бронь держит место {@code booking.hold.ttl}; сроки лежат в иерархическом колесе таймеров
+ * с шагом {@code booking.hold.tick}, которое прокручивает отдельный поток. Истёкшие за шаг удержания
+ * снимаются одной транзакцией через {@link SeatHoldReleaser}; если транзакция не удалась, они возвращаются
+ * в колесо и повторяются через {@code booking.hold.retry-delay}. Оплаченные и отменённые брони
+ * убираются из колеса по {@link SeatHoldEndedEvent}. При старте приложения колесо заполняется
+ * незакрытыми удержаниями из таблицы {@code tickets}. Неоплаченные билеты, забронированные до появления
+ * удержаний, получают полный срок {@code booking.hold.ttl} от момента запуска и не снимаются сразу.
+ */
+@Slf4j
+@Component
+public class SeatHoldExpirer {
+
+    private final TicketRepository ticketRepository;
+    private final SeatHoldReleaser seatHoldReleaser;
+    private final Duration ttl;
+    private final Duration tick;
+    private final Duration retryDelay;
+    private final TimingWheel<Hold> wheel;
+    private final List<Hold> overdue = new ArrayList<>();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "seat-hold-wheel");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SeatHoldExpirer(TicketRepository ticketRepository,
+                           SeatHoldReleaser seatHoldReleaser,
+                           @Value("${booking.hold.ttl:15m}") Duration ttl,
+                           @Value("${booking.hold.tick:1s}") Duration tick,
+                           @Value("${booking.hold.wheel-size:64}") int wheelSize,
+                           @Value("${booking.hold.retry-delay:30s}") Duration retryDelay,
+                           MeterRegistry meterRegistry) {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("booking.hold.ttl must be positive");
+        }
+        this.ticketRepository = ticketRepository;
+        this.seatHoldReleaser = seatHoldReleaser;
+        this.ttl = ttl;
+        this.tick = tick;
+        this.retryDelay = retryDelay;
+        this.wheel = new TimingWheel<>(tick.toMillis(), wheelSize, System.currentTimeMillis());
+        Gauge.builder("booking.hold.pending", this, SeatHoldExpirer::pendingHolds)
+                .description("Seat holds waiting for payment or expiry")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the moment a hold created at {@code bookedAt} runs out.
+     */
+    public LocalDateTime expiresAt(LocalDateTime bookedAt) {
+        return bookedAt.plus(ttl);
+    }
+
+    /**
+     * Puts the holds of freshly booked tickets on the wheel. Call it after the booking transaction has committed.
+     *
+     * @param tickets booked tickets; tickets without a hold are skipped
+     */
+    public void schedule(Collection<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            if (ticket.getStatus() == TicketStatus.BOOKED && ticket.getHoldExpiresAt() != null) {
+                schedule(new Hold(ticket.getId(), ticket.getTrip().getId()), ticket.getHoldExpiresAt());
+            }
+        }
+    }
+
+    /**
+     * Убирает из колеса удержание, закрытое оплатой или отменой, после фиксации транзакции.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onSeatHoldEnded(SeatHoldEndedEvent event) {
+        Hold hold = new Hold(event.ticketId(), event.tripId());
+        long deadline = event.expiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (!wheel.remove(deadline, hold)) {
+            overdue.remove(hold);
+        }
+    }
+
+    /**
+     * Возвращает число удержаний, ожидающих оплаты или истечения.
+     */
+    public synchronized int pendingHolds() {
+        return wheel.size() + overdue.size();
+    }
+
+    /**
+     * Восстанавливает удержания из БД и запускает прокрутку колеса.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        int backfilled = backfillLegacyHolds();
+        if (backfilled > 0) {
+            log.info("Gave {} unpaid tickets without a hold a hold of {}", backfilled, ttl);
+        }
+        List<TicketHold> holds = ticketRepository.findPendingHolds();
+        for (TicketHold hold : holds) {
+            schedule(new Hold(hold.ticketId(), hold.tripId()), hold.expiresAt());
+        }
+        log.info("Recovered {} pending seat holds", holds.size());
+        ticker.scheduleAtFixedRate(this::expireDue, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Назначает удержание от текущего момента неоплаченным билетам, у которых его нет.
+     *
+     * @return number of tickets that got a hold
+     */
+    public int backfillLegacyHolds() {
+        return ticketRepository.backfillHolds(expiresAt(LocalDateTime.now()));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Прокручивает колесо до текущего момента и снимает все истёкшие удержания одной транзакцией.
+     */
+    void expireDue() {
+        List<Hold> due;
+        synchronized (this) {
+            due = new ArrayList<>(overdue);
+            overdue.clear();
+            wheel.advanceTo(System.currentTimeMillis(), due::add);
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<Long>> ticketIdsByTrip = new HashMap<>();
+        for (Hold hold : due) {
+            ticketIdsByTrip.computeIfAbsent(hold.tripId(), id -> new ArrayList<>()).add(hold.ticketId());
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            int released = seatHoldReleaser.releaseExpired(ticketIdsByTrip, now);
+            log.debug("Expired {} of {} due seat holds", released, due.size());
+        } catch (RuntimeException e) {
+            log.warn("Failed to release {} expired seat holds, retrying in {}", due.size(), retryDelay, e);
+            retry(due);
+        }
+    }
+
+    private synchronized void retry(List<Hold> holds) {
+        long deadline = System.currentTimeMillis() + retryDelay.toMillis();
+        for (Hold hold : holds) {
+            if (!wheel.add(deadline, hold)) {
+                overdue.add(hold);
+            }
+        }
+    }
+
+    private synchronized void schedule(Hold hold, LocalDateTime expiresAt) {
+        long deadline = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (!wheel.add(deadline, hold)) {
+            overdue.add(hold);
+        }
+    }
+
+    private record Hold(Long ticketId, Long tripId) {
+    }
+}
@@ -0,0 +1,82 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.TicketRollupRow;
+import ru.codeislive63.springmvc.service.TripService;
+import ru.codeislive63.springmvc.service.analytics.TicketRollups;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Снимает истёкшие удержания мест пачкой: один UPDATE билетов и один UPDATE счётчика на рейс.
+ * Билеты не загружаются в контекст персистентности. Если среди них есть билеты на часть маршрута,
+ * счётчик рейса пересчитывается по активным билетам. Освобождённые места публикуются
+ * {@link SeatsReleasedEvent} в той же транзакции, чтобы их успел забрать лист ожидания.
+ * Перед отменой те же билеты суммируются для агрегатов аналитики; если параллельная оплата или отмена
+ * изменила их между запросами, агрегаты помечаются устаревшими.
+ */
+@Component
+@RequiredArgsConstructor
+public class SeatHoldReleaser {
+
+    private static final int MAX_IDS_PER_STATEMENT = 500;
+
+    private final TicketRepository ticketRepository;
+    private final TripRepository tripRepository;
+    private final TripService tripService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TicketRollups ticketRollups;
+
+    /**
+     * Отменяет истёкшие неоплаченные билеты и возвращает их места рейсам одной транзакцией.
+     *
+     * @param ticketIdsByTrip candidate ticket IDs grouped by trip ID
+     * @param now             current time; only holds expired by this moment are released
+     * @return number of released seats
+     */
+    @Transactional
+    public int releaseExpired(Map<Long, ? extends Collection<Long>> ticketIdsByTrip,
+                              LocalDateTime now) {
+        int released = 0;
+        for (Map.Entry<Long, ? extends Collection<Long>> trip : ticketIdsByTrip.entrySet()) {
+            List<Long> ticketIds = List.copyOf(trip.getValue());
+            int cancelled = 0;
+            int segmentCancelled = 0;
+            long expiring = 0;
+            for (int from = 0; from < ticketIds.size(); from += MAX_IDS_PER_STATEMENT) {
+                List<Long> chunk = ticketIds.subList(from, Math.min(from + MAX_IDS_PER_STATEMENT, ticketIds.size()));
+                for (TicketRollupRow row : ticketRepository.rollupRowsOfExpiredHolds(trip.getKey(), chunk, now)) {
+                    eventPublisher.publishEvent(new TicketStatusChangedEvent(row.routeId(), row.departureDate(),
+                            row.status(), TicketStatus.CANCELLED, row.tickets(), row.amount()));
+                    expiring += row.tickets();
+                }
+                cancelled += ticketRepository.expireHolds(trip.getKey(), chunk, now);
+                segmentCancelled += ticketRepository.expireSegmentHolds(trip.getKey(), chunk, now);
+            }
+            if (expiring != cancelled + segmentCancelled) {
+                ticketRollups.invalidate();
+            }
+            int freed = cancelled;
+            if (cancelled > 0) {
+                tripRepository.releaseSeats(trip.getKey(), cancelled);
+            }
+            if (segmentCancelled > 0) {
+                freed += tripService.recountSeats(trip.getKey());
+            }
+            if (freed > 0) {
+                eventPublisher.publishEvent(new SeatsReleasedEvent(trip.getKey(), freed));
+            }
+            released += cancelled + segmentCancelled;
+        }
+        return released;
+    }
+}
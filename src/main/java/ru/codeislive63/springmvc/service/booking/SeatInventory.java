@@ -0,0 +1,186 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import ru.codeislive63.springmvc.domain.CarLayout;
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.TrainCar;
+import ru.codeislive63.springmvc.web.dto.SeatView;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalInt;
+
+/**
+ * Снимок занятости мест рейса в виде битовой карты.
+ * <p>
+ * Бит {@code i} соответствует месту {@code i + 1}; установленный бит означает, что место занято.
+ * Снимок строится одним запросом занятых мест и затем переиспользуется для схемы вагона,
+ * списка свободных мест и проверки места при бронировании.
+ * Места нумеруются сквозной нумерацией по всему поезду, вагоны делят её на диапазоны.
+ */
+public final class SeatInventory {
+
+    private final int capacity;
+    private final BitSet occupied;
+    private final List<TrainCar> cars;
+    private final TrainClass trainClass;
+
+    private SeatInventory(int capacity, BitSet occupied, List<TrainCar> cars, TrainClass trainClass) {
+        this.capacity = capacity;
+        this.occupied = occupied;
+        this.cars = cars;
+        this.trainClass = trainClass;
+    }
+
+    /**
+     * Builds a snapshot from the seat numbers returned by the repository.
+     * Seat numbers outside {@code [1, capacity]} are ignored.
+     *
+     * @param capacity    number of sellable seats on the trip
+     * @param bookedSeats seat numbers that are already taken
+     * @return seat inventory snapshot
+     */
+    public static SeatInventory of(int capacity, Collection<Integer> bookedSeats) {
+        return new SeatInventory(capacity, occupiedBits(capacity, bookedSeats), List.of(), TrainClass.ECONOMY);
+    }
+
+    /**
+     * Builds a snapshot of the given train's seats split into cars.
+     *
+     * @param train       train of the trip
+     * @param cars        cars of the train ordered by number; empty for a train without a car layout
+     * @param bookedSeats seat numbers that are already taken
+     * @return seat inventory snapshot
+     */
+    public static SeatInventory of(Train train, List<TrainCar> cars, Collection<Integer> bookedSeats) {
+        int capacity = train.getSeatCapacity();
+        return new SeatInventory(capacity, occupiedBits(capacity, bookedSeats), List.copyOf(cars), train.getTrainClass());
+    }
+
+    /**
+     * Builds a snapshot from an already computed occupancy bitmap, e.g. seats taken on a part of the route.
+     *
+     * @param train    train of the trip
+     * @param cars     cars of the train ordered by number
+     * @param occupied occupied seats, bit {@code i} is seat {@code i + 1}
+     * @return seat inventory snapshot
+     */
+    public static SeatInventory of(Train train, List<TrainCar> cars, BitSet occupied) {
+        BitSet copy = (BitSet) occupied.clone();
+        return new SeatInventory(train.getSeatCapacity(), copy, List.copyOf(cars), train.getTrainClass());
+    }
+
+    private static BitSet occupiedBits(int capacity, Collection<Integer> bookedSeats) {
+        BitSet occupied = new BitSet(capacity);
+        for (Integer seat : bookedSeats) {
+            if (seat != null && seat >= 1 && seat <= capacity) {
+                occupied.set(seat - 1);
+            }
+        }
+        return occupied;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean contains(int seatNumber) {
+        return seatNumber >= 1 && seatNumber <= capacity;
+    }
+
+    public boolean isFree(int seatNumber) {
+        return contains(seatNumber) && !occupied.get(seatNumber - 1);
+    }
+
+    public int freeCount() {
+        return capacity - occupied.cardinality();
+    }
+
+    /**
+     * Возвращает первое свободное место или пустой результат, если рейс заполнен.
+     */
+    public OptionalInt firstFree() {
+        int bit = occupied.nextClearBit(0);
+        return bit < capacity ? OptionalInt.of(bit + 1) : OptionalInt.empty();
+    }
+
+    /**
+     * Подбирает места для группы пассажиров по одному снимку.
+     * Явно указанные места проверяются первыми, пропуски ({@code null}) заполняются
+     * первыми свободными местами по возрастанию номера.
+     *
+     * @param requested desired seat number per passenger, {@code null} for "any seat"
+     * @return seat numbers in the same order as {@code requested}
+     * @throws IllegalArgumentException if a seat number is out of range
+     * @throws IllegalStateException    if a seat is taken, repeated, or there are not enough free seats
+     */
+    public int[] allocate(List<Integer> requested) {
+        BitSet taken = (BitSet) occupied.clone();
+        int[] seats = new int[requested.size()];
+
+        for (int i = 0; i < seats.length; i++) {
+            Integer seat = requested.get(i);
+            if (seat == null) {
+                continue;
+            }
+            if (!contains(seat)) {
+                throw new IllegalArgumentException("Неверный номер места");
+            }
+            if (taken.get(seat - 1)) {
+                throw new IllegalStateException("Место уже занято");
+            }
+            taken.set(seat - 1);
+            seats[i] = seat;
+        }
+
+        int bit = 0;
+        for (int i = 0; i < seats.length; i++) {
+            if (seats[i] != 0) {
+                continue;
+            }
+            bit = taken.nextClearBit(bit);
+            if (bit >= capacity) {
+                throw new IllegalStateException("Нет свободных мест");
+            }
+            taken.set(bit);
+            seats[i] = bit + 1;
+        }
+        return seats;
+    }
+
+    /**
+     * Returns free seat numbers in ascending order.
+     */
+    public List<Integer> freeSeats() {
+        List<Integer> free = new ArrayList<>(freeCount());
+        for (int bit = occupied.nextClearBit(0); bit < capacity; bit = occupied.nextClearBit(bit + 1)) {
+            free.add(bit + 1);
+        }
+        return free;
+    }
+
+    /**
+     * Возвращает схему поезда: по одному элементу на вагон с битовой картой его мест.
+     * Поезд без описанных вагонов отображается одним вагоном на все места.
+     */
+    public List<SeatView> seatMap() {
+        if (cars.isEmpty()) {
+            return List.of(carView(1, trainClass, CarLayout.defaultFor(trainClass), 1, capacity));
+        }
+        List<SeatView> views = new ArrayList<>(cars.size());
+        for (TrainCar car : cars) {
+            int seatCount = Math.min(car.getSeatCount(), capacity - car.getFirstSeat() + 1);
+            if (seatCount > 0) {
+                views.add(carView(car.getNumber(), car.getCarClass(), car.getLayout(), car.getFirstSeat(), seatCount));
+            }
+        }
+        return views;
+    }
+
+    private SeatView carView(int number, TrainClass carClass, CarLayout layout, int firstSeat, int seatCount) {
+        BitSet carSeats = occupied.get(firstSeat - 1, firstSeat - 1 + seatCount);
+        return new SeatView(number, carClass, layout, firstSeat, seatCount, carSeats);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.codeislive63.springmvc.service.booking;
+
+/**
+ * Публикуется внутри транзакции, вернувшей места рейса в продажу: при отмене билета или истечении брони.
+ *
+ * @param tripId ID of the trip
+ * @param count  number of released seats
+ */
+public record SeatsReleasedEvent(Long tripId, int count) {
+}
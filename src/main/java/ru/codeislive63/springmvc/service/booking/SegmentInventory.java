@@ -0,0 +1,162 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import ru.codeislive63.springmvc.repository.projection.BookedInterval;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.OptionalInt;
+
+/**
+ * Занятость мест рейса по участкам маршрута.
+ * <p>
+ * Остановки рейса нумеруются с 0 (станция отправления) до {@code segments} (станция прибытия),
+ * участок {@code i} лежит между остановками {@code i} и {@code i + 1}. Билет занимает место
+ * на полуинтервале участков {@code [boardStop, alightStop)}, поэтому одно место можно продать
+ * нескольким пассажирам на непересекающихся участках.
+ * <p>
+ * Участки хранятся в дереве отрезков: каждый узел — битовая карта мест, занятых хотя бы на одном
+ * участке его диапазона. Запрос по интервалу остановок собирает O(log n) узлов.
+ */
+public final class SegmentInventory {
+
+    private final int capacity;
+    private final int segments;
+    private final int leaves;
+    private final BitSet[] tree;
+
+    private SegmentInventory(int capacity, int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("A trip has at least one segment");
+        }
+        this.capacity = capacity;
+        this.segments = segments;
+        this.leaves = Integer.highestOneBit(Math.max(1, segments - 1)) << 1;
+        this.tree = new BitSet[leaves * 2];
+    }
+
+    /**
+     * Builds the inventory from occupied intervals returned by the repository.
+     * An interval without stops occupies the seat on the whole trip.
+     * An interval that does not fit the trip's segments means the stored stops no longer match the route,
+     * so it is rejected rather than dropped: a dropped interval would let its seat be sold again.
+     *
+     * @param capacity  number of seats on the trip
+     * @param segments  number of segments, i.e. number of stops minus one
+     * @param intervals occupied (seat, board stop, alight stop) triples
+     * @return segment inventory
+     * @throws IllegalStateException if an interval lies outside the trip's segments
+     */
+    public static SegmentInventory of(int capacity, int segments, Collection<BookedInterval> intervals) {
+        SegmentInventory inventory = new SegmentInventory(capacity, segments);
+        for (BookedInterval interval : intervals) {
+            int from = interval.boardStop() != null ? interval.boardStop() : 0;
+            int to = interval.alightStop() != null ? interval.alightStop() : segments;
+            if (from < 0 || from >= to || to > segments) {
+                throw new IllegalStateException("Участок билета на место " + interval.seatNumber()
+                        + " не совпадает с маршрутом рейса");
+            }
+            if (inventory.contains(interval.seatNumber())) {
+                inventory.occupy(interval.seatNumber(), from, to);
+            }
+        }
+        return inventory;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int segments() {
+        return segments;
+    }
+
+    public boolean contains(int seatNumber) {
+        return seatNumber >= 1 && seatNumber <= capacity;
+    }
+
+    /**
+     * Marks the seat as occupied between the given stops.
+     */
+    public void occupy(int seatNumber, int fromStop, int toStop) {
+        checkInterval(fromStop, toStop);
+        int bit = seatNumber - 1;
+        for (int segment = fromStop; segment < toStop; segment++) {
+            for (int node = leaves + segment; node >= 1; node >>= 1) {
+                if (tree[node] == null) {
+                    tree[node] = new BitSet(capacity);
+                } else if (tree[node].get(bit) && node < leaves) {
+                    break;
+                }
+                tree[node].set(bit);
+            }
+        }
+    }
+
+    /**
+     * Проверяет, свободно ли место на всём интервале остановок.
+     */
+    public boolean isFree(int seatNumber, int fromStop, int toStop) {
+        checkInterval(fromStop, toStop);
+        if (!contains(seatNumber)) {
+            return false;
+        }
+        int bit = seatNumber - 1;
+        for (int l = leaves + fromStop, r = leaves + toStop; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1 && occupied(l++, bit)) {
+                return false;
+            }
+            if ((r & 1) == 1 && occupied(--r, bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Возвращает первое место, свободное на всём интервале остановок.
+     */
+    public OptionalInt firstFree(int fromStop, int toStop) {
+        int bit = occupiedOver(fromStop, toStop).nextClearBit(0);
+        return bit < capacity ? OptionalInt.of(bit + 1) : OptionalInt.empty();
+    }
+
+    /**
+     * Returns the number of seats that are free on every segment between the given stops.
+     */
+    public int freeCount(int fromStop, int toStop) {
+        return capacity - occupiedOver(fromStop, toStop).cardinality();
+    }
+
+    /**
+     * Returns seats occupied on at least one segment between the given stops (bit {@code i} is seat {@code i + 1}).
+     */
+    public BitSet occupiedOver(int fromStop, int toStop) {
+        checkInterval(fromStop, toStop);
+        BitSet result = new BitSet(capacity);
+        for (int l = leaves + fromStop, r = leaves + toStop; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) == 1) {
+                or(result, l++);
+            }
+            if ((r & 1) == 1) {
+                or(result, --r);
+            }
+        }
+        return result;
+    }
+
+    private boolean occupied(int node, int bit) {
+        return tree[node] != null && tree[node].get(bit);
+    }
+
+    private void or(BitSet result, int node) {
+        if (tree[node] != null) {
+            result.or(tree[node]);
+        }
+    }
+
+    private void checkInterval(int fromStop, int toStop) {
+        if (fromStop < 0 || fromStop >= toStop || toStop > segments) {
+            throw new IllegalArgumentException("Неверный участок маршрута");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Публикуется внутри транзакции, которая создала билеты или сменила их статус.
+ * Описывает билеты одного маршрута и одной даты отправления с одинаковым переходом статуса.
+ *
+ * @param routeId       ID of the route of the trip
+ * @param departureDate departure date of the trip
+ * @param from          previous status, {@code null} for new tickets
+ * @param to            new status
+ * @param tickets       number of tickets
+ * @param amount        total price of the tickets
+ */
+public record TicketStatusChangedEvent(Long routeId,
+                                       LocalDate departureDate,
+                                       TicketStatus from,
+                                       TicketStatus to,
+                                       long tickets,
+                                       BigDecimal amount) {
+
+    /**
+     * Описывает один билет, перешедший из статуса {@code from} в {@code to}.
+     */
+    public static TicketStatusChangedEvent of(Ticket ticket, TicketStatus from, TicketStatus to) {
+        return new TicketStatusChangedEvent(ticket.getTrip().getRoute().getId(),
+                ticket.getTrip().getDepartureTime().toLocalDate(), from, to, 1, ticket.getPrice());
+    }
+
+    /**
+     * Описывает только что забронированные билеты одного рейса.
+     */
+    public static TicketStatusChangedEvent booked(Collection<Ticket> tickets) {
+        Ticket first = tickets.iterator().next();
+        BigDecimal amount = tickets.stream().map(Ticket::getPrice).reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new TicketStatusChangedEvent(first.getTrip().getRoute().getId(),
+                first.getTrip().getDepartureTime().toLocalDate(), null, TicketStatus.BOOKED, tickets.size(), amount);
+    }
+}
@@ -0,0 +1,140 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Иерархическое колесо таймеров.
+ * <p>
+ * Нижний уровень делит время на {@code wheelSize} ячеек по {@code tickMillis}; всё, что не помещается
+ * в его оборот, уходит на следующий уровень с ячейками в {@code wheelSize} раз крупнее, и так далее.
+ * Добавление таймера и его срабатывание стоят O(1), а таймер верхнего уровня опускается вниз
+ * не более одного раза на уровень. Ячейки — хеш-множества с порядком добавления, поэтому отмена стоит O(1)
+ * на каждом уровне, где она ищет ячейку срока таймера, и не зависит от числа таймеров с тем же сроком.
+ * Класс не потокобезопасен: вызывающий код синхронизирует доступ сам.
+ *
+ * @param <T> payload carried by a timer
+ */
+final class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long intervalMillis;
+    private final List<Set<Entry<T>>> buckets;
+    private long currentTime;
+    private TimingWheel<T> overflow;
+    private int size;
+
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis < 1 || wheelSize < 2) {
+            throw new IllegalArgumentException("Timing wheel needs a positive tick and at least two buckets");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.intervalMillis = Math.multiplyExact(tickMillis, (long) wheelSize);
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Adds a timer. The deadline is rounded up to the next tick, so a timer never fires early.
+     * Adding the same deadline and payload again keeps a single timer.
+     *
+     * @return {@code false} if the deadline has already been reached and the timer was not added
+     */
+    boolean add(long deadlineMillis, T payload) {
+        long rounded = Math.ceilDiv(deadlineMillis, tickMillis) * tickMillis;
+        return add(new Entry<>(rounded, payload));
+    }
+
+    /**
+     * Cancels a timer added with the same deadline and payload.
+     *
+     * @return {@code true} if the timer was pending and will not fire
+     */
+    boolean remove(long deadlineMillis, T payload) {
+        long rounded = Math.ceilDiv(deadlineMillis, tickMillis) * tickMillis;
+        return remove(new Entry<>(rounded, payload));
+    }
+
+    /**
+     * Moves the clock forward to {@code nowMillis} and hands every timer that became due to {@code expired}.
+     */
+    void advanceTo(long nowMillis, Consumer<T> expired) {
+        advance(nowMillis, entry -> expired.accept(entry.payload()));
+    }
+
+    /**
+     * Возвращает число таймеров на всех уровнях колеса.
+     */
+    int size() {
+        return size + (overflow != null ? overflow.size() : 0);
+    }
+
+    private boolean add(Entry<T> entry) {
+        if (entry.deadline() <= currentTime) {
+            return false;
+        }
+        if (entry.deadline() < currentTime + intervalMillis + tickMillis) {
+            if (buckets.get(bucketOf(entry.deadline())).add(entry)) {
+                size++;
+            }
+            return true;
+        }
+        if (overflow == null) {
+            overflow = new TimingWheel<>(intervalMillis, wheelSize, currentTime);
+        }
+        return overflow.add(entry);
+    }
+
+    /**
+     * Таймер лежит на одном из уровней в ячейке своего срока: на нижнем после каскада, на верхнем до него.
+     */
+    private boolean remove(Entry<T> entry) {
+        if (buckets.get(bucketOf(entry.deadline())).remove(entry)) {
+            size--;
+            return true;
+        }
+        return overflow != null && overflow.remove(entry);
+    }
+
+    private int bucketOf(long deadline) {
+        return (int) Math.floorMod(deadline / tickMillis, (long) wheelSize);
+    }
+
+    private void advance(long nowMillis, Consumer<Entry<T>> sink) {
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            int index = bucketOf(currentTime);
+            if (index == 0 && overflow != null) {
+                overflow.advance(currentTime, entry -> {
+                    if (!add(entry)) {
+                        sink.accept(entry);
+                    }
+                });
+            }
+            drain(index, sink);
+        }
+    }
+
+    private void drain(int index, Consumer<Entry<T>> sink) {
+        Set<Entry<T>> bucket = buckets.get(index);
+        if (bucket.isEmpty()) {
+            return;
+        }
+        buckets.set(index, new LinkedHashSet<>());
+        size -= bucket.size();
+        for (Entry<T> entry : bucket) {
+            sink.accept(entry);
+        }
+    }
+
+    private record Entry<T>(long deadline, T payload) {
+    }
+}
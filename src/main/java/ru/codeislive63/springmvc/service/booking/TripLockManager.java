@@ -0,0 +1,124 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Полосатые (striped) блокировки рейсов внутри JVM.
+ * <p>
+ * Запросы на запись по одному рейсу выполняются по очереди ещё до того, как начнут конкурировать
+ * за строку рейса в БД, а брони разных рейсов попадают в разные полосы и идут параллельно.
+ * Блокировки честные (FIFO), длина очереди каждой полосы публикуется метрикой
+ * {@code booking.lock.queue} с тегом {@code stripe}.
+ */
+@Component
+public class TripLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final Duration timeout;
+    private final Timer waitTimer;
+
+    public TripLockManager(@Value("${booking.lock.stripes:64}") int stripeCount,
+                           @Value("${booking.lock.timeout:5s}") Duration timeout,
+                           MeterRegistry meterRegistry) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("booking.lock.stripes must be positive");
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        this.timeout = timeout;
+        for (int i = 0; i < stripeCount; i++) {
+            ReentrantLock lock = new ReentrantLock(true);
+            stripes[i] = lock;
+            Gauge.builder("booking.lock.queue", lock, ReentrantLock::getQueueLength)
+                    .description("Threads waiting for a trip lock stripe")
+                    .tag("stripe", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+        this.waitTimer = Timer.builder("booking.lock.wait")
+                .description("Time spent waiting for trip lock stripes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Executes the action while holding the stripe of the given trip.
+     *
+     * @param tripId ID of the trip
+     * @param action action to run, typically a whole booking transaction
+     * @return result of the action
+     */
+    public <T> T withTripLock(Long tripId, Supplier<T> action) {
+        return withStripes(new int[]{stripeOf(tripId)}, action);
+    }
+
+    /**
+     * Executes the action while holding the stripes of all given trips.
+     * Stripes are always taken in ascending order, so two callers locking the same trips cannot deadlock.
+     *
+     * @param tripIds IDs of the trips
+     * @param action  action to run
+     * @return result of the action
+     */
+    public <T> T withTripLocks(Collection<Long> tripIds, Supplier<T> action) {
+        int[] indexes = tripIds.stream()
+                .mapToInt(this::stripeOf)
+                .distinct()
+                .sorted()
+                .toArray();
+        return withStripes(indexes, action);
+    }
+
+    public int stripeOf(Long tripId) {
+        long h = tripId * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (h ^ (h >>> 32)), stripes.length);
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Возвращает число потоков, ожидающих указанную полосу.
+     */
+    public int queueLength(int stripe) {
+        return stripes[stripe].getQueueLength();
+    }
+
+    /**
+     * Возвращает длины очередей всех полос.
+     */
+    public int[] queueLengths() {
+        return Arrays.stream(stripes).mapToInt(ReentrantLock::getQueueLength).toArray();
+    }
+
+    private <T> T withStripes(int[] indexes, Supplier<T> action) {
+        int acquired = 0;
+        try {
+            long startedAt = System.nanoTime();
+            for (int index : indexes) {
+                if (!stripes[index].tryLock(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new IllegalStateException("Рейс сейчас перегружен, попробуйте ещё раз");
+                }
+                acquired++;
+            }
+            waitTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            return action.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Бронирование прервано", e);
+        } finally {
+            for (int i = acquired - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.codeislive63.springmvc.service.reference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.repository.RouteRepository;
+import ru.codeislive63.springmvc.repository.StationRepository;
+import ru.codeislive63.springmvc.repository.TrainRepository;
+import ru.codeislive63.springmvc.service.search.RouteChangedEvent;
+import ru.codeislive63.springmvc.service.search.StationChangedEvent;
+import ru.codeislive63.springmvc.service.search.TrainChangedEvent;
+
+import java.util.List;
+
+/**
+ * Справочники станций, поездов и маршрутов в памяти для страниц со списками и выпадающими списками.
+ * <p>
+ * Хранит неизменяемые списки отсоединённых сущностей с номером версии. Списки загружаются при старте
+ * и перечитываются после изменений из админки ({@link StationChangedEvent}, {@link TrainChangedEvent},
+ * {@link RouteChangedEvent}); маршруты перечитываются и при изменении станции, потому что показывают их названия.
+ * Сущности из снимка только для отображения: для изменения загружайте их через репозиторий.
+ */
+@Slf4j
+@Component
+public class ReferenceData {
+
+    private final StationRepository stationRepository;
+    private final TrainRepository trainRepository;
+    private final RouteRepository routeRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(0, List.of(), List.of(), List.of());
+
+    public ReferenceData(StationRepository stationRepository,
+                         TrainRepository trainRepository,
+                         RouteRepository routeRepository) {
+        this.stationRepository = stationRepository;
+        this.trainRepository = trainRepository;
+        this.routeRepository = routeRepository;
+    }
+
+    /**
+     * Перечитывает все справочники.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void reload() {
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.version() + 1,
+                List.copyOf(stationRepository.findAll()),
+                List.copyOf(trainRepository.findAll()),
+                List.copyOf(routeRepository.findAllWithStations()));
+        log.info("Loaded reference data: {} stations, {} trains, {} routes",
+                snapshot.stations().size(), snapshot.trains().size(), snapshot.routes().size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onStationChanged(StationChangedEvent event) {
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.version() + 1,
+                List.copyOf(stationRepository.findAll()),
+                current.trains(),
+                List.copyOf(routeRepository.findAllWithStations()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onTrainChanged(TrainChangedEvent event) {
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.version() + 1,
+                current.stations(),
+                List.copyOf(trainRepository.findAll()),
+                current.routes());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRouteChanged(RouteChangedEvent event) {
+        Snapshot current = snapshot;
+        snapshot = new Snapshot(current.version() + 1,
+                current.stations(),
+                current.trains(),
+                List.copyOf(routeRepository.findAllWithStations()));
+    }
+
+    public List<Station> stations() {
+        return snapshot.stations();
+    }
+
+    public List<Train> trains() {
+        return snapshot.trains();
+    }
+
+    public List<Route> routes() {
+        return snapshot.routes();
+    }
+
+    /**
+     * Returns a number that grows with every reload of any reference list.
+     */
+    public long version() {
+        return snapshot.version();
+    }
+
+    private record Snapshot(long version, List<Station> stations, List<Train> trains, List<Route> routes) {
+    }
+}
@@ -0,0 +1,197 @@
+package ru.codeislive63.springmvc.service.search;
+
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.TrainType;
+import ru.codeislive63.springmvc.repository.projection.TimetableConnection;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок расписания: рейсы в виде связей, упорядоченных по времени отправления.
+ * <p>
+ * Связь {@code i} — это рейс {@code tripIds[i]} из станции {@code from[i]} в станцию {@code to[i]}.
+ * Станции пронумерованы плотными индексами, время хранится в секундах эпохи, цена — в копейках,
+ * рядом лежат тип и класс поезда для фильтров поиска, поэтому сканирование идёт по примитивным
+ * массивам без обращения к сущностям.
+ */
+final class Connections {
+
+    static final Connections EMPTY = new Connections(
+            new long[0], new int[0], new int[0], new long[0], new long[0], new long[0],
+            new TrainType[0], new TrainClass[0], Map.of());
+
+    final long[] tripIds;
+    final int[] from;
+    final int[] to;
+    final long[] departure;
+    final long[] arrival;
+    final long[] price;
+    final TrainType[] trainType;
+    final TrainClass[] trainClass;
+    private final Map<Long, Integer> stations;
+    private volatile RouteIndex routeIndex;
+
+    private Connections(long[] tripIds, int[] from, int[] to, long[] departure, long[] arrival, long[] price,
+                        TrainType[] trainType, TrainClass[] trainClass, Map<Long, Integer> stations) {
+        this.tripIds = tripIds;
+        this.from = from;
+        this.to = to;
+        this.departure = departure;
+        this.arrival = arrival;
+        this.price = price;
+        this.trainType = trainType;
+        this.trainClass = trainClass;
+        this.stations = stations;
+    }
+
+    static Connections of(Collection<TimetableConnection> rows) {
+        TimetableConnection[] sorted = rows.toArray(TimetableConnection[]::new);
+        Arrays.sort(sorted, (a, b) -> a.departure().compareTo(b.departure()));
+
+        int n = sorted.length;
+        Map<Long, Integer> stations = new HashMap<>();
+        long[] tripIds = new long[n];
+        int[] from = new int[n];
+        int[] to = new int[n];
+        long[] departure = new long[n];
+        long[] arrival = new long[n];
+        long[] price = new long[n];
+        TrainType[] trainType = new TrainType[n];
+        TrainClass[] trainClass = new TrainClass[n];
+        for (int i = 0; i < n; i++) {
+            TimetableConnection row = sorted[i];
+            tripIds[i] = row.tripId();
+            from[i] = stations.computeIfAbsent(row.originId(), id -> stations.size());
+            to[i] = stations.computeIfAbsent(row.destinationId(), id -> stations.size());
+            departure[i] = seconds(row.departure());
+            arrival[i] = seconds(row.arrival());
+            price[i] = kopecks(row.price());
+            trainType[i] = row.trainType();
+            trainClass[i] = row.trainClass();
+        }
+        return new Connections(tripIds, from, to, departure, arrival, price, trainType, trainClass, stations);
+    }
+
+    static long seconds(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static long kopecks(BigDecimal amount) {
+        return amount != null ? amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact() : 0L;
+    }
+
+    int size() {
+        return tripIds.length;
+    }
+
+    int stationCount() {
+        return stations.size();
+    }
+
+    /**
+     * Returns the dense index of the station or {@code -1} if no trip of the snapshot serves it.
+     */
+    int station(Long stationId) {
+        return stations.getOrDefault(stationId, -1);
+    }
+
+    /**
+     * Returns the index of the first connection departing at or after {@code seconds}.
+     */
+    int firstDepartingAtOrAfter(long seconds) {
+        int lo = 0;
+        int hi = departure.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departure[mid] < seconds) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Возвращает индекс рейсов по маршрутам; строится при первом обращении к снимку.
+     */
+    RouteIndex routeIndex() {
+        RouteIndex index = routeIndex;
+        if (index == null) {
+            index = RouteIndex.of(this);
+            routeIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Возвращает снимок, в котором связь рейса заменена на {@code row} или удалена, если {@code row == null}.
+     * Массивы копируются один раз, перечитывать расписание из БД не нужно.
+     */
+    Connections with(long tripId, TimetableConnection row) {
+        int removed = -1;
+        for (int i = 0; i < tripIds.length; i++) {
+            if (tripIds[i] == tripId) {
+                removed = i;
+                break;
+            }
+        }
+        if (removed < 0 && row == null) {
+            return this;
+        }
+
+        Map<Long, Integer> newStations = row != null ? new HashMap<>(stations) : stations;
+        int inserted = -1;
+        int fromStation = 0;
+        int toStation = 0;
+        if (row != null) {
+            fromStation = newStations.computeIfAbsent(row.originId(), id -> newStations.size());
+            toStation = newStations.computeIfAbsent(row.destinationId(), id -> newStations.size());
+            inserted = firstDepartingAtOrAfter(seconds(row.departure()) + 1);
+        }
+
+        int n = tripIds.length - (removed >= 0 ? 1 : 0) + (row != null ? 1 : 0);
+        long[] newTripIds = new long[n];
+        int[] newFrom = new int[n];
+        int[] newTo = new int[n];
+        long[] newDeparture = new long[n];
+        long[] newArrival = new long[n];
+        long[] newPrice = new long[n];
+        TrainType[] newTrainType = new TrainType[n];
+        TrainClass[] newTrainClass = new TrainClass[n];
+        int j = 0;
+        for (int i = 0; i <= tripIds.length; i++) {
+            if (i == inserted) {
+                newTripIds[j] = row.tripId();
+                newFrom[j] = fromStation;
+                newTo[j] = toStation;
+                newDeparture[j] = seconds(row.departure());
+                newArrival[j] = seconds(row.arrival());
+                newPrice[j] = kopecks(row.price());
+                newTrainType[j] = row.trainType();
+                newTrainClass[j] = row.trainClass();
+                j++;
+            }
+            if (i < tripIds.length && i != removed) {
+                newTripIds[j] = tripIds[i];
+                newFrom[j] = from[i];
+                newTo[j] = to[i];
+                newDeparture[j] = departure[i];
+                newArrival[j] = arrival[i];
+                newPrice[j] = price[i];
+                newTrainType[j] = trainType[i];
+                newTrainClass[j] = trainClass[i];
+                j++;
+            }
+        }
+        return new Connections(newTripIds, newFrom, newTo, newDeparture, newArrival, newPrice,
+                newTrainType, newTrainClass, newStations);
+    }
+}
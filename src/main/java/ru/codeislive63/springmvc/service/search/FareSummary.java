@@ -0,0 +1,20 @@
+package ru.codeislive63.springmvc.service.search;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Сводка поездок одного дня: минимальная цена и самая короткая поездка.
+ * Для дня без поездок оба поля равны {@code null}.
+ *
+ * @param minPrice lowest total base price of a journey
+ * @param fastest  shortest time from the first departure to the last arrival
+ */
+public record FareSummary(BigDecimal minPrice, Duration fastest) {
+
+    static final FareSummary NONE = new FareSummary(null, null);
+
+    public boolean found() {
+        return minPrice != null;
+    }
+}
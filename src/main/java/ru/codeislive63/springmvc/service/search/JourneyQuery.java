@@ -0,0 +1,66 @@
+package ru.codeislive63.springmvc.service.search;
+
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.TrainType;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Параметры поиска поездок по расписанию.
+ * <p>
+ * Фильтры ({@code trainType}, {@code trainClass}, {@code maxPrice}, {@code arriveBy}) применяются
+ * при переборе рейсов: рейс, не проходящий фильтр, и цепочка, которая уже дороже {@code maxPrice}
+ * или не успевает к {@code arriveBy}, дальше не продлеваются. {@code null} означает «без ограничения».
+ * <p>
+ * {@code arriveBy} задаётся на день после {@code departFrom}: время фильтра относится и к дню отправления,
+ * и к следующему дню (ночные поезда). Поездка, прибывающая в день отправления позже этого времени,
+ * не подходит, хотя и успевает к {@code arriveBy}.
+ *
+ * @param originId      station of departure
+ * @param destinationId station of arrival
+ * @param departFrom    earliest departure of the first leg
+ * @param departTo      latest departure of the first leg
+ * @param searchEnd     no leg of the journey departs after this moment
+ * @param minTransfer   minimum time between arrival and the next departure at a transfer station
+ * @param maxTransfer   maximum waiting time at a transfer station
+ * @param maxLegs       maximum number of trips in a journey
+ * @param trainType     type every train of the journey must have
+ * @param trainClass    class every train of the journey must have
+ * @param maxPrice      highest total base price of the journey
+ * @param arriveBy      latest arrival at the destination on the day after departure
+ */
+public record JourneyQuery(Long originId,
+                           Long destinationId,
+                           LocalDateTime departFrom,
+                           LocalDateTime departTo,
+                           LocalDateTime searchEnd,
+                           Duration minTransfer,
+                           Duration maxTransfer,
+                           int maxLegs,
+                           TrainType trainType,
+                           TrainClass trainClass,
+                           BigDecimal maxPrice,
+                           LocalDateTime arriveBy) {
+
+    public JourneyQuery(Long originId,
+                        Long destinationId,
+                        LocalDateTime departFrom,
+                        LocalDateTime departTo,
+                        LocalDateTime searchEnd,
+                        Duration minTransfer,
+                        Duration maxTransfer,
+                        int maxLegs) {
+        this(originId, destinationId, departFrom, departTo, searchEnd, minTransfer, maxTransfer, maxLegs,
+                null, null, null, null);
+    }
+
+    /**
+     * Проверяет, что поезд рейса подходит под фильтры типа и класса.
+     */
+    public boolean allowsTrain(TrainType type, TrainClass trainClass) {
+        return (this.trainType == null || this.trainType == type)
+                && (this.trainClass == null || this.trainClass == trainClass);
+    }
+}
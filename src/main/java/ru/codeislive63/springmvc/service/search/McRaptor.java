@@ -0,0 +1,254 @@
+package ru.codeislive63.springmvc.service.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Многокритериальный раундовый поиск (McRAPTOR) по снимку расписания.
+ * <p>
+ * Раунд {@code k} продлевает метки, появившиеся в раунде {@code k - 1}, ещё одним рейсом каждого маршрута
+ * со станции пересадки, отправляющимся в окно пересадки. На каждой станции хранится «мешок» Парето-меток
+ * по критериям: отправление с исходной станции (чем позже, тем лучше), прибытие, цена и число рейсов.
+ * Время отправления входит в критерии, чтобы поиск за целый день не отбрасывал поздние рейсы
+ * только за более позднее прибытие.
+ * <p>
+ * Ожидание на пересадке ограничено сверху, поэтому на промежуточной станции метка с более ранним прибытием
+ * не заменяет более позднюю: у них разные допустимые продолжения. Там метка отбрасывается, только если есть
+ * метка с тем же прибытием, не хуже по остальным критериям, или если её бьёт уже найденная поездка до цели.
+ * Метки лежат в примитивных массивах и связаны ссылкой на родителя.
+ * <p>
+ * Фильтры запроса отсекают кандидатов до создания метки: рейс неподходящего поезда не рассматривается,
+ * а цепочка дороже {@code maxPrice} или не успевающая к {@code arriveBy} не продлевается. Прибытие в цель,
+ * не проходящее фильтр по времени, в мешок не попадает и поэтому не вытесняет подходящие поездки.
+ */
+final class McRaptor {
+
+    private final Connections timetable;
+    private final RouteIndex index;
+    private final int origin;
+    private final int target;
+    private final long minTransfer;
+    private final long maxTransfer;
+    private final int maxLegs;
+    private final JourneyQuery query;
+    private final long maxPrice;
+    private final long arriveBy;
+    private final long lateFrom;
+    private final long lateTo;
+
+    private long[] labelDeparture = new long[64];
+    private long[] labelArrival = new long[64];
+    private long[] labelPrice = new long[64];
+    private int[] labelLegs = new int[64];
+    private int[] labelConnection = new int[64];
+    private int[] labelParent = new int[64];
+    private boolean[] labelDead = new boolean[64];
+    private int labels;
+
+    private final int[][] bags;
+    private final int[] bagSize;
+
+    private McRaptor(Connections timetable, JourneyQuery query) {
+        this.timetable = timetable;
+        this.index = timetable.routeIndex();
+        this.origin = timetable.station(query.originId());
+        this.target = timetable.station(query.destinationId());
+        this.minTransfer = query.minTransfer().toSeconds();
+        this.maxTransfer = query.maxTransfer().toSeconds();
+        this.maxLegs = Math.max(1, query.maxLegs());
+        this.query = query;
+        this.maxPrice = query.maxPrice() != null ? Connections.kopecks(query.maxPrice()) : Long.MAX_VALUE;
+        this.arriveBy = query.arriveBy() != null ? Connections.seconds(query.arriveBy()) : Long.MAX_VALUE;
+        this.lateFrom = query.arriveBy() != null
+                ? Connections.seconds(query.arriveBy().minusDays(1)) : Long.MAX_VALUE;
+        this.lateTo = query.arriveBy() != null
+                ? Connections.seconds(query.arriveBy().toLocalDate().atStartOfDay()) : Long.MAX_VALUE;
+        this.bags = new int[timetable.stationCount()][];
+        this.bagSize = new int[timetable.stationCount()];
+    }
+
+    /**
+     * Returns the Pareto set of journeys over departure, arrival, price and number of trips.
+     *
+     * @return journeys as arrays of connection indexes in travel order
+     */
+    static List<int[]> paretoJourneys(Connections timetable, JourneyQuery query) {
+        return new McRaptor(timetable, query).run(query);
+    }
+
+    private List<int[]> run(JourneyQuery query) {
+        if (origin < 0 || target < 0 || origin == target) {
+            return List.of();
+        }
+        long departFrom = Connections.seconds(query.departFrom());
+        long departTo = Connections.seconds(query.departTo());
+        long searchEnd = Connections.seconds(query.searchEnd());
+
+        int[] marked = new int[16];
+        int markedCount = 0;
+        for (int i = index.stopStart[origin]; i < index.stopStart[origin + 1]; i++) {
+            int pattern = index.stopPatterns[i];
+            int stop = index.patternTo[pattern];
+            for (int t = index.firstTripAtOrAfter(pattern, departFrom); t < index.start[pattern + 1]; t++) {
+                int c = index.trips[t];
+                if (timetable.departure[c] > departTo) {
+                    break;
+                }
+                if (!admissible(c, stop, timetable.price[c])) {
+                    continue;
+                }
+                int label = offer(stop, timetable.departure[c], timetable.arrival[c], timetable.price[c], 1, c, -1);
+                if (label >= 0 && stop != target) {
+                    marked = push(marked, markedCount++, label);
+                }
+            }
+        }
+
+        for (int round = 2; round <= maxLegs && markedCount > 0; round++) {
+            int[] previous = marked;
+            int previousCount = markedCount;
+            marked = new int[Math.max(16, previousCount)];
+            markedCount = 0;
+            for (int m = 0; m < previousCount; m++) {
+                int parent = previous[m];
+                if (labelDead[parent]) {
+                    continue;
+                }
+                int stop = timetable.to[labelConnection[parent]];
+                long earliest = labelArrival[parent] + minTransfer;
+                long latest = Math.min(labelArrival[parent] + maxTransfer, searchEnd);
+                for (int i = index.stopStart[stop]; i < index.stopStart[stop + 1]; i++) {
+                    int pattern = index.stopPatterns[i];
+                    int next = index.patternTo[pattern];
+                    if (next == origin) {
+                        continue;
+                    }
+                    for (int t = index.firstTripAtOrAfter(pattern, earliest); t < index.start[pattern + 1]; t++) {
+                        int c = index.trips[t];
+                        if (timetable.departure[c] > latest) {
+                            break;
+                        }
+                        if (!admissible(c, next, labelPrice[parent] + timetable.price[c])) {
+                            continue;
+                        }
+                        int label = offer(next, labelDeparture[parent], timetable.arrival[c],
+                                labelPrice[parent] + timetable.price[c], round, c, parent);
+                        if (label >= 0 && next != target) {
+                            marked = push(marked, markedCount++, label);
+                        }
+                    }
+                }
+            }
+        }
+
+        List<int[]> journeys = new ArrayList<>(bagSize[target]);
+        for (int i = 0; i < bagSize[target]; i++) {
+            journeys.add(journey(bags[target][i]));
+        }
+        return journeys;
+    }
+
+    /**
+     * Checks the search filters for connection {@code c} reaching {@code stop} with the journey price {@code price}.
+     * Off the target the journey must still be able to arrive in time after one more transfer;
+     * at the target it must not arrive between the filter time and midnight of the day before {@code arriveBy}.
+     */
+    private boolean admissible(int c, int stop, long price) {
+        if (price > maxPrice || !query.allowsTrain(timetable.trainType[c], timetable.trainClass[c])) {
+            return false;
+        }
+        long arrival = timetable.arrival[c];
+        if (stop == target) {
+            return arrival <= arriveBy && (arrival <= lateFrom || arrival >= lateTo);
+        }
+        return arrival + minTransfer < arriveBy;
+    }
+
+    /**
+     * Добавляет метку в мешок станции, если её никто не доминирует, и вычищает метки, которые доминирует она.
+     *
+     * @return the new label or {@code -1} if it was rejected
+     */
+    private int offer(int stop, long departure, long arrival, long price, int legs, int connection, int parent) {
+        boolean atTarget = stop == target;
+        if (!atTarget && dominated(target, departure, arrival, price, legs, false)) {
+            return -1;
+        }
+        if (dominated(stop, departure, arrival, price, legs, !atTarget)) {
+            return -1;
+        }
+
+        int[] bag = bags[stop];
+        int size = bagSize[stop];
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int e = bag[i];
+            boolean sameArrival = labelArrival[e] == arrival || atTarget && labelArrival[e] >= arrival;
+            if (sameArrival && labelDeparture[e] <= departure && labelPrice[e] >= price && labelLegs[e] >= legs) {
+                labelDead[e] = true;
+            } else {
+                bag[kept++] = e;
+            }
+        }
+
+        int label = newLabel(departure, arrival, price, legs, connection, parent);
+        if (bag == null) {
+            bag = new int[4];
+        } else if (kept == bag.length) {
+            bag = Arrays.copyOf(bag, bag.length * 2);
+        }
+        bag[kept++] = label;
+        bags[stop] = bag;
+        bagSize[stop] = kept;
+        return label;
+    }
+
+    private boolean dominated(int stop, long departure, long arrival, long price, int legs, boolean exactArrival) {
+        int[] bag = bags[stop];
+        for (int i = 0; i < bagSize[stop]; i++) {
+            int e = bag[i];
+            boolean arrives = exactArrival ? labelArrival[e] == arrival : labelArrival[e] <= arrival;
+            if (arrives && labelDeparture[e] >= departure && labelPrice[e] <= price && labelLegs[e] <= legs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int newLabel(long departure, long arrival, long price, int legs, int connection, int parent) {
+        if (labels == labelDeparture.length) {
+            int capacity = labels * 2;
+            labelDeparture = Arrays.copyOf(labelDeparture, capacity);
+            labelArrival = Arrays.copyOf(labelArrival, capacity);
+            labelPrice = Arrays.copyOf(labelPrice, capacity);
+            labelLegs = Arrays.copyOf(labelLegs, capacity);
+            labelConnection = Arrays.copyOf(labelConnection, capacity);
+            labelParent = Arrays.copyOf(labelParent, capacity);
+            labelDead = Arrays.copyOf(labelDead, capacity);
+        }
+        labelDeparture[labels] = departure;
+        labelArrival[labels] = arrival;
+        labelPrice[labels] = price;
+        labelLegs[labels] = legs;
+        labelConnection[labels] = connection;
+        labelParent[labels] = parent;
+        return labels++;
+    }
+
+    private static int[] push(int[] array, int size, int value) {
+        if (size == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[size] = value;
+        return array;
+    }
+
+    private int[] journey(int label) {
+        int[] path = new int[labelLegs[label]];
+        for (int i = path.length - 1, l = label; l >= 0; i--, l = labelParent[l]) {
+            path[i] = labelConnection[l];
+        }
+        return path;
+    }
+}
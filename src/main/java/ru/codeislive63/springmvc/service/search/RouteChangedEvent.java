@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.service.search;
+
+/**
+ * Публикуется при создании, изменении или удалении маршрута: меняются справочники, расписание и выдача поиска.
+ *
+ * @param routeId ID of the route
+ */
+public record RouteChangedEvent(Long routeId) {
+}
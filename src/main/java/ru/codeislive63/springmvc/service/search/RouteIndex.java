@@ -0,0 +1,95 @@
+package ru.codeislive63.springmvc.service.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Рейсы снимка, сгруппированные по маршрутам (парам станций отправления и прибытия).
+ * <p>
+ * Рейсы маршрута {@code p} лежат в {@code trips[start[p] .. start[p + 1])} по возрастанию отправления,
+ * маршруты со станции {@code s} — в {@code stopPatterns[stopStart[s] .. stopStart[s + 1])}.
+ * Всё хранится в плоских массивах, как того требует раундовый поиск.
+ */
+final class RouteIndex {
+
+    final int[] patternFrom;
+    final int[] patternTo;
+    final int[] start;
+    final int[] trips;
+    final int[] stopStart;
+    final int[] stopPatterns;
+    private final long[] departure;
+
+    private RouteIndex(int[] patternFrom, int[] patternTo, int[] start, int[] trips,
+                       int[] stopStart, int[] stopPatterns, long[] departure) {
+        this.patternFrom = patternFrom;
+        this.patternTo = patternTo;
+        this.start = start;
+        this.trips = trips;
+        this.stopStart = stopStart;
+        this.stopPatterns = stopPatterns;
+        this.departure = departure;
+    }
+
+    static RouteIndex of(Connections timetable) {
+        int n = timetable.size();
+        Map<Long, Integer> patternIds = new HashMap<>();
+        int[] patternOf = new int[n];
+        for (int c = 0; c < n; c++) {
+            long key = ((long) timetable.from[c] << 32) | timetable.to[c];
+            patternOf[c] = patternIds.computeIfAbsent(key, k -> patternIds.size());
+        }
+
+        int patterns = patternIds.size();
+        int[] patternFrom = new int[patterns];
+        int[] patternTo = new int[patterns];
+        int[] start = new int[patterns + 1];
+        for (int c = 0; c < n; c++) {
+            int p = patternOf[c];
+            patternFrom[p] = timetable.from[c];
+            patternTo[p] = timetable.to[c];
+            start[p + 1]++;
+        }
+        for (int p = 0; p < patterns; p++) {
+            start[p + 1] += start[p];
+        }
+        // connections are sorted by departure, so every pattern slice comes out sorted too
+        int[] trips = new int[n];
+        int[] fill = start.clone();
+        for (int c = 0; c < n; c++) {
+            trips[fill[patternOf[c]]++] = c;
+        }
+
+        int stops = timetable.stationCount();
+        int[] stopStart = new int[stops + 1];
+        for (int p = 0; p < patterns; p++) {
+            stopStart[patternFrom[p] + 1]++;
+        }
+        for (int s = 0; s < stops; s++) {
+            stopStart[s + 1] += stopStart[s];
+        }
+        int[] stopPatterns = new int[patterns];
+        int[] stopFill = stopStart.clone();
+        for (int p = 0; p < patterns; p++) {
+            stopPatterns[stopFill[patternFrom[p]]++] = p;
+        }
+        return new RouteIndex(patternFrom, patternTo, start, trips, stopStart, stopPatterns, timetable.departure);
+    }
+
+    /**
+     * Returns the position in {@link #trips} of the first trip of the pattern departing at or after {@code seconds}.
+     */
+    int firstTripAtOrAfter(int pattern, long seconds) {
+        int lo = start[pattern];
+        int hi = start[pattern + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departure[trips[mid]] < seconds) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.codeislive63.springmvc.service.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.codeislive63.springmvc.web.dto.ItineraryDto;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Склеивает одновременные одинаковые поиски маршрутов (single flight).
+ * <p>
+ * Первый запрос по ключу считает результат в своём потоке, остальные ждут его не дольше
+ * {@code route.search.coalesce-timeout}. Ожидающий, у которого вышло время или прервался поток,
+ * получает ошибку только сам: общий расчёт не отменяется и достаётся остальным. Ошибка расчёта
+ * передаётся всем, кто его ждал, но не запоминается — следующий запрос посчитает заново.
+ */
+@Component
+public class SearchCoalescer {
+
+    private final ConcurrentHashMap<SearchKey, CompletableFuture<List<ItineraryDto>>> inFlight = new ConcurrentHashMap<>();
+    private final Duration timeout;
+    private final Counter coalesced;
+
+    public SearchCoalescer(@Value("${route.search.coalesce-timeout:10s}") Duration timeout,
+                           MeterRegistry meterRegistry) {
+        this.timeout = timeout;
+        this.coalesced = Counter.builder("route.search.coalesced")
+                .description("Route searches served by another request's computation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Возвращает результат расчёта, уже идущего по этому ключу, или считает его сам.
+     *
+     * @param key    search key
+     * @param search computation of the search result
+     * @return search result
+     * @throws IllegalStateException if the shared computation did not finish in time
+     */
+    public List<ItineraryDto> execute(SearchKey key, Supplier<List<ItineraryDto>> search) {
+        CompletableFuture<List<ItineraryDto>> mine = new CompletableFuture<>();
+        CompletableFuture<List<ItineraryDto>> running = inFlight.putIfAbsent(key, mine);
+        if (running == null) {
+            return lead(key, mine, search);
+        }
+
+        coalesced.increment();
+        try {
+            return running.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Поиск выполняется слишком долго, попробуйте ещё раз");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Поиск прерван");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Ошибка поиска маршрутов", e.getCause());
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private List<ItineraryDto> lead(SearchKey key, CompletableFuture<List<ItineraryDto>> mine,
+                                    Supplier<List<ItineraryDto>> search) {
+        try {
+            List<ItineraryDto> result = search.get();
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.service.search;
+
+import java.time.LocalDate;
+
+/**
+ * Ключ кэша результатов поиска: пара станций и дата отправления.
+ */
+public record SearchKey(Long originId, Long destinationId, LocalDate date) {
+}
@@ -0,0 +1,256 @@
+package ru.codeislive63.springmvc.service.search;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.TimetableConnection;
+import ru.codeislive63.springmvc.web.dto.ItineraryDto;
+import ru.codeislive63.springmvc.web.dto.TripLegDto;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Кэш результатов поиска маршрутов до применения фильтров запроса.
+ * <p>
+ * Размер ограничен суммарным числом плеч во всех закэшированных поездках ({@code route.cache.max-weight}),
+ * при переполнении вытесняются давно не читанные записи. При изменении рейса вытесняются только
+ * записи, которые он мог затронуть: содержащие этот рейс, а также поиски в день отправления рейса
+ * (и накануне — рейс может быть последним плечом) с общей станцией отправления или прибытия.
+ * Если поездка может содержать больше двух плеч, рейс может оказаться в середине любой поездки,
+ * и вытесняются все поиски этих дат.
+ * <p>
+ * Запись, посчитанная до вытеснения, не попадает в кэш после него: {@link #put} сверяет версию,
+ * полученную перед расчётом. Счётчики мест в кэше не хранятся — их обновляет вызывающий код.
+ */
+@Component
+public class SearchResultCache {
+
+    private final TripRepository tripRepository;
+    private final long maxWeight;
+    private final int maxLegs;
+
+    private final LinkedHashMap<SearchKey, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Long, Set<SearchKey>> keysByTrip = new HashMap<>();
+    private final Map<LocalDate, Set<SearchKey>> keysByDate = new HashMap<>();
+    private long weight;
+    private long version;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter invalidations;
+    private final Counter referenceInvalidations;
+
+    public SearchResultCache(TripRepository tripRepository,
+                             @Value("${route.cache.max-weight:50000}") long maxWeight,
+                             @Value("${route.max-transfers:2}") int maxTransfers,
+                             MeterRegistry meterRegistry) {
+        this.tripRepository = tripRepository;
+        this.maxWeight = maxWeight;
+        this.maxLegs = maxTransfers + 1;
+        this.hits = Counter.builder("route.search.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("route.search.cache").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictions = Counter.builder("route.search.cache.evictions").tag("cause", "size").register(meterRegistry);
+        this.invalidations = Counter.builder("route.search.cache.evictions").tag("cause", "trip-change").register(meterRegistry);
+        this.referenceInvalidations = Counter.builder("route.search.cache.evictions").tag("cause", "reference-change")
+                .register(meterRegistry);
+        Gauge.builder("route.search.cache.size", this, SearchResultCache::size)
+                .description("Cached route searches")
+                .register(meterRegistry);
+        Gauge.builder("route.search.cache.weight", this, SearchResultCache::weight)
+                .description("Itinerary legs held by the route search cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the current invalidation version. Take it before computing a result that will be {@link #put}.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    public synchronized Optional<List<ItineraryDto>> get(SearchKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.itineraries());
+    }
+
+    /**
+     * Кладёт результат в кэш, если с момента {@code computedAt} ни один рейс не менялся.
+     *
+     * @param key         search key
+     * @param itineraries unfiltered search result
+     * @param computedAt  version returned by {@link #version()} before the result was computed
+     */
+    public synchronized void put(SearchKey key, List<ItineraryDto> itineraries, long computedAt) {
+        if (computedAt != version) {
+            return;
+        }
+        Set<Long> tripIds = new HashSet<>();
+        int legs = 0;
+        for (ItineraryDto itinerary : itineraries) {
+            for (TripLegDto leg : itinerary.getLegs()) {
+                tripIds.add(leg.getTripId());
+                legs++;
+            }
+        }
+        int entryWeight = Math.max(1, legs);
+        if (entryWeight > maxWeight) {
+            return;
+        }
+
+        remove(key);
+        entries.put(key, new Entry(List.copyOf(itineraries), tripIds, entryWeight));
+        weight += entryWeight;
+        tripIds.forEach(id -> keysByTrip.computeIfAbsent(id, k -> new HashSet<>()).add(key));
+        keysByDate.computeIfAbsent(key.date(), d -> new HashSet<>()).add(key);
+
+        Iterator<Map.Entry<SearchKey, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            Map.Entry<SearchKey, Entry> victim = eldest.next();
+            eldest.remove();
+            unindex(victim.getKey(), victim.getValue());
+            sizeEvictions.increment();
+        }
+    }
+
+    /**
+     * Вытесняет результаты, которые мог затронуть созданный, изменённый или удалённый рейс.
+     * Выполняется после обновления расписания в памяти.
+     */
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripChanged(TripChangedEvent event) {
+        Optional<TimetableConnection> trip = tripRepository.findConnection(event.tripId());
+        synchronized (this) {
+            version++;
+            int evicted = evict(new ArrayList<>(keysByTrip.getOrDefault(event.tripId(), Set.of())));
+            if (trip.isPresent()) {
+                TimetableConnection connection = trip.get();
+                LocalDate day = connection.departure().toLocalDate();
+                evicted += evict(affected(day, connection, true));
+                evicted += evict(affected(day.minusDays(1), connection, false));
+            }
+            invalidations.increment(evicted);
+        }
+    }
+
+    /**
+     * Сбрасывает кэш, если у изменённой станции есть рейсы: в выдаче хранятся названия станций.
+     */
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStationChanged(StationChangedEvent event) {
+        if (tripRepository.existsByRouteOriginIdOrRouteDestinationId(event.stationId(), event.stationId())) {
+            clear();
+        }
+    }
+
+    /**
+     * Сбрасывает кэш, если у изменённого маршрута есть рейсы.
+     */
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRouteChanged(RouteChangedEvent event) {
+        if (tripRepository.existsByRouteId(event.routeId())) {
+            clear();
+        }
+    }
+
+    /**
+     * Сбрасывает кэш, если у изменённого поезда есть рейсы: в выдаче хранятся название, тип и удобства поезда.
+     */
+    @Order(1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTrainChanged(TrainChangedEvent event) {
+        if (tripRepository.existsByTrainId(event.trainId())) {
+            clear();
+        }
+    }
+
+    /**
+     * Removes every cached result and rejects results computed before the call.
+     */
+    public synchronized void clear() {
+        version++;
+        referenceInvalidations.increment(entries.size());
+        entries.clear();
+        keysByTrip.clear();
+        keysByDate.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    private List<SearchKey> affected(LocalDate date, TimetableConnection trip, boolean firstLegPossible) {
+        List<SearchKey> keys = new ArrayList<>();
+        for (SearchKey key : keysByDate.getOrDefault(date, Set.of())) {
+            boolean firstLeg = firstLegPossible && key.originId().equals(trip.originId());
+            boolean lastLeg = key.destinationId().equals(trip.destinationId());
+            if (firstLeg || lastLeg || maxLegs > 2) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private int evict(List<SearchKey> keys) {
+        int evicted = 0;
+        for (SearchKey key : keys) {
+            if (remove(key)) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    private boolean remove(SearchKey key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        unindex(key, entry);
+        return true;
+    }
+
+    private void unindex(SearchKey key, Entry entry) {
+        weight -= entry.weight();
+        for (Long tripId : entry.tripIds()) {
+            Set<SearchKey> keys = keysByTrip.get(tripId);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByTrip.remove(tripId);
+            }
+        }
+        Set<SearchKey> sameDate = keysByDate.get(key.date());
+        if (sameDate != null && sameDate.remove(key) && sameDate.isEmpty()) {
+            keysByDate.remove(key.date());
+        }
+    }
+
+    private record Entry(List<ItineraryDto> itineraries, Set<Long> tripIds, int weight) {
+    }
+}
@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.service.search;
+
+/**
+ * Публикуется при создании, изменении или удалении станции, чтобы перестроить индекс подсказок.
+ *
+ * @param stationId ID of the station
+ */
+public record StationChangedEvent(Long stationId) {
+}
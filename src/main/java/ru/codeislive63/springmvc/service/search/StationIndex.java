@@ -0,0 +1,279 @@
+package ru.codeislive63.springmvc.service.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.repository.StationRepository;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.projection.StationTickets;
+import ru.codeislive63.springmvc.web.dto.StationSuggestion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Индекс подсказок станций в памяти.
+ * <p>
+ * Названия и коды приводятся к нижнему регистру и транслитерируются в латиницу, поэтому «мин», «min»
+ * и «MIN» находят «Минск». Начала слов лежат в отсортированном массиве и ищутся бинарным поиском,
+ * подстроки от трёх символов — пересечением списков триграмм. Выдача упорядочена по качеству совпадения
+ * (начало названия, начало слова, подстрока), затем по числу проданных билетов.
+ * <p>
+ * Индекс строится целиком и подменяется одной записью ссылки: при старте, после изменения станции
+ * ({@link StationChangedEvent}) и раз в час для обновления популярности. Запрос подсказок не обращается к БД.
+ */
+@Slf4j
+@Component
+public class StationIndex {
+
+    static final int LIMIT = 10;
+
+    private static final List<TicketStatus> SOLD = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+
+    private final StationRepository stationRepository;
+    private final TicketRepository ticketRepository;
+
+    private volatile Snapshot snapshot = Snapshot.of(List.of(), Map.of());
+
+    public StationIndex(StationRepository stationRepository, TicketRepository ticketRepository) {
+        this.stationRepository = stationRepository;
+        this.ticketRepository = ticketRepository;
+    }
+
+    /**
+     * Перечитывает станции и их популярность из БД и атомарно подменяет индекс.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${route.stations.reindex-cron:0 0 * * * *}")
+    public synchronized void rebuild() {
+        Map<Long, Long> tickets = new HashMap<>();
+        for (StationTickets row : ticketRepository.countByOriginStation(SOLD)) {
+            tickets.merge(row.stationId(), row.tickets(), Long::sum);
+        }
+        for (StationTickets row : ticketRepository.countByDestinationStation(SOLD)) {
+            tickets.merge(row.stationId(), row.tickets(), Long::sum);
+        }
+        List<Station> stations = stationRepository.findAll();
+        snapshot = Snapshot.of(stations, tickets);
+        log.debug("Indexed {} stations for suggestions", stations.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStationChanged(StationChangedEvent event) {
+        rebuild();
+    }
+
+    /**
+     * Returns up to ten stations matching the query, best matches first.
+     */
+    public List<StationSuggestion> suggest(String query) {
+        String q = fold(query);
+        return q.isEmpty() ? List.of() : snapshot.suggest(q);
+    }
+
+    public int size() {
+        return snapshot.ids.length;
+    }
+
+    /**
+     * Приводит строку к виду для сравнения: нижний регистр, кириллица в латинице, прочие символы — пробелы.
+     */
+    static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(text.length() + 8);
+        boolean space = true;
+        for (char ch : text.toLowerCase(Locale.ROOT).toCharArray()) {
+            String latin = transliterate(ch);
+            if (latin == null) {
+                if (!space) {
+                    out.append(' ');
+                    space = true;
+                }
+            } else if (!latin.isEmpty()) {
+                out.append(latin);
+                space = false;
+            }
+        }
+        int end = out.length();
+        return space && end > 0 ? out.substring(0, end - 1) : out.toString();
+    }
+
+    private static final String[] CYRILLIC = {
+            "a", "b", "v", "g", "d", "e", "zh", "z", "i", "y", "k", "l", "m", "n", "o", "p",
+            "r", "s", "t", "u", "f", "h", "ts", "ch", "sh", "shch", "", "y", "", "e", "yu", "ya"
+    };
+
+    /**
+     * Returns the Latin spelling of a lower-case character, {@code ""} for signs without a sound
+     * and {@code null} for separators.
+     */
+    private static String transliterate(char ch) {
+        if (ch >= 'a' && ch <= 'z' || ch >= '0' && ch <= '9') {
+            return String.valueOf(ch);
+        }
+        if (ch >= 'а' && ch <= 'я') {
+            return CYRILLIC[ch - 'а'];
+        }
+        return switch (ch) {
+            case 'ё' -> "e";
+            case 'і' -> "i";
+            case 'ў' -> "u";
+            case '\'', '’' -> "";
+            default -> null;
+        };
+    }
+
+    /**
+     * Неизменяемый снимок индекса.
+     */
+    private static final class Snapshot {
+
+        private static final int WHOLE_NAME = 0;
+        private static final int WORD_START = 1;
+        private static final int SUBSTRING = 2;
+
+        private final long[] ids;
+        private final String[] names;
+        private final String[] codes;
+        private final long[] popularity;
+        private final String[] folded;
+        private final String[] words;
+        private final int[] wordStation;
+        private final Map<String, int[]> trigrams;
+
+        private Snapshot(long[] ids, String[] names, String[] codes, long[] popularity, String[] folded,
+                         String[] words, int[] wordStation, Map<String, int[]> trigrams) {
+            this.ids = ids;
+            this.names = names;
+            this.codes = codes;
+            this.popularity = popularity;
+            this.folded = folded;
+            this.words = words;
+            this.wordStation = wordStation;
+            this.trigrams = trigrams;
+        }
+
+        static Snapshot of(List<Station> stations, Map<Long, Long> tickets) {
+            int n = stations.size();
+            long[] ids = new long[n];
+            String[] names = new String[n];
+            String[] codes = new String[n];
+            long[] popularity = new long[n];
+            String[] folded = new String[n];
+            List<String> wordList = new ArrayList<>();
+            List<Integer> wordOwners = new ArrayList<>();
+            Map<String, List<Integer>> grams = new HashMap<>();
+
+            for (int i = 0; i < n; i++) {
+                Station station = stations.get(i);
+                ids[i] = station.getId();
+                names[i] = station.getName();
+                codes[i] = station.getCode();
+                popularity[i] = tickets.getOrDefault(station.getId(), 0L);
+                String name = fold(station.getName());
+                String code = fold(station.getCode());
+                folded[i] = code.isEmpty() ? name : name + " " + code;
+
+                wordList.add(name);
+                wordOwners.add(i);
+                for (String word : folded[i].split(" ")) {
+                    if (!word.isEmpty()) {
+                        wordList.add(word);
+                        wordOwners.add(i);
+                    }
+                }
+                for (int g = 0; g + 3 <= folded[i].length(); g++) {
+                    List<Integer> posting = grams.computeIfAbsent(folded[i].substring(g, g + 3), k -> new ArrayList<>());
+                    if (posting.isEmpty() || posting.getLast() != i) {
+                        posting.add(i);
+                    }
+                }
+            }
+
+            Integer[] order = new Integer[wordList.size()];
+            Arrays.setAll(order, k -> k);
+            Arrays.sort(order, Comparator.comparing(wordList::get));
+            String[] words = new String[order.length];
+            int[] wordStation = new int[order.length];
+            for (int k = 0; k < order.length; k++) {
+                words[k] = wordList.get(order[k]);
+                wordStation[k] = wordOwners.get(order[k]);
+            }
+
+            Map<String, int[]> trigrams = new HashMap<>(grams.size() * 2);
+            grams.forEach((gram, posting) -> trigrams.put(gram, posting.stream().mapToInt(Integer::intValue).toArray()));
+            return new Snapshot(ids, names, codes, popularity, folded, words, wordStation, trigrams);
+        }
+
+        List<StationSuggestion> suggest(String q) {
+            Map<Integer, Integer> ranks = new HashMap<>();
+            for (int k = lowerBound(q); k < words.length && words[k].startsWith(q); k++) {
+                int station = wordStation[k];
+                int rank = folded[station].startsWith(q) ? WHOLE_NAME : WORD_START;
+                ranks.merge(station, rank, Math::min);
+            }
+            if (q.length() >= 3) {
+                for (int station : containing(q)) {
+                    ranks.putIfAbsent(station, SUBSTRING);
+                }
+            }
+
+            return ranks.entrySet().stream()
+                    .sorted(Comparator.<Map.Entry<Integer, Integer>>comparingInt(Map.Entry::getValue)
+                            .thenComparing(e -> -popularity[e.getKey()])
+                            .thenComparing(e -> names[e.getKey()]))
+                    .limit(LIMIT)
+                    .map(e -> new StationSuggestion(ids[e.getKey()], names[e.getKey()], codes[e.getKey()]))
+                    .toList();
+        }
+
+        private int lowerBound(String q) {
+            int lo = 0;
+            int hi = words.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (words[mid].compareTo(q) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Пересекает списки триграмм запроса, начиная с самого короткого, и проверяет кандидатов подстрокой.
+         */
+        private List<Integer> containing(String q) {
+            int[] shortest = null;
+            for (int g = 0; g + 3 <= q.length(); g++) {
+                int[] posting = trigrams.get(q.substring(g, g + 3));
+                if (posting == null) {
+                    return List.of();
+                }
+                if (shortest == null || posting.length < shortest.length) {
+                    shortest = posting;
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            for (int station : shortest) {
+                if (folded[station].contains(q)) {
+                    found.add(station);
+                }
+            }
+            return found;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ru.codeislive63.springmvc.service.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.TimetableConnection;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Расписание рейсов в памяти для поиска маршрутов с любым числом пересадок.
+ * <p>
+ * Хранит рейсы, отправляющиеся от вчерашнего дня до конца горизонта {@code route.timetable.horizon-days}.
+ * Снимок загружается одним запросом при старте и раз в сутки; изменения рейсов из админки применяются
+ * точечно после коммита через {@link TripChangedEvent}; изменение маршрута или поезда с рейсами
+ * перечитывает снимок. Читатели работают с неизменяемым снимком без блокировок.
+ */
+@Slf4j
+@Component
+public class Timetable {
+
+    private final TripRepository tripRepository;
+    private final int horizonDays;
+
+    private volatile Connections connections;
+    private volatile LocalDateTime loadedFrom;
+    private volatile LocalDateTime loadedUntil;
+
+    public Timetable(TripRepository tripRepository,
+                     @Value("${route.timetable.horizon-days:120}") int horizonDays) {
+        this.tripRepository = tripRepository;
+        this.horizonDays = horizonDays;
+    }
+
+    /**
+     * Перечитывает расписание из БД.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${route.timetable.reload-cron:0 30 3 * * *}")
+    public synchronized void reload() {
+        LocalDateTime from = LocalDate.now().minusDays(1).atStartOfDay();
+        LocalDateTime until = LocalDate.now().plusDays(horizonDays + 1L).atStartOfDay();
+        List<TimetableConnection> rows = tripRepository.findConnections(from, until);
+        connections = Connections.of(rows);
+        loadedFrom = from;
+        loadedUntil = until;
+        log.info("Loaded timetable of {} trips departing {} .. {}", rows.size(), from.toLocalDate(), until.toLocalDate());
+    }
+
+    /**
+     * Applies a created, updated or deleted trip to the snapshot once the change is committed.
+     */
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onTripChanged(TripChangedEvent event) {
+        Connections current = connections;
+        if (current == null) {
+            return;
+        }
+        TimetableConnection row = tripRepository.findConnection(event.tripId())
+                .filter(this::withinHorizon)
+                .orElse(null);
+        connections = current.with(event.tripId(), row);
+    }
+
+    /**
+     * Перечитывает расписание, если у изменённого маршрута есть рейсы: у них могли смениться станции.
+     */
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRouteChanged(RouteChangedEvent event) {
+        if (tripRepository.existsByRouteId(event.routeId())) {
+            reload();
+        }
+    }
+
+    /**
+     * Перечитывает расписание, если у изменённого поезда есть рейсы: у них могли смениться тип и класс.
+     */
+    @Order(0)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTrainChanged(TrainChangedEvent event) {
+        if (tripRepository.existsByTrainId(event.trainId())) {
+            reload();
+        }
+    }
+
+    /**
+     * Проверяет, что все рейсы, которые может затронуть поиск, есть в снимке.
+     */
+    public boolean covers(JourneyQuery query) {
+        return connections != null
+                && !query.departFrom().isBefore(loadedFrom)
+                && query.searchEnd().isBefore(loadedUntil);
+    }
+
+    /**
+     * Находит Парето-множество поездок по времени отправления и прибытия, цене и числу пересадок.
+     *
+     * @return journeys as trip IDs in travel order
+     */
+    public List<List<Long>> paretoJourneys(JourneyQuery query) {
+        Connections snapshot = connections;
+        return tripIds(snapshot, McRaptor.paretoJourneys(snapshot, query));
+    }
+
+    /**
+     * Считает сводку по каждому запросу на одном снимке расписания. Запросы независимы
+     * (обычно это соседние дни) и считаются параллельно; от найденных Парето-поездок остаются
+     * только минимальная цена и минимальная длительность — обе всегда входят в Парето-множество.
+     *
+     * @return one summary per query, in the order of {@code queries}
+     */
+    public List<FareSummary> fareSummaries(List<JourneyQuery> queries) {
+        Connections snapshot = connections;
+        return queries.parallelStream()
+                .map(query -> summarize(snapshot, McRaptor.paretoJourneys(snapshot, query)))
+                .toList();
+    }
+
+    public int size() {
+        Connections snapshot = connections;
+        return snapshot != null ? snapshot.size() : 0;
+    }
+
+    private static List<List<Long>> tripIds(Connections snapshot, List<int[]> found) {
+        List<List<Long>> journeys = new ArrayList<>(found.size());
+        for (int[] path : found) {
+            List<Long> tripIds = new ArrayList<>(path.length);
+            for (int c : path) {
+                tripIds.add(snapshot.tripIds[c]);
+            }
+            journeys.add(tripIds);
+        }
+        return journeys;
+    }
+
+    private static FareSummary summarize(Connections snapshot, List<int[]> journeys) {
+        long minPrice = Long.MAX_VALUE;
+        long fastest = Long.MAX_VALUE;
+        for (int[] path : journeys) {
+            long price = 0;
+            for (int c : path) {
+                price += snapshot.price[c];
+            }
+            minPrice = Math.min(minPrice, price);
+            fastest = Math.min(fastest, snapshot.arrival[path[path.length - 1]] - snapshot.departure[path[0]]);
+        }
+        if (journeys.isEmpty()) {
+            return FareSummary.NONE;
+        }
+        return new FareSummary(BigDecimal.valueOf(minPrice, 2), Duration.ofSeconds(fastest));
+    }
+
+    private boolean withinHorizon(TimetableConnection row) {
+        return !row.departure().isBefore(loadedFrom) && row.departure().isBefore(loadedUntil);
+    }
+}
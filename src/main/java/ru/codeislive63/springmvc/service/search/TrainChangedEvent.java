@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.service.search;
+
+/**
+ * Публикуется при создании, изменении или удалении поезда: меняются справочники, расписание и выдача поиска.
+ *
+ * @param trainId ID of the train
+ */
+public record TrainChangedEvent(Long trainId) {
+}
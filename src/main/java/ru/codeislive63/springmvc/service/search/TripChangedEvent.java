@@ -0,0 +1,9 @@
+package ru.codeislive63.springmvc.service.search;
+
+/**
+ * Публикуется при создании, изменении или удалении рейса, чтобы обновить расписание в памяти.
+ *
+ * @param tripId ID of the trip
+ */
+public record TripChangedEvent(Long tripId) {
+}
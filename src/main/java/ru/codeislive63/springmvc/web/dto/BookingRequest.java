@@ -12,6 +12,10 @@ public class BookingRequest {
     private Integer seat1;
     private Integer seat2;
 
+    /** Остановки посадки и высадки для поездки на часть маршрута; пусто — весь рейс. */
+    private Integer boardStop;
+    private Integer alightStop;
+
     private String passengerName;
     private String passengerDocument;
     private String benefitType;
@@ -0,0 +1,10 @@
+package ru.codeislive63.springmvc.web.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * День календаря цен: минимальная цена и самая быстрая поездка, {@code null} если поездок нет.
+ */
+public record FareDay(LocalDate date, BigDecimal minPrice, Long fastestMinutes, String fastestText) {
+}
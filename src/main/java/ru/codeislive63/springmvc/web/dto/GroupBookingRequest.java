@@ -0,0 +1,17 @@
+package ru.codeislive63.springmvc.web.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Бронирование нескольких пассажиров на один рейс.
+ * Для каждого пассажира можно указать место ({@link BookingRequest#getSeat()}),
+ * иначе ему будет выделено любое свободное место.
+ */
+@Data
+public class GroupBookingRequest {
+    private Long tripId;
+    private List<BookingRequest> passengers = new ArrayList<>();
+}
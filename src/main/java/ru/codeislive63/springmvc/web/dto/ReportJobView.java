@@ -0,0 +1,7 @@
+package ru.codeislive63.springmvc.web.dto;
+
+/**
+ * Состояние задания на отчёт для опроса клиентом; {@code downloadUrl} заполнен, когда отчёт готов.
+ */
+public record ReportJobView(String id, String status, int progress, String error, String downloadUrl) {
+}
@@ -1,4 +1,36 @@
 package ru.codeislive63.springmvc.web.dto;
 
-public record SeatView(int seatNumber, boolean available) {
+import ru.codeislive63.springmvc.domain.CarLayout;
+import ru.codeislive63.springmvc.domain.TrainClass;
+
+import java.util.BitSet;
+
+/**
+ * Схема одного вагона: диапазон сквозных номеров мест и битовая карта занятости.
+ * Бит {@code i} соответствует месту {@code firstSeat + i}; установленный бит означает, что место занято.
+ */
+public record SeatView(int carNumber, TrainClass carClass, CarLayout layout, int firstSeat, int seatCount, BitSet occupied) {
+
+    public int lastSeat() {
+        return firstSeat + seatCount - 1;
+    }
+
+    public int freeCount() {
+        return seatCount - occupied.cardinality();
+    }
+
+    public boolean isFree(int seatNumber) {
+        return seatNumber >= firstSeat && seatNumber <= lastSeat() && !occupied.get(seatNumber - firstSeat);
+    }
+
+    /**
+     * Занятость мест строкой из {@code 0} (свободно) и {@code 1} (занято) для отрисовки схемы на клиенте.
+     */
+    public String occupancyMask() {
+        char[] mask = new char[seatCount];
+        for (int i = 0; i < seatCount; i++) {
+            mask[i] = occupied.get(i) ? '1' : '0';
+        }
+        return new String(mask);
+    }
 }
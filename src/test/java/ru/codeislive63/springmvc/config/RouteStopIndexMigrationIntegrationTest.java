@@ -0,0 +1,51 @@
+package ru.codeislive63.springmvc.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.repository.RouteRepository;
+import ru.codeislive63.springmvc.service.AdminService;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционный тест нумерации остановок, сохранённых до появления колонки {@code stop_index}.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class RouteStopIndexMigrationIntegrationTest {
+
+    @Autowired RouteStopIndexMigration migration;
+    @Autowired AdminService adminService;
+    @Autowired RouteRepository routeRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    @Test
+    void migrate_shouldNumberLegacyStopsInInsertionOrder() {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("SI1" + code, "Начало " + code);
+        Station destination = adminService.createStation("SI2" + code, "Конец " + code);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 300, "Маршрут " + code);
+
+        jdbcTemplate.execute("alter table route_stops drop primary key");
+        jdbcTemplate.execute("alter table route_stops drop column stop_index");
+        for (String stop : List.of("Тверь", "Клин", "Бологое")) {
+            jdbcTemplate.update("insert into route_stops (route_id, stop_name) values (?, ?)", route.getId(), stop);
+        }
+
+        assertTrue(migration.migrate() >= 3, "Все строки без номера нумеруются");
+        assertEquals(0, migration.migrate(), "Повторный запуск ничего не меняет");
+
+        List<String> stops = transactionTemplate.execute(status ->
+                List.copyOf(routeRepository.findById(route.getId()).orElseThrow().getStops()));
+        assertEquals(List.of("Тверь", "Клин", "Бологое"), stops, "Остановки читаются в порядке вставки");
+    }
+}
@@ -0,0 +1,274 @@
+package ru.codeislive63.springmvc.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.TicketRollupState;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.repository.TicketRollupStateRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.analytics.TicketRollups;
+import ru.codeislive63.springmvc.service.search.TripChangedEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты срезов аналитики по агрегатам билетов и заполняемости рейсов.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class AnalyticsServiceIntegrationTest {
+
+    @Autowired AnalyticsService analyticsService;
+    @Autowired AdminService adminService;
+    @Autowired BookingService bookingService;
+    @Autowired UserService userService;
+    @Autowired TicketRollups ticketRollups;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRollupStateRepository stateRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    @Test
+    void dashboardSlices_shouldAggregateTicketsPerRouteStatusAndDate() {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("AN1" + code, "Аналитика А " + code);
+        Station destination = adminService.createStation("AN2" + code, "Аналитика Б " + code);
+        Train train = adminService.createTrain("AN-" + code, "Поезд аналитики", 10);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 60, "Маршрут аналитики");
+        LocalDateTime departure = LocalDateTime.now().plusMinutes(5);
+        Trip trip = adminService.createTrip(route.getId(), train.getId(), departure, departure.plusHours(1),
+                BigDecimal.valueOf(25));
+        ticketRollups.flush();
+        Map<TicketStatus, Long> statusesBefore = analyticsService.getTicketStatusDistribution();
+
+        Long userId = userService.getByEmail("customer@example.com").getId();
+        Ticket paid = bookingService.bookTicket(userId, trip.getId());
+        bookingService.payTicket(paid.getId());
+        Ticket cancelled = bookingService.bookTicket(userId, trip.getId());
+        bookingService.cancel(cancelled.getId(), userId);
+        bookingService.bookTicket(userId, trip.getId());
+        ticketRollups.flush();
+
+        String label = origin.getName() + " — " + destination.getName();
+        assertEquals(0, paid.getPrice().compareTo(analyticsService.getRevenueByRoute().get(label)));
+        assertEquals(1L, analyticsService.getCancellationsByRoute().get(label));
+        assertEquals(3L, analyticsService.getRouteDemand().get(label));
+
+        Map<TicketStatus, Long> statuses = analyticsService.getTicketStatusDistribution();
+        assertEquals(statusesBefore.getOrDefault(TicketStatus.PAID, 0L) + 1, statuses.get(TicketStatus.PAID));
+        assertEquals(statusesBefore.getOrDefault(TicketStatus.CANCELLED, 0L) + 1, statuses.get(TicketStatus.CANCELLED));
+
+        Map<LocalDate, Long> demand = analyticsService.getDemandByDate(14);
+        assertEquals(15, demand.size());
+        if (departure.toLocalDate().equals(LocalDate.now())) {
+            assertTrue(demand.get(LocalDate.now()) >= 2, "Оплаченный и забронированный билеты считаются в спросе");
+        }
+    }
+
+    @Test
+    void rollups_shouldMatchFullRebuildAndFollowTripChanges() {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("RU1" + code, "Агрегаты А " + code);
+        Station destination = adminService.createStation("RU2" + code, "Агрегаты Б " + code);
+        Train train = adminService.createTrain("RU-" + code, "Поезд агрегатов", 10);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 60, "Маршрут агрегатов");
+        LocalDateTime departure = LocalDateTime.now().plusDays(1);
+        Trip trip = adminService.createTrip(route.getId(), train.getId(), departure, departure.plusHours(1),
+                BigDecimal.valueOf(40));
+
+        Long userId = userService.getByEmail("customer@example.com").getId();
+        Ticket refunded = bookingService.bookTicket(userId, trip.getId());
+        bookingService.payTicket(refunded.getId());
+        bookingService.cancel(refunded.getId(), userId);
+        Ticket paid = bookingService.bookTicket(userId, trip.getId());
+        bookingService.payTicket(paid.getId());
+        ticketRollups.flush();
+
+        String label = origin.getName() + " — " + destination.getName();
+        Map<String, BigDecimal> revenue = analyticsService.getRevenueByRoute();
+        Map<String, Long> cancellations = analyticsService.getCancellationsByRoute();
+        Map<String, Long> demand = analyticsService.getRouteDemand();
+        Map<TicketStatus, Long> statuses = analyticsService.getTicketStatusDistribution();
+        assertEquals(0, paid.getPrice().compareTo(revenue.get(label)));
+        assertEquals(1L, cancellations.get(label));
+        assertEquals(2L, demand.get(label));
+
+        ticketRollups.rebuild();
+        assertEquals(0, revenue.get(label).compareTo(analyticsService.getRevenueByRoute().get(label)));
+        assertEquals(cancellations.get(label), analyticsService.getCancellationsByRoute().get(label));
+        assertEquals(demand.get(label), analyticsService.getRouteDemand().get(label));
+        assertEquals(statuses, analyticsService.getTicketStatusDistribution());
+
+        Route reversed = adminService.createRoute(destination.getId(), origin.getId(), 60, "Обратный маршрут");
+        trip.setRoute(reversed);
+        tripRepository.save(trip);
+        ticketRollups.onTripChanged(new TripChangedEvent(trip.getId()));
+        ticketRollups.flush();
+        assertEquals(2L, analyticsService.getRouteDemand().get(destination.getName() + " — " + origin.getName()));
+        assertNull(analyticsService.getRouteDemand().get(label), "Билеты перенесены на новый маршрут рейса");
+    }
+
+    @Test
+    void rebuild_beforeFlush_shouldDropDeltasItAlreadyCounted() {
+        Route route = rollupRoute("RB");
+        Trip trip = rollupTrip(route);
+        Long userId = userService.getByEmail("customer@example.com").getId();
+
+        bookingService.bookTicket(userId, trip.getId());
+        ticketRollups.rebuild();
+        ticketRollups.flush();
+
+        assertEquals(1L, analyticsService.getRouteDemand().get(label(route)), "Приращение старого поколения отброшено");
+    }
+
+    @Test
+    void bookingCommit_duringRebuildOnAnotherNode_shouldWaitAndKeepItsDelta() throws Exception {
+        Route route = rollupRoute("RN");
+        Trip trip = rollupTrip(route);
+        Long userId = userService.getByEmail("customer@example.com").getId();
+        ticketRollups.flush();
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<Void> rebuild = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            TicketRollupState state = stateRepository.lockExclusive(TicketRollupState.ID).orElseThrow();
+            state.setGeneration(state.getGeneration() + 1);
+            locked.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Ticket> booking = CompletableFuture.supplyAsync(() -> bookingService.bookTicket(userId, trip.getId()));
+        assertThrows(TimeoutException.class, () -> booking.get(300, TimeUnit.MILLISECONDS),
+                "Фиксация брони ждёт конца пересчёта");
+        finish.countDown();
+        rebuild.get(5, TimeUnit.SECONDS);
+        booking.get(5, TimeUnit.SECONDS);
+        ticketRollups.flush();
+
+        assertEquals(1L, analyticsService.getRouteDemand().get(label(route)),
+                "Бронь не попала в снимок пересчёта и записана приращением нового поколения");
+    }
+
+    private Route rollupRoute(String prefix) {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation(prefix + "1" + code, "Пересчёт А " + code);
+        Station destination = adminService.createStation(prefix + "2" + code, "Пересчёт Б " + code);
+        return adminService.createRoute(origin.getId(), destination.getId(), 60, "Маршрут пересчёта");
+    }
+
+    private Trip rollupTrip(Route route) {
+        Train train = adminService.createTrain("T" + route.getId() + "-" + System.nanoTime() % 100_000, "Поезд пересчёта", 10);
+        LocalDateTime departure = LocalDateTime.now().plusDays(1);
+        return adminService.createTrip(route.getId(), train.getId(), departure, departure.plusHours(1),
+                BigDecimal.valueOf(30));
+    }
+
+    private static String label(Route route) {
+        return route.getOrigin().getName() + " — " + route.getDestination().getName();
+    }
+
+    @Test
+    void tripOccupancy_shouldCountSoldSeatsInOneQueryWithinWindow() {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("OC1" + code, "Заполняемость А " + code);
+        Station destination = adminService.createStation("OC2" + code, "Заполняемость Б " + code);
+        Train train = adminService.createTrain("OC-" + code, "Поезд заполняемости", 2);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 60, "Маршрут заполняемости");
+        LocalDateTime departure = LocalDateTime.now().plusMinutes(5);
+        Trip full = adminService.createTrip(route.getId(), train.getId(), departure, departure.plusHours(1),
+                BigDecimal.valueOf(10));
+        Trip empty = adminService.createTrip(route.getId(), train.getId(), departure.plusMinutes(1),
+                departure.plusHours(1), BigDecimal.valueOf(10));
+        Trip twin = adminService.createTrip(route.getId(), train.getId(), departure.plusMinutes(1),
+                departure.plusHours(1), BigDecimal.valueOf(10));
+        Trip outside = adminService.createTrip(route.getId(), train.getId(), departure.plusDays(90),
+                departure.plusDays(90).plusHours(1), BigDecimal.valueOf(10));
+
+        Long userId = userService.getByEmail("customer@example.com").getId();
+        bookingService.bookTicket(userId, full.getId());
+        Ticket paid = bookingService.bookTicket(userId, full.getId());
+        bookingService.payTicket(paid.getId());
+        Ticket cancelled = bookingService.bookTicket(userId, empty.getId());
+        bookingService.cancel(cancelled.getId(), userId);
+
+        List<AnalyticsService.TripOccupancy> all = new ArrayList<>();
+        List<AnalyticsService.TripOccupancy> page = analyticsService.getTripOccupancies(null, 2);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            page = analyticsService.getTripOccupancies(page.getLast(), 2);
+        }
+        Map<Long, AnalyticsService.TripOccupancy> byTrip = new HashMap<>();
+        all.forEach(o -> assertNull(byTrip.put(o.tripId(), o), "Страницы не пересекаются"));
+
+        assertEquals(2, byTrip.get(full.getId()).booked());
+        assertEquals(100.0, byTrip.get(full.getId()).occupancy(), 0.001);
+        assertEquals(0, byTrip.get(empty.getId()).booked(), "Отменённый билет не занимает место");
+        assertTrue(byTrip.containsKey(twin.getId()), "Рейс с тем же отправлением не теряется на границе страниц");
+        assertFalse(byTrip.containsKey(outside.getId()), "Рейс за пределами окна не попадает в срез");
+
+        assertEquals(full.getId(), analyticsService.getFullestTrips().getFirst().tripId());
+        Map<String, Long> histogram = analyticsService.getOccupancyHistogram();
+        assertEquals(10, histogram.size());
+        assertEquals(all.size(), histogram.values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(histogram.get("90–100%") >= 1);
+    }
+
+    @Test
+    void writeReport_shouldStreamOccupancyRowsOfWindow() throws Exception {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("XL1" + code, "Отчёт А " + code);
+        Station destination = adminService.createStation("XL2" + code, "Отчёт Б " + code);
+        Train train = adminService.createTrain("XL-" + code, "Поезд отчёта", 4);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 60, "Маршрут отчёта");
+        LocalDateTime departure = LocalDateTime.now().plusHours(2);
+        Trip trip = adminService.createTrip(route.getId(), train.getId(), departure, departure.plusHours(1),
+                BigDecimal.valueOf(10));
+        bookingService.bookTicket(userService.getByEmail("customer@example.com").getId(), trip.getId());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        analyticsService.writeReport(out);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet occupancy = wb.getSheet("Заполняемость");
+            Row row = null;
+            for (int i = 1; i <= occupancy.getLastRowNum() && row == null; i++) {
+                if ((long) occupancy.getRow(i).getCell(1).getNumericCellValue() == trip.getId()) {
+                    row = occupancy.getRow(i);
+                }
+            }
+            assertNotNull(row, "Рейс окна попадает в лист заполняемости");
+            assertEquals("1 / 4", row.getCell(2).getStringCellValue());
+            assertEquals(25.0, row.getCell(3).getNumericCellValue(), 0.001);
+            assertEquals(4, wb.getNumberOfSheets());
+        }
+    }
+}
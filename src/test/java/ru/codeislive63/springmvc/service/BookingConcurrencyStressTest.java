@@ -0,0 +1,148 @@
+package ru.codeislive63.springmvc.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.PaymentRepository;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TrainCarRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.booking.SeatHoldExpirer;
+import ru.codeislive63.springmvc.service.booking.TripLockManager;
+import ru.codeislive63.springmvc.service.pricing.PriceStrategyFactory;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочный тест продажи мест: тысячи параллельных вызовов {@code bookSeat} на один рейс.
+ * Пишет в лог пропускную способность и число перепроданных мест, которое должно быть нулевым.
+ * Второй прогон раздаёт вызовы нескольким экземплярам сервиса со своими блокировками рейсов, как на разных узлах:
+ * блокировка в JVM их не упорядочивает, и от перепродажи защищают только условное списание и уникальный ключ места.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class BookingConcurrencyStressTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BookingConcurrencyStressTest.class);
+
+    private static final int THREADS = 16;
+    private static final int REQUESTS = 2_000;
+    private static final int CAPACITY = 40;
+    private static final int NODES = 4;
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRepository ticketRepository;
+    @Autowired TrainCarRepository trainCarRepository;
+    @Autowired PaymentRepository paymentRepository;
+    @Autowired TripService tripService;
+    @Autowired PriceStrategyFactory priceStrategyFactory;
+    @Autowired TransactionTemplate transactionTemplate;
+    @Autowired SeatHoldExpirer seatHoldExpirer;
+    @Autowired ApplicationEventPublisher eventPublisher;
+
+    private UserAccount customer;
+    private Trip trip;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        Station origin = adminService.createStation("STR1", "Станция Нагрузки 1");
+        Station destination = adminService.createStation("STR2", "Станция Нагрузки 2");
+        Train train = adminService.createTrain("STRESS-TRAIN", "Поезд нагрузочного теста", CAPACITY);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 30, "Маршрут нагрузки");
+        trip = adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(3),
+                LocalDateTime.now().plusDays(3).plusHours(2),
+                BigDecimal.valueOf(20)
+        );
+    }
+
+    @Test
+    void concurrentBookSeat_shouldNeverOversell() throws Exception {
+        stress("bookSeat stress", List.of(bookingService));
+    }
+
+    @Test
+    void concurrentBookSeat_onSeveralNodes_shouldNeverOversell() throws Exception {
+        List<BookingService> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            TripLockManager nodeLocks = new TripLockManager(64, Duration.ofSeconds(5), new SimpleMeterRegistry());
+            nodes.add(new BookingService(ticketRepository, trainCarRepository, paymentRepository, tripService,
+                    userService, priceStrategyFactory, transactionTemplate, nodeLocks, seatHoldExpirer, eventPublisher));
+        }
+        stress("bookSeat stress on " + NODES + " nodes", nodes);
+    }
+
+    private void stress(String name, List<BookingService> nodes) throws Exception {
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+
+        for (int i = 0; i < REQUESTS; i++) {
+            BookingService node = nodes.get(i % nodes.size());
+            pool.submit(() -> {
+                start.await();
+                int seat = ThreadLocalRandom.current().nextInt(1, CAPACITY + 1);
+                try {
+                    node.bookSeat(customer.getId(), trip.getId(), seat);
+                    booked.incrementAndGet();
+                } catch (RuntimeException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES), "Нагрузочный прогон не уложился в таймаут");
+        double seconds = (System.nanoTime() - startedAt) / 1_000_000_000.0;
+
+        List<Integer> seats = ticketRepository.findBookedSeats(trip.getId(), List.of(TicketStatus.BOOKED, TicketStatus.PAID));
+        int oversold = seats.size() - new HashSet<>(seats).size() + Math.max(0, seats.size() - CAPACITY);
+        Trip reloaded = tripRepository.findById(trip.getId()).orElseThrow();
+
+        log.info("{}: {} requests in {} s ({} req/s), booked={}, rejected={}, oversold={}",
+                name, REQUESTS, String.format("%.2f", seconds), Math.round(REQUESTS / seconds),
+                booked.get(), rejected.get(), oversold);
+
+        assertEquals(0, oversold, "Одно место не должно продаваться дважды");
+        assertEquals(REQUESTS, booked.get() + rejected.get(), "Каждый запрос должен завершиться бронью или отказом");
+        assertEquals(booked.get(), seats.size(), "Каждой успешной брони соответствует ровно один активный билет");
+        assertEquals(CAPACITY - seats.size(), reloaded.getSeatsAvailable(), "Счётчик свободных мест не должен расходиться с билетами");
+    }
+}
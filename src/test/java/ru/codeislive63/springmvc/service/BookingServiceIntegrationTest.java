@@ -1,9 +1,12 @@
 package ru.codeislive63.springmvc.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 import ru.codeislive63.springmvc.domain.TicketStatus;
@@ -32,6 +35,8 @@ class BookingServiceIntegrationTest {
     @Autowired AdminService adminService;
     @Autowired UserService userService;
     @Autowired TripRepository tripRepository;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @PersistenceContext EntityManager entityManager;
 
     private UserAccount customer;
     private Trip tripWithOneSeat;
@@ -67,6 +72,27 @@ class BookingServiceIntegrationTest {
         assertEquals(0, reloaded.getSeatsAvailable(), "После бронирования seatsAvailable должен уменьшиться");
     }
 
+    @Test
+    void backfillActiveSeats_shouldGuardLegacyTicketsAndSkipDoubleSoldSeat() {
+        Train train = adminService.createTrain("TEST-TRAIN-LEGACY", "Тестовый поезд (2 места)", 2);
+        Trip trip = adminService.createTrip(tripWithOneSeat.getRoute().getId(), train.getId(),
+                LocalDateTime.now().plusDays(2), LocalDateTime.now().plusDays(2).plusHours(1), BigDecimal.TEN);
+        Ticket first = bookingService.bookSeat(customer.getId(), trip.getId(), 1);
+        Ticket second = bookingService.bookSeat(customer.getId(), trip.getId(), 2);
+        entityManager.flush();
+        entityManager.clear();
+        jdbcTemplate.update("update tickets set active_seat = null where trip_id = ?", trip.getId());
+        jdbcTemplate.update("update tickets set seat_number = 1 where id = ?", second.getId());
+
+        assertEquals(1, bookingService.backfillActiveSeats());
+
+        String activeSeat = "select active_seat from tickets where id = ?";
+        assertEquals(1, jdbcTemplate.queryForObject(activeSeat, Integer.class, first.getId()));
+        assertNull(jdbcTemplate.queryForObject(activeSeat, Integer.class, second.getId()),
+                "Место, проданное дважды, достаётся только первому билету");
+        assertEquals(0, bookingService.backfillActiveSeats());
+    }
+
     @Test
     void bookTicket_whenNoSeats_shouldThrow() {
         bookingService.bookTicket(customer.getId(), tripWithOneSeat.getId());
@@ -0,0 +1,124 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.booking.ExpiredTicketSweeper;
+import ru.codeislive63.springmvc.service.booking.SeatHoldExpirer;
+import ru.codeislive63.springmvc.web.dto.BookingRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты фоновой зачистки просроченных неоплаченных билетов.
+ */
+@SpringBootTest(properties = "booking.expiry.chunk-size=2")
+@ActiveProfiles("test")
+class ExpiredTicketSweeperIntegrationTest {
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired ExpiredTicketSweeper sweeper;
+    @Autowired SeatHoldExpirer seatHoldExpirer;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRepository ticketRepository;
+
+    private UserAccount customer;
+    private Trip firstTrip;
+    private Trip secondTrip;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        Station origin = adminService.createStation("SWP1", "Станция Зачистки 1");
+        Station destination = adminService.createStation("SWP2", "Станция Зачистки 2");
+        Train train = adminService.createTrain("SWEEP-TRAIN", "Поезд для зачистки (5 мест)", 5);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 30, "Маршрут зачистки");
+        firstTrip = createTrip(route, train, 1);
+        secondTrip = createTrip(route, train, 2);
+    }
+
+    @Test
+    void sweep_shouldCancelExpiredUnpaidTicketsInChunks() {
+        List<Ticket> first = bookingService.bookGroup(customer.getId(), firstTrip.getId(), List.of(
+                new BookingRequest(),
+                new BookingRequest(),
+                new BookingRequest()));
+        Ticket secondA = bookingService.bookSeat(customer.getId(), secondTrip.getId(), 1);
+        Ticket secondB = bookingService.bookSeat(customer.getId(), secondTrip.getId(), 2);
+        Ticket fresh = bookingService.bookSeat(customer.getId(), secondTrip.getId(), 3);
+        bookingService.payTicket(first.get(0).getId());
+
+        for (Ticket ticket : List.of(first.get(1), first.get(2), secondA, secondB)) {
+            Ticket stored = ticketRepository.findById(ticket.getId()).orElseThrow();
+            stored.setHoldExpiresAt(LocalDateTime.now().minusMinutes(1));
+            ticketRepository.save(stored);
+        }
+
+        ExpiredTicketSweeper.SweepResult result = sweeper.sweep();
+
+        assertTrue(result.released() >= 4, "Все просроченные брони должны быть сняты");
+        assertEquals(TicketStatus.PAID, ticketRepository.findById(first.get(0).getId()).orElseThrow().getStatus());
+        assertEquals(TicketStatus.BOOKED, ticketRepository.findById(fresh.getId()).orElseThrow().getStatus());
+        for (Ticket ticket : List.of(first.get(1), first.get(2), secondA, secondB)) {
+            assertEquals(TicketStatus.CANCELLED, ticketRepository.findById(ticket.getId()).orElseThrow().getStatus());
+        }
+        assertEquals(4, tripRepository.findById(firstTrip.getId()).orElseThrow().getSeatsAvailable());
+        assertEquals(4, tripRepository.findById(secondTrip.getId()).orElseThrow().getSeatsAvailable());
+
+        assertEquals(0, sweeper.sweep().released(), "Повторная зачистка не должна возвращать места дважды");
+        assertEquals(4, tripRepository.findById(secondTrip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    @Test
+    void legacyTicketWithoutHold_shouldGetFullHoldInsteadOfBeingCancelled() {
+        Ticket legacy = bookingService.bookSeat(customer.getId(), firstTrip.getId(), 5);
+        Ticket stored = ticketRepository.findById(legacy.getId()).orElseThrow();
+        stored.setBookedAt(LocalDateTime.now().minusDays(2));
+        stored.setHoldExpiresAt(null);
+        ticketRepository.save(stored);
+
+        sweeper.sweep();
+        assertEquals(TicketStatus.BOOKED, ticketRepository.findById(legacy.getId()).orElseThrow().getStatus(),
+                "Билет без удержания не отменяется зачисткой");
+
+        LocalDateTime backfilledAt = LocalDateTime.now();
+        assertTrue(seatHoldExpirer.backfillLegacyHolds() >= 1);
+        Ticket backfilled = ticketRepository.findById(legacy.getId()).orElseThrow();
+        assertTrue(backfilled.getHoldExpiresAt().isAfter(backfilledAt.plusMinutes(14)),
+                "Срок удержания отсчитывается от запуска, а не от времени брони");
+
+        sweeper.sweep();
+        assertEquals(TicketStatus.BOOKED, ticketRepository.findById(legacy.getId()).orElseThrow().getStatus());
+        seatHoldExpirer.backfillLegacyHolds();
+        assertEquals(backfilled.getHoldExpiresAt(), ticketRepository.findById(legacy.getId()).orElseThrow().getHoldExpiresAt(),
+                "Повторный запуск не продлевает уже назначенное удержание");
+    }
+
+    private Trip createTrip(Route route, Train train, int daysAhead) {
+        return adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(daysAhead),
+                LocalDateTime.now().plusDays(daysAhead).plusHours(1),
+                BigDecimal.valueOf(12)
+        );
+    }
+}
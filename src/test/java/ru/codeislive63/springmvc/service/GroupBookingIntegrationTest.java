@@ -0,0 +1,99 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.web.dto.BookingRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты группового бронирования: все места или ни одного.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class GroupBookingIntegrationTest {
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRepository ticketRepository;
+
+    private UserAccount customer;
+    private Trip trip;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        Station origin = adminService.createStation("GRP1", "Станция Группы 1");
+        Station destination = adminService.createStation("GRP2", "Станция Группы 2");
+        Train train = adminService.createTrain("GROUP-TRAIN", "Поезд для групп (4 места)", 4);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 40, "Маршрут для групп");
+        trip = adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(2),
+                LocalDateTime.now().plusDays(2).plusHours(1),
+                BigDecimal.valueOf(10)
+        );
+    }
+
+    @Test
+    void bookGroup_shouldAssignRequestedAndAnySeats() {
+        List<Ticket> tickets = bookingService.bookGroup(customer.getId(), trip.getId(),
+                List.of(passenger("Пассажир 1", 3), passenger("Пассажир 2", null), passenger("Пассажир 3", null)));
+
+        assertEquals(List.of(3, 1, 2), tickets.stream().map(Ticket::getSeatNumber).toList());
+        assertEquals("Пассажир 2", tickets.get(1).getPassengerDetails().getFullName());
+        assertEquals(1, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    @Test
+    void bookGroup_whenOneSeatIsTaken_shouldBookNothing() {
+        bookingService.bookSeat(customer.getId(), trip.getId(), 2);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> bookingService.bookGroup(customer.getId(), trip.getId(),
+                        List.of(passenger("Пассажир 1", 1), passenger("Пассажир 2", 2))));
+        assertEquals("Место уже занято", ex.getMessage());
+
+        List<Integer> seats = ticketRepository.findBookedSeats(trip.getId(), List.of(TicketStatus.BOOKED, TicketStatus.PAID));
+        assertEquals(List.of(2), seats, "Частичная бронь группы не должна сохраняться");
+        assertEquals(3, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    @Test
+    void bookGroup_whenGroupExceedsFreeSeats_shouldThrow() {
+        IllegalStateException ex = assertThrows(IllegalStateException.class,
+                () -> bookingService.bookGroup(customer.getId(), trip.getId(),
+                        List.of(passenger("1", null), passenger("2", null), passenger("3", null),
+                                passenger("4", null), passenger("5", null))));
+        assertTrue(ex.getMessage().toLowerCase().contains("нет свободных мест"));
+        assertEquals(4, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    private BookingRequest passenger(String name, Integer seat) {
+        BookingRequest request = new BookingRequest();
+        request.setPassengerName(name);
+        request.setPassengerDocument("Паспорт " + name);
+        request.setSeat(seat);
+        return request;
+    }
+}
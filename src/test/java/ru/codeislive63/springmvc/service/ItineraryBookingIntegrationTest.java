@@ -0,0 +1,110 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.web.dto.BookingRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты бронирования маршрута с пересадками: билеты на все плечи или ни на одно.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ItineraryBookingIntegrationTest {
+
+    private static final List<TicketStatus> ACTIVE = List.of(TicketStatus.BOOKED, TicketStatus.PAID);
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRepository ticketRepository;
+
+    private UserAccount customer;
+    private Trip legA;
+    private Trip legB;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("IT1" + code, "Пересадка А " + code);
+        Station transfer = adminService.createStation("IT2" + code, "Пересадка Б " + code);
+        Station destination = adminService.createStation("IT3" + code, "Пересадка В " + code);
+        Train trainA = adminService.createTrain("ITA-" + code, "Поезд первого плеча", 4);
+        Train trainB = adminService.createTrain("ITB-" + code, "Поезд второго плеча", 1);
+        Route routeA = adminService.createRoute(origin.getId(), transfer.getId(), 60, "Первое плечо");
+        Route routeB = adminService.createRoute(transfer.getId(), destination.getId(), 60, "Второе плечо");
+        LocalDateTime departure = LocalDateTime.now().plusDays(2);
+        legA = adminService.createTrip(routeA.getId(), trainA.getId(), departure, departure.plusHours(1),
+                BigDecimal.valueOf(10));
+        legB = adminService.createTrip(routeB.getId(), trainB.getId(), departure.plusHours(2), departure.plusHours(3),
+                BigDecimal.valueOf(15));
+    }
+
+    @Test
+    void bookItinerary_shouldBookEveryLeg() {
+        List<Ticket> tickets = bookingService.bookItinerary(customer.getId(),
+                List.of(new BookingService.LegSeat(legA.getId(), 2), new BookingService.LegSeat(legB.getId(), 1)),
+                passenger());
+
+        assertEquals(2, tickets.size());
+        assertEquals(List.of(legA.getId(), legB.getId()), tickets.stream().map(t -> t.getTrip().getId()).toList());
+        assertEquals(List.of(2), ticketRepository.findBookedSeats(legA.getId(), ACTIVE));
+        assertEquals(3, seatsAvailable(legA));
+        assertEquals(0, seatsAvailable(legB));
+    }
+
+    @Test
+    void bookItinerary_whenSecondLegIsSoldOut_shouldRollBackFirstLeg() {
+        bookingService.bookSeat(customer.getId(), legB.getId(), 1);
+        assertEquals(0, seatsAvailable(legB));
+
+        assertThrows(IllegalStateException.class, () -> bookingService.bookItinerary(customer.getId(),
+                List.of(new BookingService.LegSeat(legA.getId(), 1), new BookingService.LegSeat(legB.getId(), 1)),
+                passenger()));
+
+        assertTrue(ticketRepository.findBookedSeats(legA.getId(), ACTIVE).isEmpty(), "Билет на первое плечо не должен остаться");
+        assertEquals(4, seatsAvailable(legA), "Счётчик мест первого плеча не должен меняться");
+        assertEquals(List.of(1), ticketRepository.findBookedSeats(legB.getId(), ACTIVE));
+    }
+
+    @Test
+    void bookItinerary_whenSeatOfSecondLegIsInvalid_shouldRollBackFirstLeg() {
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookItinerary(customer.getId(),
+                List.of(new BookingService.LegSeat(legA.getId(), 1), new BookingService.LegSeat(legB.getId(), 5)),
+                passenger()));
+
+        assertTrue(ticketRepository.findBookedSeats(legA.getId(), ACTIVE).isEmpty());
+        assertEquals(4, seatsAvailable(legA));
+        assertEquals(1, seatsAvailable(legB));
+    }
+
+    private int seatsAvailable(Trip trip) {
+        return tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable();
+    }
+
+    private static BookingRequest passenger() {
+        BookingRequest request = new BookingRequest();
+        request.setPassengerName("Пассажир пересадки");
+        return request;
+    }
+}
@@ -0,0 +1,66 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.service.analytics.ReportJob;
+import ru.codeislive63.springmvc.service.analytics.ReportJobs;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты фоновых заданий на XLSX отчёт: дедупликация по версии данных и вытеснение файлов.
+ */
+@SpringBootTest(properties = {
+        "analytics.report.jobs.max-artifacts=1",
+        "analytics.report.jobs.dir=${java.io.tmpdir}/railway-reports-test"
+})
+@ActiveProfiles("test")
+class ReportJobsIntegrationTest {
+
+    @Autowired ReportJobs reportJobs;
+    @Autowired AdminService adminService;
+
+    @Test
+    void submit_shouldReuseJobUntilDataChangesAndEvictOldArtifacts() throws Exception {
+        ReportJob first = reportJobs.submit();
+        assertSame(first, reportJobs.submit(), "Идущее задание с той же версией данных переиспользуется");
+
+        Path firstFile = first.result().get(2, TimeUnit.MINUTES);
+        assertTrue(Files.size(firstFile) > 0);
+        assertEquals(ReportJob.Status.DONE, first.status());
+        assertEquals(100, first.progress());
+        assertSame(first, reportJobs.submit(), "Готовый отчёт отдаётся без повторного построения");
+        try (InputStream in = reportJobs.artifact(first.id()).getInputStream()) {
+            assertEquals(Files.size(firstFile), in.readAllBytes().length);
+        }
+
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        Station origin = adminService.createStation("RJ1" + code, "Отчёт А " + code);
+        Station destination = adminService.createStation("RJ2" + code, "Отчёт Б " + code);
+        Train train = adminService.createTrain("RJ-" + code, "Поезд отчёта", 10);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 60, "Маршрут отчёта");
+        LocalDateTime departure = LocalDateTime.now().plusDays(1);
+        adminService.createTrip(route.getId(), train.getId(), departure, departure.plusHours(1), BigDecimal.TEN);
+
+        ReportJob second = reportJobs.submit();
+        assertNotSame(first, second, "Изменение данных требует нового отчёта");
+        Path secondFile = second.result().get(2, TimeUnit.MINUTES);
+
+        assertTrue(Files.exists(secondFile));
+        assertFalse(Files.exists(firstFile), "Сверх лимита давний файл удаляется");
+        assertTrue(reportJobs.find(first.id()).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> reportJobs.artifact(first.id()));
+    }
+}
@@ -0,0 +1,318 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.TrainType;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.repository.TrainRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.search.SearchKey;
+import ru.codeislive63.springmvc.service.search.SearchResultCache;
+import ru.codeislive63.springmvc.service.search.TrainChangedEvent;
+import ru.codeislive63.springmvc.service.search.TripChangedEvent;
+import ru.codeislive63.springmvc.web.dto.FareDay;
+import ru.codeislive63.springmvc.web.dto.ItineraryDto;
+import ru.codeislive63.springmvc.web.dto.RouteSearchRequest;
+import ru.codeislive63.springmvc.web.dto.TripLegDto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты поиска маршрутов по расписанию в памяти: пересадки, Парето-множество и обновление расписания.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class RouteSearchServiceIntegrationTest {
+
+    @Autowired RouteSearchService routeSearchService;
+    @Autowired AdminService adminService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TrainRepository trainRepository;
+    @Autowired ApplicationEventPublisher eventPublisher;
+    @Autowired SearchResultCache searchResultCache;
+    @Autowired BookingService bookingService;
+    @Autowired UserService userService;
+
+    private Station a;
+    private Station b;
+    private Station c;
+    private Station d;
+    private Train train;
+    private LocalDate date;
+
+    @BeforeEach
+    void setUp() {
+        String code = String.valueOf(System.nanoTime() % 100_000);
+        a = adminService.createStation("CA" + code, "Скан А " + code);
+        b = adminService.createStation("CB" + code, "Скан Б " + code);
+        c = adminService.createStation("CC" + code, "Скан В " + code);
+        d = adminService.createStation("CD" + code, "Скан Г " + code);
+        train = adminService.createTrain("SCAN-" + code, "Поезд сканирования", 10);
+        date = LocalDate.now().plusDays(5);
+    }
+
+    @Test
+    void search_shouldChainSeveralTransfersWithEarliestArrival() {
+        trip(a, b, 8, 0, 9, 0, 10);
+        trip(b, c, 9, 10, 10, 0, 10);   // пересадка 10 минут — меньше минимальных 20
+        trip(b, c, 9, 30, 10, 30, 10);
+        trip(b, c, 11, 0, 11, 30, 10);
+        trip(c, d, 11, 0, 12, 0, 10);
+        trip(c, d, 13, 0, 14, 0, 10);
+
+        List<ItineraryDto> found = routeSearchService.search(request(a, d));
+
+        assertEquals(1, found.size());
+        List<TripLegDto> legs = found.get(0).getLegs();
+        assertEquals(3, legs.size());
+        assertEquals(date.atTime(9, 30), legs.get(1).getDepartureTime());
+        assertEquals(date.atTime(12, 0), found.get(0).arrival());
+        assertEquals(0, BigDecimal.valueOf(30).compareTo(found.get(0).getTotalPrice()));
+    }
+
+    @Test
+    void search_shouldReturnParetoSetOverArrivalPriceAndTransfers() {
+        trip(a, b, 8, 0, 9, 0, 10);
+        trip(b, d, 9, 30, 10, 30, 40);
+        trip(a, d, 8, 0, 15, 0, 20);
+        trip(a, d, 8, 0, 16, 0, 25);   // позже и дороже прямого рейса в 15:00
+
+        List<ItineraryDto> found = routeSearchService.search(request(a, d));
+
+        assertEquals(2, found.size());
+        assertTrue(found.stream().anyMatch(it -> it.transfers() == 1 && it.arrival().equals(date.atTime(10, 30))));
+        assertTrue(found.stream().anyMatch(it -> it.transfers() == 0 && it.arrival().equals(date.atTime(15, 0))));
+    }
+
+    @Test
+    void search_shouldSeeTripChangesWithoutReload() {
+        trip(a, b, 8, 0, 9, 0, 10);
+        assertTrue(routeSearchService.search(request(a, c)).isEmpty());
+
+        Trip second = trip(b, c, 10, 0, 11, 0, 10);
+        assertEquals(1, routeSearchService.search(request(a, c)).size());
+
+        second.setDepartureTime(date.atTime(9, 5));
+        tripRepository.save(second);
+        eventPublisher.publishEvent(new TripChangedEvent(second.getId()));
+        assertTrue(routeSearchService.search(request(a, c)).isEmpty(), "Пересадка короче минимальной");
+    }
+
+    @Test
+    void search_beyondTimetableHorizon_shouldJoinSecondLegsFromDatabase() {
+        date = LocalDate.now().plusDays(400);
+        trip(a, b, 8, 0, 9, 0, 10);
+        trip(a, c, 7, 0, 12, 0, 30);
+        trip(b, c, 9, 10, 10, 0, 10);   // пересадка 10 минут — меньше минимальных 20
+        trip(b, c, 9, 30, 10, 30, 10);
+        trip(b, c, 11, 0, 11, 30, 10);
+
+        List<ItineraryDto> found = routeSearchService.search(request(a, c));
+
+        assertEquals(3, found.size());
+        assertEquals(1, found.stream().filter(it -> it.transfers() == 0).count());
+        assertTrue(found.stream()
+                .filter(it -> it.transfers() == 1)
+                .allMatch(it -> !it.getLegs().get(1).getDepartureTime().isBefore(date.atTime(9, 20))));
+    }
+
+    @Test
+    void search_repeated_shouldComeFromCacheWithLiveSeats() {
+        Trip direct = trip(a, b, 8, 0, 9, 0, 10);
+        routeSearchService.search(request(a, b));
+        assertTrue(searchResultCache.get(new SearchKey(a.getId(), b.getId(), date)).isPresent());
+
+        bookingService.bookTicket(userService.getByEmail("customer@example.com").getId(), direct.getId());
+
+        List<ItineraryDto> found = routeSearchService.search(request(a, b));
+        assertEquals(9, found.get(0).getLegs().get(0).getSeatsAvailable());
+    }
+
+    @Test
+    void tripChange_shouldEvictOnlySearchesOfAffectedDates() {
+        trip(a, b, 8, 0, 9, 0, 10);
+        routeSearchService.search(request(a, b));
+        SearchKey key = new SearchKey(a.getId(), b.getId(), date);
+
+        LocalDate searched = date;
+        date = searched.plusDays(3);
+        trip(a, b, 8, 0, 9, 0, 10);
+        assertTrue(searchResultCache.get(key).isPresent(), "Рейс другой даты не влияет на поиск");
+
+        date = searched;
+        trip(a, b, 12, 0, 13, 0, 10);
+        assertTrue(searchResultCache.get(key).isEmpty());
+        assertEquals(2, routeSearchService.search(request(a, b)).size());
+    }
+
+    @Test
+    void search_withFilters_shouldPruneCandidatesInTimetableAndDatabase() {
+        Train regional = adminService.createTrain(train.getCode() + "-R", "Региональный поезд", 10,
+                TrainType.REGIONAL, TrainClass.ECONOMY, false, false, false);
+        Train express = train;
+
+        for (LocalDate searched : List.of(LocalDate.now().plusDays(5), LocalDate.now().plusDays(400))) {
+            date = searched;
+            trip(a, b, 8, 0, 9, 0, 10);
+            trip(b, c, 9, 30, 10, 30, 30);
+            trip(a, c, 7, 0, 12, 0, 30);
+            train = regional;
+            trip(a, c, 6, 0, 13, 0, 5);
+            train = express;
+
+            RouteSearchRequest cheap = request(a, c);
+            cheap.setMaxPrice(BigDecimal.valueOf(35));
+            cheap.setTrainType(TrainType.EXPRESS);
+            List<ItineraryDto> found = routeSearchService.search(cheap);
+            assertEquals(1, found.size(), "Пересадка дороже лимита, региональный поезд не подходит: " + searched);
+            assertEquals(date.atTime(12, 0), found.get(0).arrival());
+
+            RouteSearchRequest early = request(a, c);
+            early.setArrivalTo(LocalTime.of(11, 0));
+            found = routeSearchService.search(early);
+            assertEquals(1, found.size(), "Успевает только поездка с пересадкой: " + searched);
+            assertEquals(1, found.get(0).transfers());
+
+            RouteSearchRequest late = request(a, c);
+            late.setDepartureFrom(LocalTime.of(7, 30));
+            found = routeSearchService.search(late);
+            assertEquals(1, found.size(), "Рейсы до 07:30 отсечены: " + searched);
+            assertEquals(date.atTime(8, 0), found.get(0).departure());
+        }
+    }
+
+    @Test
+    void search_byTrainType_shouldNotDependOnCachedParetoSet() {
+        Train regional = adminService.createTrain(train.getCode() + "-R", "Региональный поезд", 10,
+                TrainType.REGIONAL, TrainClass.ECONOMY, false, false, false);
+        trip(a, b, 8, 0, 10, 0, 20);
+        train = regional;
+        trip(a, b, 8, 0, 11, 0, 25);   // экспресс приходит раньше и стоит дешевле
+        RouteSearchRequest byType = request(a, b);
+        byType.setTrainType(TrainType.REGIONAL);
+        SearchKey key = new SearchKey(a.getId(), b.getId(), date);
+
+        assertTrue(searchResultCache.get(key).isEmpty());
+        List<ItineraryDto> cold = routeSearchService.search(byType);
+
+        assertEquals(1, routeSearchService.search(request(a, b)).size(), "Региональный рейс вытеснен из Парето-множества");
+        assertTrue(searchResultCache.get(key).isPresent());
+        List<ItineraryDto> warm = routeSearchService.search(byType);
+
+        assertEquals(1, cold.size());
+        assertEquals(date.atTime(11, 0), cold.get(0).arrival());
+        assertEquals(cold.size(), warm.size(), "Результат не зависит от состояния кэша");
+        assertEquals(cold.get(0).arrival(), warm.get(0).arrival());
+    }
+
+    @Test
+    void search_byArrivalTime_shouldKeepNightTripDominatedByEveningOne() {
+        Route route = adminService.createRoute(a.getId(), b.getId(), 50, a.getName() + " — " + b.getName());
+        adminService.createTrip(route.getId(), train.getId(), date.atTime(20, 0), date.plusDays(1).atTime(1, 0),
+                BigDecimal.valueOf(20));
+        trip(a, b, 20, 30, 23, 30, 10);   // вечерний рейс позже уходит, раньше приходит и дешевле
+        RouteSearchRequest byNight = request(a, b);
+        byNight.setArrivalTo(LocalTime.of(2, 0));
+        SearchKey key = new SearchKey(a.getId(), b.getId(), date);
+
+        assertTrue(searchResultCache.get(key).isEmpty());
+        List<ItineraryDto> cold = routeSearchService.search(byNight);
+
+        assertEquals(1, routeSearchService.search(request(a, b)).size(), "Ночной рейс вытеснен из Парето-множества");
+        assertTrue(searchResultCache.get(key).isPresent());
+        List<ItineraryDto> warm = routeSearchService.search(byNight);
+
+        assertEquals(1, cold.size(), "Прибытие в 23:30 позже 02:00");
+        assertEquals(date.plusDays(1).atTime(1, 0), cold.get(0).arrival());
+        assertEquals(cold.size(), warm.size(), "Результат не зависит от состояния кэша");
+        assertEquals(cold.get(0).arrival(), warm.get(0).arrival());
+    }
+
+    @Test
+    void search_shouldFillLegsFromProjectionWithRouteStops() {
+        Route route = adminService.createRoute(a.getId(), b.getId(), 120, "С остановками",
+                List.of("Тверь", "Клин", "Бологое"));
+        for (LocalDate searched : List.of(LocalDate.now().plusDays(5), LocalDate.now().plusDays(400))) {
+            date = searched;
+            adminService.createTrip(route.getId(), train.getId(),
+                    date.atTime(8, 0), date.atTime(10, 15), BigDecimal.valueOf(12));
+
+            List<ItineraryDto> found = routeSearchService.search(request(a, b));
+
+            assertEquals(1, found.size());
+            TripLegDto leg = found.get(0).getLegs().get(0);
+            assertEquals(List.of("Тверь", "Клин", "Бологое"), leg.getStops());
+            assertEquals(a.getName(), leg.getFromName());
+            assertEquals(train.getName(), leg.getTrainName());
+            assertEquals(10, leg.getSeatsAvailable());
+            assertEquals("2 ч 15 мин", found.get(0).getTotalDurationText());
+        }
+    }
+
+    @Test
+    void trainChange_shouldRefreshTimetableAndCachedResults() {
+        trip(a, b, 8, 0, 9, 0, 10);
+        RouteSearchRequest regional = request(a, b);
+        regional.setTrainType(TrainType.REGIONAL);
+        assertEquals(1, routeSearchService.search(request(a, b)).size());
+        assertTrue(routeSearchService.search(regional).isEmpty());
+
+        train.setType(TrainType.REGIONAL);
+        train.setName("Переименованный поезд");
+        trainRepository.save(train);
+        eventPublisher.publishEvent(new TrainChangedEvent(train.getId()));
+
+        assertEquals("Переименованный поезд",
+                routeSearchService.search(request(a, b)).get(0).getLegs().get(0).getTrainName());
+        assertEquals(1, routeSearchService.search(regional).size());
+    }
+
+    @Test
+    void fareCalendar_shouldReturnCheapestAndFastestPerDay() {
+        LocalDate searched = date;
+        trip(a, b, 8, 0, 9, 0, 10);
+        trip(b, c, 9, 30, 10, 30, 10);   // 20 за 2 ч 30 мин
+        trip(a, c, 7, 0, 9, 0, 35);      // 35 за 2 ч
+        date = searched.plusDays(1);
+        trip(a, c, 7, 0, 12, 0, 15);
+
+        List<FareDay> calendar = routeSearchService.fareCalendar(a.getId(), c.getId(), searched, 1);
+
+        assertEquals(List.of(searched.minusDays(1), searched, searched.plusDays(1)),
+                calendar.stream().map(FareDay::date).toList());
+        assertNull(calendar.get(0).minPrice());
+        assertEquals(0, BigDecimal.valueOf(20).compareTo(calendar.get(1).minPrice()));
+        assertEquals(120L, calendar.get(1).fastestMinutes());
+        assertEquals(0, BigDecimal.valueOf(15).compareTo(calendar.get(2).minPrice()));
+        assertEquals("5 ч", calendar.get(2).fastestText());
+    }
+
+    private Trip trip(Station from, Station to, int depHour, int depMinute, int arrHour, int arrMinute, int price) {
+        Route route = adminService.createRoute(from.getId(), to.getId(), 50, from.getName() + " — " + to.getName());
+        LocalDateTime departure = date.atTime(depHour, depMinute);
+        LocalDateTime arrival = date.atTime(arrHour, arrMinute);
+        return adminService.createTrip(route.getId(), train.getId(), departure, arrival, BigDecimal.valueOf(price));
+    }
+
+    private RouteSearchRequest request(Station from, Station to) {
+        RouteSearchRequest request = new RouteSearchRequest();
+        request.setFromPointId(from.getId());
+        request.setToPointId(to.getId());
+        request.setDepartureDate(date);
+        return request;
+    }
+}
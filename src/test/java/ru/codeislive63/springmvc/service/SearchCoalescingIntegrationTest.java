@@ -0,0 +1,114 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.service.search.SearchCoalescer;
+import ru.codeislive63.springmvc.service.search.SearchKey;
+import ru.codeislive63.springmvc.web.dto.ItineraryDto;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты склейки одновременных одинаковых поисков.
+ */
+@SpringBootTest(properties = "route.search.coalesce-timeout=300ms")
+@ActiveProfiles("test")
+class SearchCoalescingIntegrationTest {
+
+    @Autowired SearchCoalescer searchCoalescer;
+
+    @Test
+    void concurrentIdenticalSearches_shouldShareOneComputation() throws Exception {
+        SearchKey key = new SearchKey(1L, 2L, LocalDate.now().plusDays(1));
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<ItineraryDto> result = List.of();
+
+        ExecutorService pool = Executors.newFixedThreadPool(20);
+        try {
+            List<Future<List<ItineraryDto>>> searches = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                searches.add(pool.submit(() -> searchCoalescer.execute(key, () -> {
+                    computations.incrementAndGet();
+                    await(release);
+                    return result;
+                })));
+            }
+            waitUntilAllAttached(key);
+            release.countDown();
+            for (Future<List<ItineraryDto>> search : searches) {
+                assertSame(result, search.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, computations.get());
+        assertEquals(0, searchCoalescer.inFlight());
+    }
+
+    @Test
+    void waiterTimeout_shouldNotAffectLeaderOrOtherWaiters() throws Exception {
+        SearchKey key = new SearchKey(3L, 4L, LocalDate.now().plusDays(1));
+        CountDownLatch release = new CountDownLatch(1);
+        List<ItineraryDto> result = List.of();
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<ItineraryDto>> leader = pool.submit(() -> searchCoalescer.execute(key, () -> {
+                await(release);
+                return result;
+            }));
+            waitUntilAllAttached(key);
+
+            IllegalStateException timeout = assertThrows(IllegalStateException.class,
+                    () -> searchCoalescer.execute(key, List::of));
+            assertTrue(timeout.getMessage().contains("слишком долго"));
+
+            Future<List<ItineraryDto>> follower = pool.submit(() -> searchCoalescer.execute(key, List::of));
+            release.countDown();
+            assertSame(result, leader.get(5, TimeUnit.SECONDS));
+            assertSame(result, follower.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedComputation_shouldNotBeRemembered() {
+        SearchKey key = new SearchKey(5L, 6L, LocalDate.now().plusDays(1));
+
+        assertThrows(IllegalArgumentException.class, () -> searchCoalescer.execute(key, () -> {
+            throw new IllegalArgumentException("Станция не найдена");
+        }));
+
+        assertEquals(List.of(), searchCoalescer.execute(key, List::of));
+    }
+
+    private void waitUntilAllAttached(SearchKey key) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (searchCoalescer.inFlight() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.service.booking.SeatHoldExpirer;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты удержания мест: неоплаченная бронь снимается по истечении срока,
+ * оплаченная — остаётся.
+ */
+@SpringBootTest(properties = {"booking.hold.ttl=1s", "booking.hold.tick=100ms", "booking.hold.wheel-size=8"})
+@ActiveProfiles("test")
+class SeatHoldExpiryIntegrationTest {
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRepository ticketRepository;
+    @Autowired SeatHoldExpirer seatHoldExpirer;
+
+    private UserAccount customer;
+    private Trip trip;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        Station origin = adminService.createStation("HLD1", "Станция Удержания 1");
+        Station destination = adminService.createStation("HLD2", "Станция Удержания 2");
+        Train train = adminService.createTrain("HOLD-TRAIN", "Поезд для удержаний (3 места)", 3);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 30, "Маршрут удержаний");
+        trip = adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(1),
+                LocalDateTime.now().plusDays(1).plusHours(1),
+                BigDecimal.valueOf(15)
+        );
+    }
+
+    @Test
+    void unpaidHold_shouldExpireAndReturnSeat() throws Exception {
+        Ticket unpaid = bookingService.bookSeat(customer.getId(), trip.getId(), 1);
+        Ticket paid = bookingService.bookSeat(customer.getId(), trip.getId(), 2);
+        bookingService.payTicket(paid.getId());
+        assertEquals(1, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (ticketRepository.findById(unpaid.getId()).orElseThrow().getStatus() == TicketStatus.BOOKED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        Ticket expired = ticketRepository.findById(unpaid.getId()).orElseThrow();
+        assertEquals(TicketStatus.CANCELLED, expired.getStatus());
+        assertNull(expired.getActiveSeat());
+        assertEquals(TicketStatus.PAID, ticketRepository.findById(paid.getId()).orElseThrow().getStatus());
+        assertEquals(2, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> bookingService.payTicket(unpaid.getId()));
+        assertEquals("Бронь истекла или билет уже оплачен", ex.getMessage());
+        assertEquals(1, bookingService.bookSeat(customer.getId(), trip.getId(), 1).getSeatNumber());
+    }
+
+    @Test
+    void payment_shouldEndHoldOnWheelAndBeRejectedOnceHoldRanOut() {
+        int pendingBefore = seatHoldExpirer.pendingHolds();
+        Ticket paid = bookingService.bookSeat(customer.getId(), trip.getId(), 1);
+        Ticket late = bookingService.bookSeat(customer.getId(), trip.getId(), 2);
+        assertEquals(pendingBefore + 2, seatHoldExpirer.pendingHolds());
+
+        bookingService.payTicket(paid.getId());
+        assertEquals(pendingBefore + 1, seatHoldExpirer.pendingHolds(), "Оплаченная бронь убирается из колеса");
+
+        Ticket stored = ticketRepository.findById(late.getId()).orElseThrow();
+        stored.setHoldExpiresAt(LocalDateTime.now().minusSeconds(1));
+        ticketRepository.save(stored);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> bookingService.payTicket(late.getId()));
+        assertEquals("Бронь истекла или билет уже оплачен", ex.getMessage());
+        assertNotEquals(TicketStatus.PAID, ticketRepository.findById(late.getId()).orElseThrow().getStatus(),
+                "Оплата не продлевает истёкшую бронь, даже если её ещё не сняли");
+    }
+}
@@ -0,0 +1,116 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.projection.BookedInterval;
+import ru.codeislive63.springmvc.service.booking.SegmentInventory;
+import ru.codeislive63.springmvc.web.dto.BookingRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты продажи места на части маршрута: одно место на непересекающихся участках.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SegmentBookingIntegrationTest {
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TransactionTemplate transactionTemplate;
+
+    private UserAccount customer;
+    private Trip trip;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        Station origin = adminService.createStation("SEG1", "Станция Участков 1");
+        Station destination = adminService.createStation("SEG2", "Станция Участков 2");
+        Train train = adminService.createTrain("SEG-TRAIN", "Поезд для участков (1 место)", 1);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 300, "Маршрут с остановками",
+                List.of("Остановка А", "Остановка Б"));
+        trip = adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(4),
+                LocalDateTime.now().plusDays(4).plusHours(5),
+                BigDecimal.valueOf(30)
+        );
+    }
+
+    @Test
+    void seat_shouldBeSoldOnDisjointSegments() {
+        Ticket first = bookingService.bookSeat(customer.getId(), trip.getId(), 1, segment(0, 1));
+        Ticket second = bookingService.bookSeat(customer.getId(), trip.getId(), 1, segment(1, 3));
+
+        assertEquals(Integer.valueOf(0), first.getBoardStop());
+        assertNull(first.getActiveSeat());
+        assertEquals(0, new BigDecimal("10.00").compareTo(first.getPrice()), "Цена берётся пропорционально участкам");
+        assertEquals(0, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+
+        IllegalStateException overlap = assertThrows(IllegalStateException.class,
+                () -> bookingService.bookSeat(customer.getId(), trip.getId(), 1, segment(0, 2)));
+        assertEquals("Место уже занято", overlap.getMessage());
+        assertThrows(IllegalStateException.class, () -> bookingService.bookSeat(customer.getId(), trip.getId(), 1));
+
+        bookingService.cancel(first.getId(), customer.getId());
+        assertEquals(0, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable(),
+                "Место остаётся занятым на втором участке");
+
+        Ticket again = bookingService.bookSeat(customer.getId(), trip.getId(), 1, segment(0, 1));
+        assertEquals(TicketStatus.BOOKED, again.getStatus());
+
+        bookingService.cancel(again.getId(), customer.getId());
+        bookingService.cancel(second.getId(), customer.getId());
+        assertEquals(1, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    @Test
+    void stopNames_shouldKeepRouteOrder() {
+        List<String> stops = transactionTemplate.execute(status ->
+                bookingService.stopNames(tripRepository.findById(trip.getId()).orElseThrow()));
+
+        assertEquals(List.of("Станция Участков 1", "Остановка А", "Остановка Б", "Станция Участков 2"), stops);
+    }
+
+    @Test
+    void bookItinerary_withPartOfRoute_shouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> bookingService.bookItinerary(customer.getId(),
+                List.of(new BookingService.LegSeat(trip.getId(), 1)), segment(0, 1)));
+
+        assertEquals(1, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    @Test
+    void segmentInventory_whenIntervalDoesNotFitRoute_shouldFail() {
+        assertThrows(IllegalStateException.class,
+                () -> SegmentInventory.of(1, 3, List.of(new BookedInterval(1, 2, 4))));
+    }
+
+    private BookingRequest segment(int boardStop, int alightStop) {
+        BookingRequest request = new BookingRequest();
+        request.setBoardStop(boardStop);
+        request.setAlightStop(alightStop);
+        return request;
+    }
+}
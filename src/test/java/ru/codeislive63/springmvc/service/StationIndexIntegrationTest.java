@@ -0,0 +1,85 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.repository.StationRepository;
+import ru.codeislive63.springmvc.service.search.StationIndex;
+import ru.codeislive63.springmvc.web.dto.StationSuggestion;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты индекса подсказок станций: транслитерация, подстроки, популярность и перестройка.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class StationIndexIntegrationTest {
+
+    @Autowired StationIndex stationIndex;
+    @Autowired AdminService adminService;
+    @Autowired BookingService bookingService;
+    @Autowired UserService userService;
+    @Autowired StationRepository stationRepository;
+
+    private String code;
+
+    @BeforeEach
+    void setUp() {
+        code = String.valueOf(System.nanoTime() % 100_000);
+    }
+
+    @Test
+    void suggest_shouldMatchAcrossCaseAndAlphabet() {
+        Station station = adminService.createStation("ZH" + code, "Жодино-Южное " + code);
+
+        assertTrue(names(stationIndex.suggest("жоди")).contains(station.getName()));
+        assertTrue(names(stationIndex.suggest("ZHODINO")).contains(station.getName()));
+        assertTrue(names(stationIndex.suggest("южн")).contains(station.getName()), "Начало второго слова");
+        assertTrue(names(stationIndex.suggest("odino-yu")).contains(station.getName()), "Подстрока");
+        assertTrue(names(stationIndex.suggest("zh" + code)).contains(station.getName()), "Код станции");
+        assertTrue(stationIndex.suggest("   ").isEmpty());
+    }
+
+    @Test
+    void suggest_shouldRankByMatchAndPopularity() {
+        Station quiet = adminService.createStation("IV1" + code, "Ивацевичи " + code);
+        Station busy = adminService.createStation("IV2" + code, "Ивацевичи-Товарная " + code);
+        Station other = adminService.createStation("IV3" + code, "Станция у Ивацевичей " + code);
+        Train train = adminService.createTrain("IVA-" + code, "Поезд Ивацевичи", 5);
+        Route route = adminService.createRoute(busy.getId(), other.getId(), 30, "Ивацевичи — окрестности");
+        Trip trip = adminService.createTrip(route.getId(), train.getId(),
+                LocalDateTime.now().plusDays(3), LocalDateTime.now().plusDays(3).plusHours(1), BigDecimal.TEN);
+        bookingService.bookTicket(userService.getByEmail("customer@example.com").getId(), trip.getId());
+        stationIndex.rebuild();
+
+        List<String> found = names(stationIndex.suggest("ivatsevich"));
+
+        assertEquals(List.of(busy.getName(), quiet.getName(), other.getName()), found);
+    }
+
+    @Test
+    void stationChanges_shouldRebuildIndex() {
+        Station station = adminService.createStation("LD" + code, "Лида-Новая " + code);
+        assertEquals(1, stationIndex.suggest("lida-novaya " + code).size());
+
+        stationRepository.deleteById(station.getId());
+        adminService.createStation("LE" + code, "Лельчицы " + code);
+
+        assertTrue(stationIndex.suggest("lida-novaya " + code).isEmpty());
+    }
+
+    private static List<String> names(List<StationSuggestion> suggestions) {
+        return suggestions.stream().map(StationSuggestion::name).toList();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.codeislive63.springmvc.domain.CarLayout;
+import ru.codeislive63.springmvc.domain.SeatAttribute;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.TrainClass;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.web.dto.SeatView;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты многовагонного поезда: сквозная нумерация мест и схема по вагонам.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class TrainLayoutIntegrationTest {
+
+    @Autowired BookingService bookingService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+
+    private UserAccount customer;
+    private Train train;
+    private Trip trip;
+
+    @BeforeEach
+    void setUp() {
+        customer = userService.getByEmail("customer@example.com");
+
+        Station origin = adminService.createStation("CAR1", "Станция Вагонов 1");
+        Station destination = adminService.createStation("CAR2", "Станция Вагонов 2");
+        train = adminService.createTrain("LONG-TRAIN", "Длинный поезд", 0);
+        if (train.getSeatCapacity() == 0) {
+            adminService.addCar(train.getId(), TrainClass.BUSINESS, CarLayout.SLEEPER, 18);
+            for (int i = 0; i < 12; i++) {
+                adminService.addCar(train.getId(), TrainClass.ECONOMY, CarLayout.OPEN_BERTH, 54);
+            }
+        }
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 900, "Дальний маршрут");
+        trip = adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(5),
+                LocalDateTime.now().plusDays(5).plusHours(14),
+                BigDecimal.valueOf(50)
+        );
+    }
+
+    @Test
+    void longTrain_shouldSellEverySeatAndRenderPerCar() {
+        assertEquals(666, trip.getSeatsAvailable(), "Вместимость не должна обрезаться до 50 мест");
+
+        bookingService.bookSeat(customer.getId(), trip.getId(), 640);
+        bookingService.bookSeat(customer.getId(), trip.getId(), 1);
+
+        List<SeatView> cars = bookingService.seatMap(trip.getId());
+        assertEquals(13, cars.size());
+
+        SeatView sleeper = cars.get(0);
+        assertEquals(1, sleeper.firstSeat());
+        assertEquals(17, sleeper.freeCount());
+        assertFalse(sleeper.isFree(1));
+
+        SeatView last = cars.get(12);
+        assertEquals(13, last.carNumber());
+        assertEquals(613, last.firstSeat());
+        assertEquals(666, last.lastSeat());
+        assertEquals(CarLayout.OPEN_BERTH, last.layout());
+        assertFalse(last.isFree(640));
+        assertEquals('1', last.occupancyMask().charAt(640 - 613));
+        assertEquals(SeatAttribute.SIDE_LOWER, last.layout().attributeOf(5));
+
+        assertEquals(664, bookingService.availableSeats(trip.getId()).size());
+    }
+
+    @Test
+    void addCar_whenTrainHasTrips_shouldBeRejected() {
+        assertThrows(IllegalStateException.class,
+                () -> adminService.addCar(train.getId(), TrainClass.ECONOMY, CarLayout.SEATED_2_2, 60));
+    }
+
+    @Test
+    void recountUndercountedTrips_shouldLiftCounterCappedAtFiftySeats() {
+        bookingService.bookSeat(customer.getId(), trip.getId(), 100);
+        Trip capped = tripRepository.findById(trip.getId()).orElseThrow();
+        capped.setSeatsAvailable(49);
+        tripRepository.save(capped);
+
+        assertTrue(adminService.recountUndercountedTrips() >= 1);
+
+        int booked = bookingService.seatMap(trip.getId()).stream().mapToInt(car -> car.seatCount() - car.freeCount()).sum();
+        assertEquals(666 - booked, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+        assertFalse(tripRepository.findUndercountedTripIds(List.of(TicketStatus.BOOKED, TicketStatus.PAID)).contains(trip.getId()),
+                "После пересчёта рейс не считается недосчитанным");
+    }
+}
@@ -0,0 +1,168 @@
+package ru.codeislive63.springmvc.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+import ru.codeislive63.springmvc.domain.RoleType;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.WaitlistStatus;
+import ru.codeislive63.springmvc.domain.entity.Route;
+import ru.codeislive63.springmvc.domain.entity.Station;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Train;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.domain.entity.UserAccount;
+import ru.codeislive63.springmvc.domain.entity.UserNotification;
+import ru.codeislive63.springmvc.domain.entity.WaitlistEntry;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+import ru.codeislive63.springmvc.repository.TripRepository;
+import ru.codeislive63.springmvc.repository.WaitlistEntryRepository;
+import ru.codeislive63.springmvc.service.booking.SeatsReleasedEvent;
+import ru.codeislive63.springmvc.web.dto.BookingRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Интеграционные тесты листа ожидания: освободившееся место достаётся первой заявке в очереди.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@RecordApplicationEvents
+class WaitlistIntegrationTest {
+
+    @Autowired BookingService bookingService;
+    @Autowired WaitlistService waitlistService;
+    @Autowired NotificationService notificationService;
+    @Autowired AdminService adminService;
+    @Autowired UserService userService;
+    @Autowired TripRepository tripRepository;
+    @Autowired TicketRepository ticketRepository;
+    @Autowired WaitlistEntryRepository waitlistRepository;
+    @Autowired ApplicationEvents events;
+
+    private UserAccount holder;
+    private UserAccount first;
+    private UserAccount second;
+    private Trip trip;
+
+    @BeforeEach
+    void setUp() {
+        String suffix = String.valueOf(System.nanoTime());
+        holder = userService.register("holder" + suffix + "@example.com", "secret", "Держатель", RoleType.CUSTOMER);
+        first = userService.register("first" + suffix + "@example.com", "secret", "Первый", RoleType.CUSTOMER);
+        second = userService.register("second" + suffix + "@example.com", "secret", "Второй", RoleType.CUSTOMER);
+
+        String code = suffix.substring(suffix.length() - 6);
+        Station origin = adminService.createStation("W" + code, "Станция ожидания А " + code);
+        Station destination = adminService.createStation("V" + code, "Станция ожидания Б " + code);
+        Train train = adminService.createTrain("WAIT-" + code, "Поезд на одно место", 1);
+        Route route = adminService.createRoute(origin.getId(), destination.getId(), 30, "Маршрут ожидания");
+        trip = adminService.createTrip(
+                route.getId(),
+                train.getId(),
+                LocalDateTime.now().plusDays(3),
+                LocalDateTime.now().plusDays(3).plusHours(1),
+                BigDecimal.valueOf(10)
+        );
+    }
+
+    @Test
+    void cancel_shouldHandSeatToFirstWaitingUser() {
+        Ticket held = bookingService.bookTicket(holder.getId(), trip.getId());
+        WaitlistEntry firstEntry = waitlistService.join(first.getId(), trip.getId());
+        waitlistService.join(second.getId(), trip.getId());
+        assertEquals(2, waitlistService.waitingCount(trip.getId()));
+
+        bookingService.cancel(held.getId(), holder.getId());
+
+        List<Ticket> allocated = bookingService.myTickets(first.getId());
+        assertEquals(1, allocated.size());
+        assertEquals(TicketStatus.BOOKED, allocated.get(0).getStatus());
+        assertEquals(1, allocated.get(0).getSeatNumber());
+        assertNotNull(allocated.get(0).getHoldExpiresAt());
+        assertTrue(bookingService.myTickets(second.getId()).isEmpty());
+
+        WaitlistEntry entry = waitlistRepository.findById(firstEntry.getId()).orElseThrow();
+        assertEquals(WaitlistStatus.ALLOCATED, entry.getStatus());
+        assertEquals(0, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+        assertEquals(1, waitlistService.waitingCount(trip.getId()));
+
+        List<UserNotification> feed = notificationService.feed(first.getId());
+        assertEquals(1, feed.size());
+        assertTrue(feed.get(0).getMessage().contains("место 1"));
+        assertEquals(1, notificationService.unreadCount(first.getId()));
+    }
+
+    @Test
+    void cancel_shouldServeEntryAcceptedByAnotherNode() {
+        Ticket held = bookingService.bookTicket(holder.getId(), trip.getId());
+        WaitlistEntry remote = new WaitlistEntry();
+        remote.setUser(first);
+        remote.setTrip(tripRepository.findById(trip.getId()).orElseThrow());
+        remote.setCreatedAt(LocalDateTime.now());
+        waitlistRepository.save(remote);
+
+        bookingService.cancel(held.getId(), holder.getId());
+
+        assertEquals(WaitlistStatus.ALLOCATED, waitlistRepository.findById(remote.getId()).orElseThrow().getStatus(),
+                "Место достаётся заявке, даже если её принял другой узел");
+        assertEquals(1, bookingService.myTickets(first.getId()).size());
+        assertEquals(0, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+    }
+
+    @Test
+    void cancel_withoutWaitlist_shouldReturnSeatToSale() {
+        Ticket held = bookingService.bookTicket(holder.getId(), trip.getId());
+        WaitlistEntry entry = waitlistService.join(first.getId(), trip.getId());
+        waitlistService.leave(first.getId(), entry.getId());
+
+        bookingService.cancel(held.getId(), holder.getId());
+
+        assertEquals(1, tripRepository.findById(trip.getId()).orElseThrow().getSeatsAvailable());
+        assertTrue(bookingService.myTickets(first.getId()).isEmpty());
+        assertEquals(0, waitlistService.waitingCount(trip.getId()));
+    }
+
+    @Test
+    void cancel_ofPartTicket_shouldReleaseOnlySeatsFreedOnWholeTrip() {
+        Route route = adminService.createRoute(trip.getRoute().getDestination().getId(),
+                trip.getRoute().getOrigin().getId(), 30, "Обратный маршрут с остановкой", List.of("Остановка"));
+        Trip stopping = adminService.createTrip(route.getId(), trip.getTrain().getId(),
+                LocalDateTime.now().plusDays(3), LocalDateTime.now().plusDays(3).plusHours(1), BigDecimal.valueOf(10));
+        Ticket firstPart = bookingService.bookSeat(holder.getId(), stopping.getId(), 1, segment(0, 1));
+        Ticket secondPart = bookingService.bookSeat(holder.getId(), stopping.getId(), 1, segment(1, 2));
+
+        bookingService.cancel(firstPart.getId(), holder.getId());
+        assertEquals(0, events.stream(SeatsReleasedEvent.class).count(), "Место ещё занято на втором участке");
+
+        bookingService.cancel(secondPart.getId(), holder.getId());
+        assertEquals(List.of(new SeatsReleasedEvent(stopping.getId(), 1)),
+                events.stream(SeatsReleasedEvent.class).toList());
+    }
+
+    @Test
+    void join_shouldRejectTripsWithFreeSeatsAndDuplicates() {
+        IllegalStateException free = assertThrows(IllegalStateException.class,
+                () -> waitlistService.join(first.getId(), trip.getId()));
+        assertTrue(free.getMessage().contains("есть свободные места"));
+
+        bookingService.bookTicket(holder.getId(), trip.getId());
+        waitlistService.join(first.getId(), trip.getId());
+        assertThrows(IllegalStateException.class, () -> waitlistService.join(first.getId(), trip.getId()));
+    }
+
+    private static BookingRequest segment(int boardStop, int alightStop) {
+        BookingRequest request = new BookingRequest();
+        request.setBoardStop(boardStop);
+        request.setAlightStop(alightStop);
+        return request;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.codeislive63.springmvc.service.analytics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import ru.codeislive63.springmvc.service.AnalyticsService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты хранения файлов отчётов: неудавшееся задание не вытесняет готовый файл, скачиваемый файл не удаляется.
+ */
+class ReportJobsTest {
+
+    private final AnalyticsService analyticsService = mock(AnalyticsService.class);
+    private final TicketRollups ticketRollups = mock(TicketRollups.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failedJob_shouldNotEvictFinishedArtifact() throws Exception {
+        ReportJobs reportJobs = reportJobs();
+        doAnswer(invocation -> writeBytes(invocation.getArgument(0)))
+                .doThrow(new IOException("disk full"))
+                .doAnswer(invocation -> writeBytes(invocation.getArgument(0)))
+                .when(analyticsService).writeReport(any(), any());
+
+        ReportJob done = reportJobs.submit();
+        Path file = done.result().get(10, TimeUnit.SECONDS);
+
+        when(ticketRollups.version()).thenReturn(1L);
+        ReportJob failed = reportJobs.submit();
+        assertThrows(ExecutionException.class, () -> failed.result().get(10, TimeUnit.SECONDS));
+
+        assertEquals(ReportJob.Status.FAILED, reportJobs.find(failed.id()).orElseThrow().status(),
+                "Состояние неудавшегося задания доступно для опроса");
+        assertTrue(Files.exists(file), "Неудавшееся задание не занимает место готового файла");
+        assertTrue(reportJobs.find(done.id()).isPresent());
+
+        ReportJob retry = reportJobs.submit();
+        assertNotSame(failed, retry, "Неудавшееся задание не переиспользуется");
+        retry.result().get(10, TimeUnit.SECONDS);
+        assertFalse(Files.exists(file), "Вытесняет только готовый отчёт");
+    }
+
+    @Test
+    void artifact_shouldStayOnDiskUntilDownloadIsClosed() throws Exception {
+        ReportJobs reportJobs = reportJobs();
+        doAnswer(invocation -> writeBytes(invocation.getArgument(0)))
+                .when(analyticsService).writeReport(any(), any());
+
+        ReportJob first = reportJobs.submit();
+        Path file = first.result().get(10, TimeUnit.SECONDS);
+        Resource download = reportJobs.artifact(first.id());
+        assertEquals(3, download.contentLength());
+
+        when(ticketRollups.version()).thenReturn(1L);
+        reportJobs.submit().result().get(10, TimeUnit.SECONDS);
+        assertTrue(reportJobs.find(first.id()).isEmpty(), "Задание вытеснено");
+        assertTrue(Files.exists(file), "Файл не удаляется, пока его отдают");
+        assertThrows(IllegalArgumentException.class, () -> reportJobs.artifact(first.id()));
+
+        try (InputStream in = download.getInputStream()) {
+            assertArrayEquals(new byte[]{1, 2, 3}, in.readAllBytes());
+        }
+        assertFalse(Files.exists(file), "После отдачи вытесненный файл удаляется");
+    }
+
+    private ReportJobs reportJobs() throws IOException {
+        return new ReportJobs(analyticsService, ticketRollups, directory, 1, 4, 1, new SimpleMeterRegistry());
+    }
+
+    private static Void writeBytes(OutputStream out) throws IOException {
+        out.write(new byte[]{1, 2, 3});
+        return null;
+    }
+}
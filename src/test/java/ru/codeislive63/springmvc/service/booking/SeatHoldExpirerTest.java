@@ -0,0 +1,70 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import ru.codeislive63.springmvc.domain.TicketStatus;
+import ru.codeislive63.springmvc.domain.entity.Ticket;
+import ru.codeislive63.springmvc.domain.entity.Trip;
+import ru.codeislive63.springmvc.repository.TicketRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тесты снятия удержаний колесом: неудачная транзакция повторяется позже, закрытая бронь убирается из колеса.
+ */
+class SeatHoldExpirerTest {
+
+    private final SeatHoldReleaser releaser = mock(SeatHoldReleaser.class);
+    private final SeatHoldExpirer expirer = new SeatHoldExpirer(mock(TicketRepository.class), releaser,
+            Duration.ofMinutes(15), Duration.ofMillis(10), 8, Duration.ofMillis(200), new SimpleMeterRegistry());
+
+    @Test
+    void expireDue_whenReleaseFails_shouldRetryHoldsOnLaterTick() throws Exception {
+        when(releaser.releaseExpired(any(), any()))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(1);
+        expirer.schedule(List.of(heldTicket(1L, 7L, LocalDateTime.now().plusNanos(20_000_000))));
+
+        Thread.sleep(50);
+        expirer.expireDue();
+        assertEquals(1, expirer.pendingHolds(), "Неснятое удержание возвращается в колесо");
+
+        expirer.expireDue();
+        verify(releaser, times(1)).releaseExpired(any(), any());
+
+        Thread.sleep(250);
+        expirer.expireDue();
+        verify(releaser, times(2)).releaseExpired(eq(Map.of(7L, List.of(1L))), any());
+        assertEquals(0, expirer.pendingHolds());
+    }
+
+    @Test
+    void onSeatHoldEnded_shouldRemoveHoldFromWheel() {
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(1);
+        expirer.schedule(List.of(heldTicket(2L, 7L, expiresAt), heldTicket(3L, 7L, expiresAt)));
+
+        expirer.onSeatHoldEnded(new SeatHoldEndedEvent(2L, 7L, expiresAt));
+
+        assertEquals(1, expirer.pendingHolds());
+    }
+
+    private static Ticket heldTicket(Long id, Long tripId, LocalDateTime expiresAt) {
+        Trip trip = new Trip();
+        trip.setId(tripId);
+        Ticket ticket = new Ticket();
+        ticket.setId(id);
+        ticket.setTrip(trip);
+        ticket.setStatus(TicketStatus.BOOKED);
+        ticket.setHoldExpiresAt(expiresAt);
+        return ticket;
+    }
+}
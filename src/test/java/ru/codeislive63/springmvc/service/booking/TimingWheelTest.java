@@ -0,0 +1,156 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты иерархического колеса таймеров: срабатывание в срок, каскад между уровнями, переполнение и отмена.
+ */
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+    private static final int SIZE = 4;
+
+    @Test
+    void add_shouldRejectReachedDeadlineAndRoundUpToTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, SIZE, 1_000);
+
+        assertFalse(wheel.add(1_000, "now"));
+        assertFalse(wheel.add(990, "past"));
+        assertTrue(wheel.add(1_001, "next tick"));
+
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(1_009, fired::add);
+        assertEquals(List.of(), fired, "Таймер не срабатывает раньше срока");
+        wheel.advanceTo(1_010, fired::add);
+        assertEquals(List.of("next tick"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advanceTo_shouldCascadeTimersFromUpperLevelsAtTheirDeadline() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, SIZE, 0);
+        long[] deadlines = {30, 50, 170, 650, 2_570, 40_000};
+        for (long deadline : deadlines) {
+            assertTrue(wheel.add(deadline, deadline));
+        }
+        assertEquals(deadlines.length, wheel.size(), "Размер учитывает все уровни");
+
+        Map<Long, Long> firedAt = new HashMap<>();
+        for (long now = 0; now <= 40_000; now += TICK) {
+            long at = now;
+            wheel.advanceTo(now, deadline -> firedAt.put(deadline, at));
+        }
+
+        for (long deadline : deadlines) {
+            assertEquals(deadline, firedAt.get(deadline), "Таймер " + deadline + " спустился с верхнего уровня точно в срок");
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advanceTo_shouldFireOverflowTimersInOrderOnLargeJump() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, SIZE, 0);
+        List<Long> deadlines = List.of(9_990L, 20L, 640L, 160L, 45L, 3_000L);
+        deadlines.forEach(deadline -> wheel.add(deadline, deadline));
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advanceTo(5_000, fired::add);
+
+        assertEquals(List.of(20L, 45L, 160L, 640L, 3_000L), fired);
+        assertEquals(1, wheel.size());
+        wheel.advanceTo(10_000, fired::add);
+        assertEquals(9_990L, fired.getLast());
+    }
+
+    @Test
+    void remove_shouldCancelTimersOnEveryLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, SIZE, 0);
+        wheel.add(20, "lower");
+        wheel.add(300, "upper");
+        wheel.add(300, "kept");
+        wheel.add(5_000, "cascaded");
+
+        assertTrue(wheel.remove(20, "lower"));
+        assertTrue(wheel.remove(300, "upper"));
+        assertFalse(wheel.remove(300, "upper"), "Повторная отмена ничего не находит");
+        assertFalse(wheel.remove(310, "kept"), "Отмена ищет таймер по его сроку");
+        assertEquals(2, wheel.size());
+
+        List<String> fired = new ArrayList<>();
+        wheel.advanceTo(4_980, fired::add);
+        assertEquals(List.of("kept"), fired);
+        assertTrue(wheel.remove(5_000, "cascaded"), "Таймер, спустившийся на нижний уровень, тоже отменяется");
+        wheel.advanceTo(6_000, fired::add);
+
+        assertEquals(List.of("kept"), fired);
+        assertEquals(0, wheel.size());
+        assertFalse(wheel.remove(5_000, "cascaded"));
+    }
+
+    @Test
+    void remove_fromLargeBucket_shouldNotScanIt() {
+        int timers = 200_000;
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, SIZE, 0);
+        for (int i = 0; i < timers; i++) {
+            assertTrue(wheel.add(25, i));
+        }
+        assertTrue(wheel.add(25, 0), "Повторное добавление не создаёт второй таймер");
+        assertEquals(timers, wheel.size());
+
+        assertTimeout(Duration.ofSeconds(2), () -> {
+            for (int i = 0; i < timers; i += 2) {
+                assertTrue(wheel.remove(25, i));
+            }
+        }, "Отмена не должна перебирать таймеры с тем же сроком");
+
+        List<Integer> fired = new ArrayList<>();
+        wheel.advanceTo(30, fired::add);
+        assertEquals(timers / 2, fired.size());
+        assertEquals(List.of(1, 3, 5), fired.subList(0, 3), "Оставшиеся таймеры срабатывают в порядке добавления");
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void randomTimers_shouldFireExactlyOnceAtFirstTickNotBeforeDeadline() {
+        Random random = new Random(42);
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 8, 0);
+        long[] deadlines = new long[2_000];
+        for (int i = 0; i < deadlines.length; i++) {
+            deadlines[i] = 1 + random.nextInt(200_000);
+            assertTrue(wheel.add(deadlines[i], i));
+        }
+        for (int i = 0; i < deadlines.length; i += 7) {
+            assertTrue(wheel.remove(deadlines[i], i));
+        }
+
+        long[] firedAt = new long[deadlines.length];
+        long now = 0;
+        while (now < 210_000) {
+            now += random.nextInt(500);
+            long at = now;
+            wheel.advanceTo(now, i -> {
+                assertEquals(0, firedAt[i], "Таймер " + i + " сработал дважды");
+                firedAt[i] = at;
+            });
+        }
+
+        for (int i = 0; i < deadlines.length; i++) {
+            if (i % 7 == 0) {
+                assertEquals(0, firedAt[i], "Отменённый таймер не срабатывает");
+            } else {
+                assertTrue(firedAt[i] >= deadlines[i], "Таймер " + i + " сработал раньше срока");
+                assertTrue(firedAt[i] < deadlines[i] + TICK + 500, "Таймер " + i + " пропустил свой шаг");
+            }
+        }
+        assertEquals(0, wheel.size());
+    }
+}
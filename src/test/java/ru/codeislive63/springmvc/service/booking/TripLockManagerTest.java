@@ -0,0 +1,204 @@
+package ru.codeislive63.springmvc.service.booking;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тесты полосатых блокировок рейсов: взаимное исключение, порядок захвата полос, таймаут и метрики.
+ */
+class TripLockManagerTest {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(300);
+
+    private SimpleMeterRegistry registry;
+    private TripLockManager locks;
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        locks = new TripLockManager(16, TIMEOUT, registry);
+        pool = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void withTripLock_shouldRunActionsOfOneTripOneAtATime() throws Exception {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger maxInside = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 200; i++) {
+                    locks.withTripLock(42L, () -> {
+                        maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+                        Thread.onSpinWait();
+                        inside.decrementAndGet();
+                        return done.incrementAndGet();
+                    });
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals(1, maxInside.get(), "Действия по одному рейсу не должны пересекаться");
+        assertEquals(8 * 200, done.get());
+    }
+
+    @Test
+    void withTripLocks_shouldTakeStripesInAscendingOrder() throws Exception {
+        long[] trips = tripsInDifferentStripes();
+        long low = trips[0];
+        long high = trips[1];
+        CountDownLatch lowHeld = new CountDownLatch(1);
+        CountDownLatch releaseLow = new CountDownLatch(1);
+
+        Future<?> holder = pool.submit(() -> locks.withTripLock(low, () -> {
+            lowHeld.countDown();
+            await(releaseLow);
+            return null;
+        }));
+        assertTrue(lowHeld.await(5, TimeUnit.SECONDS));
+
+        Future<Boolean> both = pool.submit(() -> locks.withTripLocks(List.of(high, low), () -> true));
+        waitForQueue(locks.stripeOf(low), 1);
+
+        Boolean highFree = CompletableFuture.supplyAsync(() -> locks.withTripLock(high, () -> true), pool)
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(highFree, "Пока младшая полоса занята, старшая не должна удерживаться");
+
+        releaseLow.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        assertTrue(both.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void withTripLocks_shouldNotDeadlockOnOverlappingTripSets() throws Exception {
+        long[] trips = tripsInDifferentStripes();
+        locks = new TripLockManager(16, Duration.ofSeconds(30), new SimpleMeterRegistry());
+        AtomicInteger done = new AtomicInteger();
+
+        for (int t = 0; t < 8; t++) {
+            List<Long> order = t % 2 == 0 ? List.of(trips[0], trips[1]) : List.of(trips[1], trips[0]);
+            pool.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    locks.withTripLocks(order, done::incrementAndGet);
+                }
+            });
+        }
+        pool.shutdown();
+
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS), "Пересекающиеся наборы рейсов не должны взаимно блокироваться");
+        assertEquals(8 * 500, done.get());
+    }
+
+    @Test
+    void withTripLocks_shouldTimeOutAndReleaseAlreadyTakenStripes() throws Exception {
+        long[] trips = tripsInDifferentStripes();
+        long low = trips[0];
+        long high = trips[1];
+        CountDownLatch highHeld = new CountDownLatch(1);
+        CountDownLatch releaseHigh = new CountDownLatch(1);
+        pool.submit(() -> locks.withTripLock(high, () -> {
+            highHeld.countDown();
+            await(releaseHigh);
+            return null;
+        }));
+        assertTrue(highHeld.await(5, TimeUnit.SECONDS));
+
+        AtomicInteger runs = new AtomicInteger();
+        long startedAt = System.nanoTime();
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> locks.withTripLocks(List.of(low, high), runs::incrementAndGet));
+        long waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+
+        assertEquals("Рейс сейчас перегружен, попробуйте ещё раз", e.getMessage());
+        assertEquals(0, runs.get(), "Без всех полос действие не выполняется");
+        assertTrue(waitedMs >= TIMEOUT.toMillis() - 20, "Ожидание длится не меньше таймаута: " + waitedMs);
+        Boolean lowFree = CompletableFuture.supplyAsync(() -> locks.withTripLock(low, () -> true), pool)
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(lowFree, "Захваченная до таймаута полоса должна освобождаться");
+
+        releaseHigh.countDown();
+    }
+
+    @Test
+    void meters_shouldReportQueueLengthAndWaitTime() throws Exception {
+        registry = new SimpleMeterRegistry();
+        locks = new TripLockManager(16, Duration.ofSeconds(5), registry);
+        long trip = 7L;
+        String stripe = String.valueOf(locks.stripeOf(trip));
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> holder = pool.submit(() -> locks.withTripLock(trip, () -> {
+            held.countDown();
+            await(release);
+            return null;
+        }));
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        Future<Boolean> queued = pool.submit(() -> locks.withTripLock(trip, () -> true));
+        waitForQueue(locks.stripeOf(trip), 1);
+        assertEquals(1.0, registry.get("booking.lock.queue").tag("stripe", stripe).gauge().value());
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+
+        assertEquals(0.0, registry.get("booking.lock.queue").tag("stripe", stripe).gauge().value());
+        assertEquals(2, registry.get("booking.lock.wait").timer().count());
+        assertTrue(registry.get("booking.lock.wait").timer().max(TimeUnit.MILLISECONDS) > 0,
+                "Ожидание в очереди должно попадать в таймер");
+    }
+
+    private long[] tripsInDifferentStripes() {
+        long first = 1L;
+        long second = 2L;
+        while (locks.stripeOf(second) == locks.stripeOf(first)) {
+            second++;
+        }
+        return locks.stripeOf(first) < locks.stripeOf(second)
+                ? new long[]{first, second}
+                : new long[]{second, first};
+    }
+
+    private void waitForQueue(int stripe, int length) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (locks.queueLength(stripe) < length) {
+            assertTrue(System.nanoTime() < deadline, "Поток так и не встал в очередь полосы");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.codeislive63.springmvc.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.codeislive63.springmvc.controller.admin.AdminDashboardController;
+import ru.codeislive63.springmvc.service.AnalyticsService;
+import ru.codeislive63.springmvc.service.analytics.ReportJobs;
+import ru.codeislive63.springmvc.service.analytics.TicketRollups;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdminDashboardReportTest {
+
+    private final ReportJobs reportJobs = mock(ReportJobs.class);
+    private final AdminDashboardController controller = new AdminDashboardController(
+            mock(AnalyticsService.class), mock(TicketRollups.class), reportJobs);
+
+    @Test
+    void downloadReport_shouldReturnServiceUnavailable_whenJobQueueIsFull() {
+        when(reportJobs.submit())
+                .thenThrow(new IllegalStateException("Слишком много отчётов в очереди, попробуйте позже"));
+
+        CompletableFuture<ResponseEntity<Resource>> response = controller.downloadReport();
+
+        assertThat(response).isCompleted();
+        assertThat(response.join().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -10,8 +10,13 @@ import org.springframework.test.web.servlet.MockMvc;
 import ru.codeislive63.springmvc.repository.StationRepository;
 import ru.codeislive63.springmvc.repository.TrainRepository;
 
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -39,6 +44,10 @@ class AdminDirectoriesCrudMockMvcTest {
 
         assertTrue(stationRepository.findByCode("CRD1").isPresent(),
                 "После создания станция должна появиться в БД");
+
+        mockMvc.perform(get("/admin/panel/stations"))
+                .andExpect(status().isOk())
+                .andExpect(model().attribute("stations", hasItem(hasProperty("code", is("CRD1")))));
     }
 
     @Test
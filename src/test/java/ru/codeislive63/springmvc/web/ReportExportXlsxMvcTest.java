@@ -1,5 +1,6 @@
 package ru.codeislive63.springmvc.web;
 
+import com.jayway.jsonpath.JsonPath;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Test;
@@ -8,31 +9,45 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import ru.codeislive63.springmvc.service.analytics.ReportJobs;
 
 import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@ActiveProfiles("test")
 class ReportExportXlsxMvcTest {
 
     private static final String REPORT_URL = "/admin/dashboard/report.xlsx";
+    private static final String JOBS_URL = "/admin/reports/jobs";
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ReportJobs reportJobs;
+
     @Test
     @WithMockUser(username = "admin@example.com", roles = {"ADMIN"})
     void exportReportXlsx_shouldReturnValidXlsx_forAdmin() throws Exception {
-        MvcResult result = mockMvc.perform(
+        MvcResult started = mockMvc.perform(
                         get(REPORT_URL)
                                 .header("Accept", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
                 )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
                 .andExpect(status().isOk())
                 .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, org.hamcrest.Matchers.containsString("attachment")))
                 .andExpect(content().contentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
@@ -52,6 +67,37 @@ class ReportExportXlsxMvcTest {
         }
     }
 
+    @Test
+    @WithMockUser(username = "admin@example.com", roles = {"ADMIN"})
+    void reportJob_shouldBeSubmittedPolledAndDownloaded() throws Exception {
+        MvcResult submitted = mockMvc.perform(post(JOBS_URL))
+                .andExpect(status().isAccepted())
+                .andExpect(header().exists(HttpHeaders.LOCATION))
+                .andExpect(jsonPath("$.id").isNotEmpty())
+                .andReturn();
+        String id = JsonPath.read(submitted.getResponse().getContentAsString(), "$.id");
+        reportJobs.find(id).orElseThrow().result().get(2, TimeUnit.MINUTES);
+
+        mockMvc.perform(get(JOBS_URL + "/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("DONE"))
+                .andExpect(jsonPath("$.progress").value(100))
+                .andExpect(jsonPath("$.downloadUrl").value(org.hamcrest.Matchers.endsWith(JOBS_URL + "/" + id + "/file")));
+
+        byte[] bytes = mockMvc.perform(get(JOBS_URL + "/" + id + "/file"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, org.hamcrest.Matchers.containsString("attachment")))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes))) {
+            assertThat(wb.getNumberOfSheets()).isGreaterThan(0);
+        }
+
+        mockMvc.perform(get(JOBS_URL + "/unknown"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get(JOBS_URL + "/unknown/file"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     @WithMockUser(username = "user@example.com", roles = {"CUSTOMER"})
     void exportReportXlsx_shouldBeForbidden_forNonAdmin() throws Exception {